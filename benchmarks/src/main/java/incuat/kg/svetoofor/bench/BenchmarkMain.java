@@ -0,0 +1,32 @@
+package incuat.kg.svetoofor.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Точка входа benchmarks.jar: org.openjdk.jmh.Main с выгрузкой результатов в JSON.
+ *
+ * Без -rf результаты пишутся в jmh-result.json (формат JMH, открывается в
+ * jmh.morethan.net и сравнивается между сборками); файл задается
+ * -rff. Явный -rf (csv, text, ...) оставляется как есть.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf") && !isInfoRequest(options)) {
+            options.add(0, "json");
+            options.add(0, "-rf");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+
+    private static boolean isInfoRequest(List<String> options) {
+        return options.contains("-h") || options.contains("-l") || options.contains("-lp")
+                || options.contains("-lprof") || options.contains("-lrf");
+    }
+}
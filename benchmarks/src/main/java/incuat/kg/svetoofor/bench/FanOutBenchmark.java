@@ -0,0 +1,108 @@
+package incuat.kg.svetoofor.bench;
+
+import incuat.kg.svetoofor.TrafficLightServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Латентность рассылки TrafficLightServer.broadcast: время от вызова broadcast
+ * до получения сообщения последним из N клиентов.
+ *
+ * Клиенты - легковесные java.net.http.WebSocket на общем пуле потоков,
+ * поэтому 10k соединений не требуют 20k потоков. Для 10k нужно
+ * ulimit -n не меньше 20000 (оба конца соединения в одном процессе).
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FanOutBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int connections;
+
+    private TrafficLightServer server;
+    private HttpClient httpClient;
+    private ExecutorService clientExecutor;
+    private final List<WebSocket> sockets = new ArrayList<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private volatile String expected;
+    private volatile CountDownLatch received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        server = new TrafficLightServer(port);
+        server.setReuseAddr(true);
+        server.start();
+
+        clientExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        httpClient = HttpClient.newBuilder().executor(clientExecutor).build();
+
+        URI uri = URI.create("ws://127.0.0.1:" + port);
+        WebSocket.Listener listener = new WebSocket.Listener() {
+            @Override
+            public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                String marker = expected;
+                if (marker != null && marker.contentEquals(data)) {
+                    received.countDown();
+                }
+                webSocket.request(1);
+                return null;
+            }
+        };
+
+        for (int i = 0; i < connections; i++) {
+            sockets.add(connectWithRetry(uri, listener));
+        }
+    }
+
+    private WebSocket connectWithRetry(URI uri, WebSocket.Listener listener) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return httpClient.newWebSocketBuilder().buildAsync(uri, listener).get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // Сервер может еще не успеть открыть порт
+                if (attempt >= 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @Benchmark
+    public void broadcast() throws InterruptedException {
+        String message = "BENCH|" + sequence.incrementAndGet();
+        received = new CountDownLatch(connections);
+        expected = message;
+        server.broadcast(message);
+        if (!received.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Не все клиенты получили сообщение: осталось " + received.getCount());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (WebSocket socket : sockets) {
+            socket.abort();
+        }
+        sockets.clear();
+        server.stop(1000);
+        clientExecutor.shutdownNow();
+    }
+}
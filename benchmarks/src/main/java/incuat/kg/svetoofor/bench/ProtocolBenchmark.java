@@ -0,0 +1,88 @@
+package incuat.kg.svetoofor.bench;
+
+import incuat.kg.svetoofor.protocol.BinaryFrame;
+import incuat.kg.svetoofor.protocol.Command;
+import incuat.kg.svetoofor.protocol.SyncFrame;
+import incuat.kg.svetoofor.server.StateSnapshot;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор сообщений на обоих концах:
+ *
+ * <pre>
+ *   parseCommand  - Command.parse + payload, как в TrafficLightApp.handleServerMessage
+ *   updateState   - StateSnapshot.apply на сервере (копия индикаторов + кодирование
+ *                   SNAPSHOT в текст и двоичный вид на каждую рассылку)
+ *   decodeText    - SyncFrame.decode пакета DELTA у клиента
+ *   decodeBinary  - BinaryFrame.decode того же пакета
+ * </pre>
+ *
+ * Сообщения - команда без нагрузки, инцидент с длинным названием и
+ * неизвестная команда (ветка без изменения индикаторов).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    private static final String INCIDENT = "RED_BLINK|Недоступен процессинг карт: отказ авторизации в филиалах "
+            + "Бишкек, Ош, Джалал-Абад. Клиенты не могут оплатить покупки, банкоматы не выдают наличные";
+
+    @Param({"command", "incident", "unknown"})
+    public String message;
+
+    private String text;
+    private String frame;
+    private byte[] binaryFrame;
+    private StateSnapshot state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = switch (message) {
+            case "command" -> "QUEUE_RED";
+            case "incident" -> INCIDENT;
+            default -> "HELLO|client 1.0";
+        };
+        long epoch = System.currentTimeMillis();
+        frame = SyncFrame.encode(SyncFrame.DELTA, epoch, 42, List.of(text));
+        binaryFrame = BinaryFrame.encode(BinaryFrame.TYPE_DELTA, epoch, 42, List.of(text));
+        // Заполненное состояние: копируются и кодируются все индикаторы
+        state = StateSnapshot.initial(epoch)
+                .apply("YELLOW_BLINK|Рост времени ответа платежного шлюза")
+                .apply("QUEUE_GREEN")
+                .apply(INCIDENT);
+    }
+
+    @Benchmark
+    public void parseCommand(Blackhole bh) {
+        Command command = Command.parse(text);
+        if (command != null) {
+            bh.consume(Command.payload(text));
+            bh.consume(command.getDurationSeconds());
+        }
+        bh.consume(command);
+    }
+
+    @Benchmark
+    public StateSnapshot updateState() {
+        return state.apply(text);
+    }
+
+    @Benchmark
+    public SyncFrame decodeText() {
+        return SyncFrame.decode(frame);
+    }
+
+    @Benchmark
+    public BinaryFrame decodeBinary() {
+        return BinaryFrame.decode(ByteBuffer.wrap(binaryFrame));
+    }
+}
@@ -0,0 +1,115 @@
+package incuat.kg.svetoofor.bench;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import incuat.kg.svetoofor.jira.JiraIssue;
+import incuat.kg.svetoofor.jira.JiraSearchResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор ответа /rest/api/2/search на 10, 1k и 10k задач.
+ *
+ * <pre>
+ *   databind  - objectMapper.readValue(body, JiraSearchResult.class): весь ответ в памяти
+ *   streaming - потоковый разбор, как в JiraClient.fetchPage: задачи по одной
+ *               через readValue(parser, JiraIssue.class)
+ * </pre>
+ *
+ * Ответ содержит лишние поля, как настоящий JIRA (expand, self, avatarUrls,
+ * description), чтобы учитывалась стоимость их пропуска.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx1g"})
+public class SearchResultBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int issues;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        body = searchResponse(issues).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public JiraSearchResult databind() throws IOException {
+        return objectMapper.readValue(body, JiraSearchResult.class);
+    }
+
+    @Benchmark
+    public int streaming(Blackhole bh) throws IOException {
+        int delivered = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected JIRA search response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("issues".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        bh.consume(objectMapper.readValue(parser, JiraIssue.class));
+                        delivered++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Ответ поиска JIRA с count задачами
+     */
+    static String searchResponse(int count) {
+        StringBuilder sb = new StringBuilder(count * 900 + 128);
+        sb.append("{\"expand\":\"schema,names\",\"startAt\":0,\"maxResults\":").append(count)
+                .append(",\"total\":").append(count).append(",\"issues\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendIssue(sb, i);
+        }
+        return sb.append("]}").toString();
+    }
+
+    static void appendIssue(StringBuilder sb, int i) {
+        boolean resolved = i % 3 == 0;
+        sb.append("{\"expand\":\"operations,versionedRepresentations,editmeta,changelog\",")
+                .append("\"id\":\"").append(100000 + i).append("\",")
+                .append("\"self\":\"https://jira.example.com/rest/api/2/issue/").append(100000 + i).append("\",")
+                .append("\"key\":\"INC-").append(i).append("\",")
+                .append("\"fields\":{")
+                .append("\"summary\":\"Недоступен сервис ").append(i).append(": рост ошибок авторизации\",")
+                .append("\"description\":\"Мониторинг зафиксировал рост ошибок. Подробности в журнале дежурной смены.\",")
+                .append("\"creator\":{\"self\":\"https://jira.example.com/rest/api/2/user?username=duty\",")
+                .append("\"displayName\":\"Дежурный администратор\",\"emailAddress\":\"duty@example.com\",")
+                .append("\"avatarUrls\":{\"48x48\":\"https://jira.example.com/avatar/48\",")
+                .append("\"24x24\":\"https://jira.example.com/avatar/24\"},\"active\":true},")
+                .append("\"assignee\":{\"displayName\":\"Иванов Иван\",\"emailAddress\":\"ivanov@example.com\"},")
+                .append("\"status\":{\"id\":\"").append(resolved ? "10002" : "10001")
+                .append("\",\"name\":\"").append(resolved ? "Решен" : "Назначен")
+                .append("\",\"statusCategory\":{\"id\":4,\"key\":\"indeterminate\"}},")
+                .append("\"priority\":{\"id\":\"2\",\"name\":\"High\"},")
+                .append("\"issuetype\":{\"id\":\"10100\",\"name\":\"").append(i % 2 == 0 ? "Инцидент" : "Алерт")
+                .append("\",\"subtask\":false},")
+                .append("\"created\":\"2024-03-01T10:15:30.000+0600\",")
+                .append("\"updated\":\"2024-03-01T10:45:00.000+0600\",")
+                .append("\"resolutiondate\":").append(resolved ? "\"2024-03-01T11:00:00.000+0600\"" : "null")
+                .append("}}");
+    }
+}
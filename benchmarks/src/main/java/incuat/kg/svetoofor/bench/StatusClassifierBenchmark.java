@@ -0,0 +1,67 @@
+package incuat.kg.svetoofor.bench;
+
+import incuat.kg.svetoofor.jira.StatusCategory;
+import incuat.kg.svetoofor.jira.StatusClassifier;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Классификация статусов JIRA (бывшие isActiveStatus/isResolvedStatus).
+ * Время - на один проход по STATUSES, то есть на страницу из 16 задач.
+ *
+ * <pre>
+ *   id    - статусы с ID: один поиск в кэше по ID на задачу (обычный ответ JIRA)
+ *   name  - статусы без ID (вебхуки старых версий): кэш по имени
+ *   cold  - новый классификатор на каждую операцию: разбор подстрок для каждого
+ *           статуса, как до кэширования
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusClassifierBenchmark {
+
+    private static final String[] STATUSES = {
+            "Создан", "Назначен", "Исполнитель", "Руководитель",
+            "В работе", "В ожидании", "Решен", "Закрыто",
+            "Отклонен", "Отменен", "Завершен", "Open",
+            "In Progress", "Resolved", "Done", "Waiting for customer"
+    };
+
+    @Param({"id", "name", "cold"})
+    public String path;
+
+    private String[] ids;
+    private StatusClassifier classifier;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ids = new String[STATUSES.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "name".equals(path) ? null : String.valueOf(10000 + i);
+        }
+        classifier = StatusClassifier.defaults();
+        // Прогрев кэша до замеров
+        classifyAll(classifier, null);
+    }
+
+    @Benchmark
+    public void classify(Blackhole bh) {
+        StatusClassifier target = "cold".equals(path) ? StatusClassifier.defaults() : classifier;
+        classifyAll(target, bh);
+    }
+
+    private void classifyAll(StatusClassifier target, Blackhole bh) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            StatusCategory category = target.classify(ids[i], STATUSES[i]);
+            if (bh != null) {
+                bh.consume(category);
+            }
+        }
+    }
+}
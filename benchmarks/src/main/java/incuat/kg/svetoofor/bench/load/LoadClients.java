@@ -0,0 +1,217 @@
+package incuat.kg.svetoofor.bench.load;
+
+import incuat.kg.svetoofor.metrics.Histogram;
+import incuat.kg.svetoofor.metrics.Metrics;
+import incuat.kg.svetoofor.protocol.BinaryFrame;
+import incuat.kg.svetoofor.protocol.SyncFrame;
+import incuat.kg.svetoofor.protocol.TraceReport;
+import incuat.kg.svetoofor.protocol.WireProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Легковесные клиенты табло: java.net.http.WebSocket на общем пуле потоков,
+ * протокол TrafficLightSpec (?proto=2|3&version=...): пакеты SNAPSHOT/DELTA
+ * разбираются, на каждый DELTA сразу уходит ACK (как у настоящего клиента
+ * при поддержке трассировки сервером), JavaFX не участвует.
+ *
+ * Задержки:
+ * <pre>
+ *   delivery - первый получивший клиент → каждый следующий (разброс рассылки)
+ *   jira     - первая выдача задачи заглушкой JIRA → получение клиентом
+ * </pre>
+ */
+class LoadClients {
+
+    private static final String CLIENT_VERSION = "load-harness";
+
+    private final StubJira jira;
+    private final WireProtocol protocol;
+    private final boolean ack;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final Set<WebSocket> sockets = ConcurrentHashMap.newKeySet();
+
+    // seq рассылки → момент получения первым клиентом (System.nanoTime)
+    private final Map<Long, Long> firstReceived = new ConcurrentHashMap<>();
+
+    final Histogram connectTime = Metrics.histogram("load_connect_seconds", "Handshake time");
+    final Histogram delivery = Metrics.histogram("load_delivery_seconds", "First client to each client");
+    final Histogram jiraToClient = Metrics.histogram("load_jira_to_client_seconds", "Stub JIRA response to client");
+    final LongAdder frames = new LongAdder();
+    final LongAdder snapshots = new LongAdder();
+    final LongAdder closed = new LongAdder();
+    final LongAdder failed = new LongAdder();
+
+    LoadClients(StubJira jira, WireProtocol protocol, boolean ack, int threads) {
+        this.jira = jira;
+        this.protocol = protocol;
+        this.ack = ack;
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "load-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder().executor(executor).build();
+    }
+
+    int getConnected() {
+        return sockets.size();
+    }
+
+    /**
+     * Подключение count клиентов, не больше inFlight рукопожатий одновременно
+     *
+     * @return Время подключения, нс
+     */
+    long connect(String serverUri, int count, int inFlight) throws InterruptedException {
+        URI uri = URI.create(serverUri + "/?" + WireProtocol.PARAM + "=" + protocol.getId()
+                + "&version=" + CLIENT_VERSION);
+        Semaphore permits = new Semaphore(inFlight);
+        CountDownLatch done = new CountDownLatch(count);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            permits.acquire();
+            long begin = System.nanoTime();
+            httpClient.newWebSocketBuilder()
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .buildAsync(uri, new Listener())
+                    .whenComplete((socket, error) -> {
+                        if (error != null) {
+                            failed.increment();
+                        } else {
+                            connectTime.recordSince(begin);
+                            sockets.add(socket);
+                        }
+                        permits.release();
+                        done.countDown();
+                    });
+        }
+        done.await();
+        return System.nanoTime() - start;
+    }
+
+    void close() {
+        for (WebSocket socket : sockets) {
+            socket.abort();
+        }
+        sockets.clear();
+        executor.shutdownNow();
+    }
+
+    private void onDelta(long now, List<String> commands, long seq) {
+        frames.increment();
+        Long first = firstReceived.putIfAbsent(seq, now);
+        delivery.record(first == null ? 0 : now - first);
+        for (String command : commands) {
+            int number = issueNumber(command);
+            if (number > 0) {
+                long served = jira.firstServedNanos(number);
+                if (served > 0) {
+                    jiraToClient.record(now - served);
+                }
+            }
+        }
+    }
+
+    /**
+     * Номер задачи LOAD-n из названия в команде или 0
+     */
+    private static int issueNumber(String command) {
+        int at = command.indexOf(StubJira.KEY_PREFIX);
+        if (at < 0) {
+            return 0;
+        }
+        int number = 0;
+        for (int i = at + StubJira.KEY_PREFIX.length(); i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    private final class Listener implements WebSocket.Listener {
+        private final StringBuilder text = new StringBuilder();
+        private final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        // WebSocket не принимает новую отправку, пока не завершена предыдущая
+        private CompletableFuture<WebSocket> sending = CompletableFuture.completedFuture(null);
+
+        private void delta(WebSocket webSocket, long epoch, long seq, List<String> commands) {
+            long now = System.nanoTime();
+            if (ack) {
+                sending = sending.thenCompose(ignored -> webSocket.sendText(TraceReport.ack(epoch, seq), true));
+            }
+            onDelta(now, commands, seq);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            text.append(data);
+            if (last) {
+                String message = text.toString();
+                text.setLength(0);
+                SyncFrame frame = SyncFrame.decode(message);
+                if (frame != null) {
+                    if (frame.isSnapshot()) {
+                        snapshots.increment();
+                    } else {
+                        delta(webSocket, frame.getEpoch(), frame.getSeq(), frame.getCommands());
+                    }
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            byte[] chunk = new byte[data.remaining()];
+            data.get(chunk);
+            binary.writeBytes(chunk);
+            if (last) {
+                BinaryFrame frame = BinaryFrame.decode(ByteBuffer.wrap(binary.toByteArray()));
+                binary.reset();
+                if (frame != null) {
+                    if (frame.isSnapshot()) {
+                        snapshots.increment();
+                    } else {
+                        List<String> commands = new ArrayList<>(frame.getEntries().size());
+                        for (BinaryFrame.Entry entry : frame.getEntries()) {
+                            commands.add(entry.toMessage());
+                        }
+                        delta(webSocket, frame.getEpoch(), frame.getSeq(), commands);
+                    }
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            closed.increment();
+            sockets.remove(webSocket);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            closed.increment();
+            sockets.remove(webSocket);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package incuat.kg.svetoofor.bench.load;
+
+import incuat.kg.svetoofor.metrics.Histogram;
+import incuat.kg.svetoofor.protocol.WireProtocol;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Нагрузочный прогон без сети: заглушка JIRA + сервер (ServerLauncher в
+ * отдельном процессе) + тысячи клиентов табло на одной Linux-машине.
+ *
+ * <pre>
+ *   java -cp target/benchmarks.jar incuat.kg.svetoofor.bench.load.LoadHarness clients=5000 churn.per.minute=600
+ * </pre>
+ *
+ * Параметры (key=value): clients (2000), protocol (text|binary), connect.inflight (200),
+ * client.threads (число ядер), ack (true), churn.per.minute (120), issue.lifetime.seconds (20),
+ * issue.retention.seconds (120), backlog (20), duration.seconds (60), server.jvm.args (-Xmx1g),
+ * server.properties (файл с дополнительными настройками сервера), keep (false - удалить каталог прогона).
+ *
+ * Отчет: скорость подключения, p99 рассылки (на сервере по /metrics и у клиентов),
+ * задержка JIRA → клиент и память сервера на соединение (RSS и куча после GC).
+ * Сервер работает в своем процессе, поэтому клиенты не влияют на его память.
+ * Для 10k клиентов нужно ulimit -n не меньше 20000.
+ */
+public final class LoadHarness {
+
+    private static final String FANOUT_METRIC = "svetoofor_broadcast_fanout_seconds";
+    private static final String STAGE_METRIC = "svetoofor_signal_stage_seconds";
+    private static final Pattern BUCKET = Pattern.compile("^(\\w+)_bucket\\{(.*?)le=\"([^\"]+)\"} (\\d+)$");
+    private static final Pattern HEAP_USED = Pattern.compile("used (\\d+)K");
+
+    private final Properties config;
+    private Path workDir;
+    private Process server;
+    private StubJira jira;
+    private LoadClients clients;
+    private int metricsPort;
+
+    private LoadHarness(Properties config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties config = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Параметры задаются как key=value: " + arg);
+                System.exit(2);
+            }
+            config.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        LoadHarness harness = new LoadHarness(config);
+        try {
+            harness.run();
+        } finally {
+            harness.shutdown();
+        }
+        System.exit(0);
+    }
+
+    private int intValue(String key, int defaultValue) {
+        return Integer.parseInt(config.getProperty(key, String.valueOf(defaultValue)));
+    }
+
+    private void run() throws Exception {
+        int clientCount = intValue("clients", 2000);
+        WireProtocol protocol = "binary".equalsIgnoreCase(config.getProperty("protocol", "text"))
+                ? WireProtocol.BINARY : WireProtocol.TEXT_V2;
+        int durationSeconds = intValue("duration.seconds", 60);
+
+        workDir = Files.createTempDirectory("svetoofor-load");
+        jira = new StubJira(Double.parseDouble(config.getProperty("churn.per.minute", "120")),
+                intValue("issue.lifetime.seconds", 20) * 1000L,
+                intValue("issue.retention.seconds", 120) * 1000L);
+        int jiraPort = jira.start(intValue("backlog", 20));
+
+        int wsPort = freePort();
+        metricsPort = freePort();
+        server = startServer(wsPort, jiraPort);
+        waitForFirstPoll(60);
+        log("Сервер запущен (pid %d), каталог прогона %s", server.pid(), workDir);
+
+        Memory baseline = memory();
+        clients = new LoadClients(jira, protocol, Boolean.parseBoolean(config.getProperty("ack", "true")),
+                intValue("client.threads", Runtime.getRuntime().availableProcessors()));
+        log("Подключение %d клиентов (%s)...", clientCount, protocol);
+        long connectNanos = clients.connect("ws://127.0.0.1:" + wsPort, clientCount, intValue("connect.inflight", 200));
+        int connected = clients.getConnected();
+        Memory loaded = memory();
+
+        Map<String, Map<Double, Long>> before = scrapeBuckets();
+        long searchesBefore = jira.getSearches();
+        log("Подключено %d, ошибок %d; замер %d с...", connected, clients.failed.sum(), durationSeconds);
+        for (int elapsed = 0; elapsed < durationSeconds; elapsed += 10) {
+            Thread.sleep(Math.min(10, durationSeconds - elapsed) * 1000L);
+            log("  %3d с: клиентов %d, пакетов %d, задач открыто %d, создано %d, решено %d",
+                    Math.min(elapsed + 10, durationSeconds), clients.getConnected(), clients.frames.sum(),
+                    jira.getOpen(), jira.getCreated(), jira.getResolved());
+        }
+        Map<String, Map<Double, Long>> after = scrapeBuckets();
+
+        double connectSeconds = connectNanos / 1e9;
+        System.out.println();
+        System.out.println("=== Результаты ===");
+        report("Клиенты", "%d подключено, %d ошибок, %d отключено сервером",
+                connected, clients.failed.sum(), clients.closed.sum());
+        report("Скорость подключения", "%.0f соединений/с (%.1f с на %d)",
+                connected / connectSeconds, connectSeconds, clientCount);
+        report("Рукопожатие", "p50 %s, p99 %s", ms(clients.connectTime, 50), ms(clients.connectTime, 99));
+        report("Рассылка на сервере", "p99 %s (%s)",
+                formatSeconds(percentile(before.get(FANOUT_METRIC), after.get(FANOUT_METRIC), 99)), FANOUT_METRIC);
+        report("Разброс доставки", "p50 %s, p99 %s (первый клиент → каждый)",
+                ms(clients.delivery, 50), ms(clients.delivery, 99));
+        String network = STAGE_METRIC + "{stage=\"network\"}";
+        report("Сеть (ACK/2)", "p99 %s", formatSeconds(percentile(before.get(network), after.get(network), 99)));
+        report("JIRA → клиент", "p50 %s, p99 %s (%d сигналов)",
+                ms(clients.jiraToClient, 50), ms(clients.jiraToClient, 99), clients.jiraToClient.getCount());
+        report("Пакетов получено", "%d DELTA, %d SNAPSHOT, опросов JIRA за замер %d",
+                clients.frames.sum(), clients.snapshots.sum(), jira.getSearches() - searchesBefore);
+        if (connected > 0) {
+            report("Память сервера", "RSS %s → %s, куча %s → %s",
+                    mb(baseline.rssBytes), mb(loaded.rssBytes), mb(baseline.heapBytes), mb(loaded.heapBytes));
+            report("Память на соединение", "RSS %s, куча %s",
+                    kb(loaded.rssBytes, baseline.rssBytes, connected), kb(loaded.heapBytes, baseline.heapBytes, connected));
+        }
+    }
+
+    private Process startServer(int wsPort, int jiraPort) throws IOException {
+        Properties props = new Properties();
+        String extra = config.getProperty("server.properties");
+        if (extra != null) {
+            try (InputStream in = new FileInputStream(extra)) {
+                props.load(in);
+            }
+        }
+        props.setProperty("server.port", String.valueOf(wsPort));
+        props.setProperty("http.host", "127.0.0.1");
+        props.setProperty("http.port", String.valueOf(metricsPort));
+        props.setProperty("metrics.enabled", "true");
+        props.setProperty("jira.url", "http://127.0.0.1:" + jiraPort + "/");
+        props.setProperty("jira.username", "load");
+        props.setProperty("jira.password", "load");
+        props.putIfAbsent("jira.poll.min.seconds", "1");
+        props.putIfAbsent("jira.poll.max.seconds", "2");
+        props.putIfAbsent("jira.state.file", "");
+        props.putIfAbsent("jira.http.cache.dir", "");
+        props.putIfAbsent("log.file", workDir.resolve("server.log").toString());
+        props.putIfAbsent("log.console", "false");
+        props.putIfAbsent("log.level", "WARN");
+        try (OutputStream out = Files.newOutputStream(workDir.resolve("server.properties"))) {
+            props.store(out, "LoadHarness");
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String arg : config.getProperty("server.jvm.args", "-Xmx1g").trim().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                command.add(arg);
+            }
+        }
+        command.add("-cp");
+        command.add(absoluteClassPath());
+        command.add("incuat.kg.svetoofor.ServerLauncher");
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(workDir.resolve("server.out").toFile());
+        // Переменные окружения имеют приоритет над server.properties - прогон только с заглушкой
+        builder.environment().keySet().removeIf(key -> key.startsWith("JIRA_"));
+        return builder.start();
+    }
+
+    private static String absoluteClassPath() {
+        StringBuilder sb = new StringBuilder();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (sb.length() > 0) {
+                sb.append(File.pathSeparatorChar);
+            }
+            sb.append(new File(entry).getAbsolutePath());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Ожидание первого успешного опроса: задачи заглушки запомнены без сигналов
+     */
+    private void waitForFirstPoll(int timeoutSeconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (System.nanoTime() < deadline) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("Сервер завершился, см. " + workDir.resolve("server.out"));
+            }
+            try {
+                for (String line : scrape().split("\n")) {
+                    if (line.startsWith("svetoofor_jira_polls_total{") && line.contains("result=\"ok\"")
+                            && !line.endsWith(" 0")) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // Сервер еще не открыл порт метрик
+            }
+            Thread.sleep(200);
+        }
+        throw new IllegalStateException("Нет успешного опроса JIRA за " + timeoutSeconds + " с");
+    }
+
+    private String scrape() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://127.0.0.1:" + metricsPort + "/metrics").openConnection();
+        connection.setConnectTimeout(2000);
+        connection.setReadTimeout(5000);
+        try (InputStream in = connection.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Корзины гистограмм из /metrics: имя{метки без le} → граница → накопленное число
+     */
+    private Map<String, Map<Double, Long>> scrapeBuckets() throws IOException {
+        Map<String, Map<Double, Long>> result = new TreeMap<>();
+        for (String line : scrape().split("\n")) {
+            Matcher m = BUCKET.matcher(line);
+            if (!m.matches()) {
+                continue;
+            }
+            String labels = m.group(2);
+            if (labels.endsWith(",")) {
+                labels = labels.substring(0, labels.length() - 1);
+            }
+            String series = labels.isEmpty() ? m.group(1) : m.group(1) + "{" + labels + "}";
+            double le = "+Inf".equals(m.group(3)) ? Double.POSITIVE_INFINITY : Double.parseDouble(m.group(3));
+            result.computeIfAbsent(series, k -> new TreeMap<>()).put(le, Long.parseLong(m.group(4)));
+        }
+        return result;
+    }
+
+    /**
+     * Перцентиль по разнице двух выгрузок (верхняя граница корзины), с; NaN - нет данных
+     */
+    private static double percentile(Map<Double, Long> before, Map<Double, Long> after, double percentile) {
+        if (after == null) {
+            return Double.NaN;
+        }
+        long total = after.getOrDefault(Double.POSITIVE_INFINITY, 0L)
+                - (before != null ? before.getOrDefault(Double.POSITIVE_INFINITY, 0L) : 0);
+        if (total <= 0) {
+            return Double.NaN;
+        }
+        double rank = total * percentile / 100.0;
+        for (Map.Entry<Double, Long> bucket : after.entrySet()) {
+            long count = bucket.getValue() - (before != null ? before.getOrDefault(bucket.getKey(), 0L) : 0);
+            if (count >= rank) {
+                return bucket.getKey();
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static final class Memory {
+        final long rssBytes;
+        final long heapBytes;
+
+        Memory(long rssBytes, long heapBytes) {
+            this.rssBytes = rssBytes;
+            this.heapBytes = heapBytes;
+        }
+    }
+
+    /**
+     * Память процесса сервера после полной сборки мусора (Linux: /proc, jcmd)
+     */
+    private Memory memory() throws Exception {
+        jcmd("GC.run");
+        Thread.sleep(500);
+        long heap = -1;
+        Matcher m = HEAP_USED.matcher(jcmd("GC.heap_info"));
+        if (m.find()) {
+            heap = Long.parseLong(m.group(1)) * 1024;
+        }
+        long rss = -1;
+        Path status = Path.of("/proc", String.valueOf(server.pid()), "status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    rss = Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+                }
+            }
+        }
+        return new Memory(rss, heap);
+    }
+
+    private String jcmd(String command) throws Exception {
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "jcmd").toString(),
+                String.valueOf(server.pid()), command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor(30, TimeUnit.SECONDS);
+        return output;
+    }
+
+    private void shutdown() {
+        if (clients != null) {
+            clients.close();
+        }
+        if (server != null) {
+            server.destroy();
+            try {
+                if (!server.waitFor(10, TimeUnit.SECONDS)) {
+                    server.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                server.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (jira != null) {
+            jira.stop();
+        }
+        if (workDir != null && !Boolean.parseBoolean(config.getProperty("keep", "false"))) {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            } catch (IOException e) {
+                log("Не удалось удалить %s: %s", workDir, e.getMessage());
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    private static void log(String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+
+    private static void report(String name, String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, "%-22s %s", name, String.format(Locale.ROOT, format, args)));
+    }
+
+    private static String ms(Histogram histogram, double percentile) {
+        return histogram.getCount() == 0 ? "n/a" : formatSeconds(histogram.percentile(percentile) / 1e9);
+    }
+
+    private static String formatSeconds(double seconds) {
+        if (Double.isNaN(seconds)) {
+            return "n/a";
+        }
+        if (Double.isInfinite(seconds)) {
+            return "> 69 с";
+        }
+        return String.format(Locale.ROOT, "≤ %.2f мс", seconds * 1000);
+    }
+
+    private static String mb(long bytes) {
+        return bytes < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f МБ", bytes / 1048576.0);
+    }
+
+    private static String kb(long after, long before, int connections) {
+        if (after < 0 || before < 0) {
+            return "n/a";
+        }
+        return String.format(Locale.ROOT, "%.1f КБ", (after - before) / 1024.0 / connections);
+    }
+}
@@ -0,0 +1,259 @@
+package incuat.kg.svetoofor.bench.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Локальная заглушка JIRA: /rest/api/2/search (GET и POST, постранично)
+ * с непрерывным потоком задач и /rest/api/2/myself для проверки подключения.
+ *
+ * Каждые 60000 / churnPerMinute мс создается задача LOAD-n (инцидент или
+ * алерт по очереди), через lifetime она решается, а еще через retention
+ * пропадает из выдачи. JQL не разбирается: поиск возвращает все открытые и
+ * недавно решенные задачи. Для каждой задачи запоминается момент первой
+ * выдачи, от которого клиенты считают задержку JIRA → экран.
+ */
+class StubJira {
+
+    static final String KEY_PREFIX = "LOAD-";
+
+    private static final String INCIDENT_TYPE = "11206";
+    private static final String ALERT_TYPE = "13802";
+    private static final DateTimeFormatter JIRA_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ").withZone(ZoneId.systemDefault());
+
+    private static final class Issue {
+        final int number;
+        final long createdMillis;
+        volatile long resolvedMillis;
+        final AtomicLong firstServedNanos = new AtomicLong();
+
+        Issue(int number, long createdMillis) {
+            this.number = number;
+            this.createdMillis = createdMillis;
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Integer, Issue> issues = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextNumber = new AtomicInteger(1);
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder resolved = new LongAdder();
+
+    private final double churnPerMinute;
+    private final long lifetimeMillis;
+    private final long retentionMillis;
+
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private ScheduledExecutorService churn;
+
+    StubJira(double churnPerMinute, long lifetimeMillis, long retentionMillis) {
+        this.churnPerMinute = churnPerMinute;
+        this.lifetimeMillis = lifetimeMillis;
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * @param backlog Открытых задач до старта (первый опрос сервера только запоминает их)
+     * @return Порт заглушки на 127.0.0.1
+     */
+    int start(int backlog) throws IOException {
+        for (int i = 0; i < backlog; i++) {
+            createIssue();
+        }
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+        httpServer.createContext("/rest/api/2/search", this::handleSearch);
+        // Проверка подключения при старте сервера
+        httpServer.createContext("/rest/api/2/myself", exchange -> respond(exchange,
+                "{\"name\":\"load\",\"displayName\":\"Load harness\"}"));
+        httpExecutor = Executors.newFixedThreadPool(4);
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+
+        churn = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stub-jira-churn");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (churnPerMinute > 0) {
+            long periodMicros = (long) (60_000_000 / churnPerMinute);
+            churn.scheduleAtFixedRate(this::createIssue, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+        }
+        churn.scheduleAtFixedRate(this::resolveAndExpire, 100, 100, TimeUnit.MILLISECONDS);
+        return httpServer.getAddress().getPort();
+    }
+
+    void stop() {
+        if (churn != null) {
+            churn.shutdownNow();
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Момент первой выдачи задачи (System.nanoTime) или 0
+     */
+    long firstServedNanos(int number) {
+        Issue issue = issues.get(number);
+        return issue != null ? issue.firstServedNanos.get() : 0;
+    }
+
+    long getSearches() {
+        return searches.sum();
+    }
+
+    long getCreated() {
+        return created.sum();
+    }
+
+    long getResolved() {
+        return resolved.sum();
+    }
+
+    int getOpen() {
+        int open = 0;
+        for (Issue issue : issues.values()) {
+            if (issue.resolvedMillis == 0) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    private void createIssue() {
+        int number = nextNumber.getAndIncrement();
+        issues.put(number, new Issue(number, System.currentTimeMillis()));
+        created.increment();
+    }
+
+    private void resolveAndExpire() {
+        long now = System.currentTimeMillis();
+        for (Issue issue : issues.values()) {
+            if (issue.resolvedMillis == 0) {
+                if (now - issue.createdMillis >= lifetimeMillis) {
+                    issue.resolvedMillis = now;
+                    resolved.increment();
+                }
+            } else if (now - issue.resolvedMillis >= retentionMillis) {
+                issues.remove(issue.number);
+            }
+        }
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            searches.increment();
+            int startAt = 0;
+            int maxResults = 50;
+            if ("POST".equals(exchange.getRequestMethod())) {
+                try (InputStream body = exchange.getRequestBody()) {
+                    JsonNode request = objectMapper.readTree(body);
+                    startAt = request.path("startAt").asInt(0);
+                    maxResults = request.path("maxResults").asInt(50);
+                }
+            } else {
+                Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+                startAt = Integer.parseInt(query.getOrDefault("startAt", "0"));
+                maxResults = Integer.parseInt(query.getOrDefault("maxResults", "50"));
+            }
+            if (maxResults <= 0) {
+                maxResults = 50;
+            }
+
+            List<Issue> visible = new ArrayList<>(issues.values());
+            long now = System.nanoTime();
+            int end = Math.min(visible.size(), startAt + maxResults);
+            StringBuilder sb = new StringBuilder(512 * Math.max(1, end - startAt));
+            sb.append("{\"startAt\":").append(startAt).append(",\"maxResults\":").append(maxResults)
+                    .append(",\"total\":").append(visible.size()).append(",\"issues\":[");
+            for (int i = startAt; i < end; i++) {
+                Issue issue = visible.get(i);
+                issue.firstServedNanos.compareAndSet(0, now);
+                if (i > startAt) {
+                    sb.append(',');
+                }
+                appendIssue(sb, issue);
+            }
+            sb.append("]}");
+            respond(exchange, sb.toString());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        try (exchange) {
+            byte[] response = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        }
+    }
+
+    private static void appendIssue(StringBuilder sb, Issue issue) {
+        boolean incident = issue.number % 2 == 1;
+        long resolvedMillis = issue.resolvedMillis;
+        boolean isResolved = resolvedMillis != 0;
+        String createdTime = JIRA_TIME.format(Instant.ofEpochMilli(issue.createdMillis));
+        String updatedTime = isResolved ? JIRA_TIME.format(Instant.ofEpochMilli(resolvedMillis)) : createdTime;
+        sb.append("{\"id\":\"").append(100000 + issue.number)
+                .append("\",\"key\":\"").append(KEY_PREFIX).append(issue.number)
+                .append("\",\"fields\":{\"summary\":\"Нагрузочный тест ").append(KEY_PREFIX).append(issue.number)
+                .append("\",\"creator\":{\"displayName\":\"Load harness\"}")
+                .append(",\"status\":{\"id\":\"").append(isResolved ? "10002" : "10001")
+                .append("\",\"name\":\"").append(isResolved ? "Решен" : "Назначен").append("\"}")
+                .append(",\"priority\":{\"id\":\"2\",\"name\":\"High\"}")
+                .append(",\"issuetype\":{\"id\":\"").append(incident ? INCIDENT_TYPE : ALERT_TYPE)
+                .append("\",\"name\":\"").append(incident ? "Инцидент" : "Алерт").append("\"}")
+                .append(",\"created\":\"").append(createdTime)
+                .append("\",\"updated\":\"").append(updatedTime).append('"')
+                .append(",\"resolutiondate\":")
+                .append(isResolved ? '"' + updatedTime + '"' : "null")
+                .append("}}");
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> result = new HashMap<>();
+        if (rawQuery == null) {
+            return result;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package incuat.kg.svetoofor;
+
+import incuat.kg.svetoofor.log.Log;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Модель выполнения блокирующей работы сервера (запросы к JIRA, загрузка
+ * страниц, вебхуки, запись журналов): пул платформенных потоков или
+ * виртуальный поток на задачу (JDK 21+).
+ *
+ * Виртуальные потоки создаются через reflection, поэтому сборка под JDK 17
+ * продолжает работать: на JDK без виртуальных потоков VIRTUAL заменяется на
+ * PLATFORM с предупреждением в журнале.
+ */
+public enum ExecutionMode {
+    /** Ограниченный пул платформенных потоков */
+    PLATFORM,
+    /** Виртуальный поток на каждую задачу: медленный ответ JIRA не занимает поток ОС */
+    VIRTUAL;
+
+    public static final String PROPERTY = "server.executor";
+
+    private static final Log log = Log.get(ExecutionMode.class);
+
+    // Thread.ofVirtual() и Executors.newThreadPerTaskExecutor(ThreadFactory), если есть
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method THREAD_PER_TASK;
+
+    static {
+        Method ofVirtual = null, name = null, factory = null, perTask = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (ReflectiveOperationException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+        THREAD_PER_TASK = perTask;
+    }
+
+    /**
+     * @return true, если JDK поддерживает виртуальные потоки
+     */
+    public static boolean virtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * server.executor=virtual|platform; по умолчанию - virtual, если JDK его поддерживает
+     */
+    public static ExecutionMode fromProperties(Properties props) {
+        String value = props.getProperty(PROPERTY, virtualThreadsSupported() ? "virtual" : "platform");
+        ExecutionMode mode = valueOf(value.trim().toUpperCase(Locale.ROOT));
+        if (mode == VIRTUAL && !virtualThreadsSupported()) {
+            log.warn("Virtual threads need JDK 21+ (running {}), using platform threads", Runtime.version());
+            return PLATFORM;
+        }
+        return mode;
+    }
+
+    /**
+     * Исполнитель блокирующих задач
+     *
+     * @param name            Имя потоков
+     * @param platformThreads Размер пула в режиме PLATFORM
+     */
+    public ExecutorService newExecutor(String name, int platformThreads) {
+        if (this == VIRTUAL && virtualThreadsSupported()) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+                ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+                return (ExecutorService) THREAD_PER_TASK.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Cannot create virtual thread executor {}: {}", name, e.getMessage());
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, platformThreads), r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,157 @@
+package incuat.kg.svetoofor;
+
+import incuat.kg.svetoofor.protocol.Lamp;
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Shape;
+import javafx.util.Duration;
+
+import java.util.Arrays;
+
+/**
+ * Общие часы анимации индикаторов вместо Timeline на каждый сигнал.
+ *
+ * Для каждого индикатора хранятся цвет, момент включения, срок гашения и
+ * ритм мигания (вкл/выкл) - обычные массивы по Lamp.ordinal(), так что новый
+ * сигнал ничего не выделяет. Таймер кадров работает только пока какой-то
+ * индикатор мигает; немигающий сигнал гасит одна пауза на индикатор
+ * (PauseTransition), без проверок каждый кадр. Заливка меняется только при
+ * смене фазы, а не каждый кадр.
+ * Все методы вызываются в потоке JavaFX.
+ */
+public class LampScheduler extends AnimationTimer {
+
+    public static final Color OFF = Color.rgb(40, 40, 40);
+
+    // По умолчанию сигнал горит не мигая, как до общего таймера;
+    // мигание включается ui.blink.off.ms > 0
+    public static final long DEFAULT_BLINK_ON_MILLIS = 700;
+    public static final long DEFAULT_BLINK_OFF_MILLIS = 0;
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final Shape[] shapes = new Shape[Lamp.count()];
+    private final Color[] colors = new Color[Lamp.count()];
+    private final long[] startNanos = new long[Lamp.count()];
+    private final long[] deadlineNanos = new long[Lamp.count()];
+    private final boolean[] blinking = new boolean[Lamp.count()];
+    // Гашение немигающего сигнала; создается при первом сигнале индикатора
+    private final PauseTransition[] expiry = new PauseTransition[Lamp.count()];
+
+    private long onNanos = DEFAULT_BLINK_ON_MILLIS * 1_000_000;
+    private long cycleNanos = (DEFAULT_BLINK_ON_MILLIS + DEFAULT_BLINK_OFF_MILLIS) * 1_000_000;
+    private int blinkingLamps = 0;
+    private boolean running = false;
+
+    public LampScheduler() {
+        Arrays.fill(deadlineNanos, NO_DEADLINE);
+        Arrays.fill(colors, OFF);
+    }
+
+    /**
+     * Индикатор, которым управляет планировщик
+     */
+    public void bind(Lamp lamp, Shape shape) {
+        shapes[lamp.ordinal()] = shape;
+        shape.setFill(OFF);
+    }
+
+    /**
+     * Ритм мигания. offMillis = 0 - сигнал горит не мигая до гашения
+     */
+    public void setCadence(long onMillis, long offMillis) {
+        this.onNanos = Math.max(1, onMillis) * 1_000_000;
+        this.cycleNanos = onNanos + Math.max(0, offMillis) * 1_000_000;
+    }
+
+    /**
+     * Сигнал на время: мигает в заданном ритме и гаснет через seconds секунд.
+     * Заменяет текущий сигнал индикатора.
+     */
+    public void blink(Lamp lamp, Color color, int seconds) {
+        long now = System.nanoTime();
+        int i = lamp.ordinal();
+        cancel(i);
+        colors[i] = color;
+        startNanos[i] = now;
+        deadlineNanos[i] = now + seconds * 1_000_000_000L;
+        show(i, true);
+        if (cycleNanos > onNanos) {
+            blinking[i] = true;
+            blinkingLamps++;
+            if (!running) {
+                running = true;
+                start();
+            }
+        } else {
+            PauseTransition pause = expiry[i];
+            if (pause == null) {
+                pause = new PauseTransition();
+                pause.setOnFinished(event -> {
+                    cancel(i);
+                    show(i, false);
+                });
+                expiry[i] = pause;
+            }
+            pause.setDuration(Duration.seconds(seconds));
+            pause.playFromStart();
+        }
+    }
+
+    /**
+     * Постоянный цвет без срока (очередь мониторинга)
+     */
+    public void steady(Lamp lamp, Color color) {
+        int i = lamp.ordinal();
+        cancel(i);
+        colors[i] = color;
+        show(i, true);
+    }
+
+    public void off(Lamp lamp) {
+        int i = lamp.ordinal();
+        cancel(i);
+        show(i, false);
+    }
+
+    @Override
+    public void handle(long now) {
+        for (int i = 0; i < shapes.length; i++) {
+            if (!blinking[i]) {
+                continue;
+            }
+            if (now - deadlineNanos[i] >= 0) {
+                cancel(i);
+                show(i, false);
+            } else {
+                show(i, (now - startNanos[i]) % cycleNanos < onNanos);
+            }
+        }
+        if (blinkingLamps == 0) {
+            running = false;
+            stop();
+        }
+    }
+
+    private void cancel(int i) {
+        if (deadlineNanos[i] == NO_DEADLINE) {
+            return;
+        }
+        deadlineNanos[i] = NO_DEADLINE;
+        if (blinking[i]) {
+            blinking[i] = false;
+            blinkingLamps--;
+        } else if (expiry[i] != null) {
+            expiry[i].stop();
+        }
+    }
+
+    private void show(int i, boolean on) {
+        // Заливка меняется только при смене фазы
+        Color fill = on ? colors[i] : OFF;
+        if (shapes[i] != null && shapes[i].getFill() != fill) {
+            shapes[i].setFill(fill);
+        }
+    }
+}
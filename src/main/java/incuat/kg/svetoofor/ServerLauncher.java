@@ -1,12 +1,37 @@
 package incuat.kg.svetoofor;
 
+import incuat.kg.svetoofor.jira.IssueStateStore;
 import incuat.kg.svetoofor.jira.JiraClient;
+import incuat.kg.svetoofor.jira.JiraFeed;
+import incuat.kg.svetoofor.jira.JiraHttpConfig;
+import incuat.kg.svetoofor.jira.JiraIssueCache;
 import incuat.kg.svetoofor.jira.JiraPoller;
+import incuat.kg.svetoofor.jira.JiraWatermark;
+import incuat.kg.svetoofor.jira.JiraWebhookHandler;
+import incuat.kg.svetoofor.jira.StatusClassifier;
+import incuat.kg.svetoofor.log.Log;
+import incuat.kg.svetoofor.log.LogConfig;
+import incuat.kg.svetoofor.metrics.MetricsHandler;
+import incuat.kg.svetoofor.protocol.DeflateExtension;
+import incuat.kg.svetoofor.server.ConnectionRegistry;
+import incuat.kg.svetoofor.server.SendQueueLimit;
+
+import com.sun.net.httpserver.HttpServer;
 
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Headless launcher для сервера светофора
@@ -14,55 +39,57 @@ import java.util.Properties;
  */
 public class ServerLauncher {
     private static final int DEFAULT_PORT = 52521;
-    private static final DateTimeFormatter LOG_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static PrintWriter logWriter;
+    static final String DEFAULT_LOG_FILE = "/home/fudo/svetofor/svetofor/svetoofor-server.log";
+    private static final int DEFAULT_HTTP_PORT = 52522;
+    private static final long JIRA_STOP_TIMEOUT_SECONDS = 10;
+    private static final Log log = Log.get(ServerLauncher.class);
 
-    static {
-        try {
-            // Явно указываем путь к логу
-            String logPath = "/home/fudo/svetofor/svetofor/svetoofor-server.log";
-            File logFile = new File(logPath);
-            logWriter = new PrintWriter(new FileWriter(logFile, true), true);
-        } catch (IOException e) {
-            System.err.println("Не удалось создать файл логов: " + e.getMessage());
-        }
-    }
+    // Встроенный HTTP сервер (вебхуки JIRA), создается при первой необходимости
+    private static HttpServer httpServer;
+    private static ExecutionMode executionMode;
 
-    private static void log(String message) {
-        String timestamp = LocalDateTime.now().format(LOG_FORMATTER);
-        String logMessage = "[" + timestamp + "] " + message;
-        System.out.println(logMessage);
-        if (logWriter != null) {
-            logWriter.println(logMessage);
-        }
-    }
+    // Интеграция JIRA: ленты, общие пулы и клиент - останавливаются при выходе
+    private static final List<JiraPoller> jiraPollers = new ArrayList<>();
+    private static ScheduledExecutorService jiraScheduler;
+    private static ExecutorService jiraWorker;
+    private static JiraClient jiraClient;
 
     public static void main(String[] args) {
-        log("=== Traffic Light Server (JIRA Only) ===");
-
         // Загружаем конфигурацию
         Properties config = loadConfig();
+        Log.configure(LogConfig.fromProperties(config, DEFAULT_LOG_FILE));
+        log.info("=== Traffic Light Server (JIRA Only) ===");
+
         int port = Integer.parseInt(config.getProperty("server.port", String.valueOf(DEFAULT_PORT)));
 
         // Запускаем WebSocket сервер
-        TrafficLightServer server = new TrafficLightServer(port);
+        DeflateExtension deflate = DeflateExtension.fromProperties(config, false);
+        TrafficLightServer server = deflate != null ? new TrafficLightServer(port, deflate) : new TrafficLightServer(port);
+        server.setSendQueueLimit(SendQueueLimit.fromProperties(config));
+        configureTopics(config, server.getClients());
         server.start();
-        log("WebSocket server started on port " + port);
+        log.info("WebSocket server started on port {}", port);
 
         // Запускаем JIRA интеграцию (если настроена)
         startJiraIntegration(config, server);
 
+        startMetrics(config);
+
         // Держим процесс живым
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            log("Shutting down server...");
+            log.info("Shutting down server...");
             try {
+                if (httpServer != null) {
+                    httpServer.stop(1);
+                }
+                stopJiraIntegration();
                 server.stop(1000);
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                log.error("Interrupted while stopping server", e);
             }
         }));
 
-        log("Server is running. Press Ctrl+C to stop.");
+        log.info("Server is running. Press Ctrl+C to stop.");
     }
 
     private static Properties loadConfig() {
@@ -71,10 +98,10 @@ public class ServerLauncher {
         // Пробуем загрузить server.properties
         try (FileInputStream fis = new FileInputStream("server.properties")) {
             props.load(fis);
-            log("Loaded server.properties");
+            log.info("Loaded server.properties");
             return props;
         } catch (IOException e) {
-            log("server.properties not found, using defaults");
+            log.info("server.properties not found, using defaults");
         }
 
         // Дефолтные значения
@@ -105,40 +132,220 @@ public class ServerLauncher {
         if (jiraUrl == null || jiraUrl.isEmpty() ||
             jiraUsername == null || jiraUsername.isEmpty() ||
             jiraPassword == null || jiraPassword.isEmpty()) {
-            log("JIRA settings not found, skipping JIRA integration");
-            log("Configure jira.url, jira.username, jira.password in server.properties to enable");
+            log.info("JIRA settings not found, skipping JIRA integration");
+            log.info("Configure jira.url, jira.username, jira.password in server.properties to enable");
+            return;
+        }
+
+        List<JiraFeed> feeds = JiraFeed.fromProperties(config);
+
+        try {
+            log.info("Starting JIRA integration...");
+            log.info("JIRA URL: {}", jiraUrl);
+            log.info("JIRA Username: {}", jiraUsername);
+
+            // Один клиент (один пул соединений OkHttp) и один ограниченный пул потоков на все ленты
+            JiraHttpConfig httpConfig = JiraHttpConfig.fromProperties(config);
+            JiraClient jiraClient = new JiraClient(jiraUrl, jiraUsername, jiraPassword, httpConfig);
+            ServerLauncher.jiraClient = jiraClient;
+            log.info("JIRA HTTP: {}", httpConfig);
+            jiraClient.setPageSize(Integer.parseInt(config.getProperty("jira.page.size",
+                    String.valueOf(JiraClient.DEFAULT_PAGE_SIZE))));
+            jiraClient.setPageParallelism(Integer.parseInt(config.getProperty("jira.page.parallelism", "1")));
+            int threads = Integer.parseInt(config.getProperty("jira.threads",
+                    String.valueOf(Math.min(feeds.size(), 4))));
+            ExecutionMode mode = executionMode(config);
+            jiraClient.setExecutionMode(mode);
+            // VIRTUAL: планировщик только отсчитывает интервалы, опросы идут в виртуальных потоках
+            ExecutorService worker = mode == ExecutionMode.VIRTUAL ? mode.newExecutor("jira-worker", threads) : null;
+            ScheduledExecutorService scheduler = JiraPoller.newScheduler(worker != null ? 1 : Math.max(1, threads));
+            jiraWorker = worker;
+            jiraScheduler = scheduler;
+            log.info("JIRA feeds: {} (threads: {}, executor: {})", feeds, threads, mode);
+
+            boolean enrichSummary = Boolean.parseBoolean(config.getProperty("jira.enrich.enabled", "false"));
+            // Копии задач по ключу: общий кэш, чтобы ленты с общей задачей делили запрос
+            JiraIssueCache issueCache = new JiraIssueCache(jiraClient,
+                    Integer.parseInt(config.getProperty("jira.cache.max.entries",
+                            String.valueOf(JiraIssueCache.DEFAULT_MAX_ENTRIES))),
+                    Long.parseLong(config.getProperty("jira.cache.ttl.seconds",
+                            String.valueOf(JiraIssueCache.DEFAULT_TTL_MILLIS / 1000))) * 1000);
+
+            for (JiraFeed feed : feeds) {
+                JiraPoller jiraPoller = createPoller(config, feed, jiraClient, server, scheduler);
+                jiraPoller.setWorkerExecutor(worker);
+                jiraPoller.setEnrichSummary(enrichSummary);
+                jiraPoller.setIssueCache(issueCache);
+                jiraPollers.add(jiraPoller);
+                jiraPoller.start();
+                startWebhook(config, feed, jiraPoller);
+            }
+
+            log.info("JIRA integration started successfully");
+        } catch (Exception e) {
+            log.error("Failed to start JIRA integration: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Остановка лент при выходе: текущий опрос дорабатывает (журнал состояния и
+     * водяной знак не остаются записанными наполовину), журналы сбрасываются
+     * на диск, затем закрывается клиент JIRA
+     */
+    private static void stopJiraIntegration() throws InterruptedException {
+        if (jiraScheduler == null) {
             return;
         }
+        // Лента отменяет следующий опрос и ставит закрытие журнала за текущим
+        jiraPollers.forEach(JiraPoller::stop);
+        jiraScheduler.shutdown();
+        if (jiraWorker != null) {
+            jiraWorker.shutdown();
+        }
+        boolean finished = jiraScheduler.awaitTermination(JIRA_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                && (jiraWorker == null || jiraWorker.awaitTermination(JIRA_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        if (!finished) {
+            log.warn("JIRA polls did not finish in {} s, stopping anyway", JIRA_STOP_TIMEOUT_SECONDS);
+        }
+        jiraClient.close();
+    }
 
-        // Проверяем наличие кастомного JQL запроса
-        String customJql = config.getProperty("jira.jql");
+    /**
+     * Ограничение топиков подписки: ws.topics.allowed (к списку добавляются
+     * топики лент JIRA) или, без списка, ws.topics.max
+     */
+    private static void configureTopics(Properties config, ConnectionRegistry clients) {
+        Set<String> allowed = new HashSet<>();
+        for (String topic : config.getProperty("ws.topics.allowed", "").split(",")) {
+            String name = ConnectionRegistry.normalizeTopic(topic);
+            if (name != null) {
+                allowed.add(name);
+            }
+        }
+        if (!allowed.isEmpty()) {
+            for (JiraFeed feed : JiraFeed.fromProperties(config)) {
+                if (feed.getTopic() != null) {
+                    allowed.add(feed.getTopic());
+                }
+            }
+            clients.setAllowedTopics(allowed);
+            log.info("WebSocket topics allowed: {}", allowed);
+        }
+        clients.setMaxTopics(Integer.parseInt(config.getProperty("ws.topics.max",
+                String.valueOf(ConnectionRegistry.DEFAULT_MAX_TOPICS)).trim()));
+    }
 
-        // Если нет кастомного JQL, формируем запрос по старым параметрам (обратная совместимость)
-        if (customJql == null || customJql.isEmpty() || customJql.startsWith("${")) {
-            String issueType = config.getProperty("jira.issue.type", "11206");
-            customJql = "issuetype = " + issueType + " AND status NOT IN (Closed,Resolved,Done)";
-            log("Используется автоматически сформированный JQL запрос");
+    /**
+     * Модель выполнения блокирующей работы (server.executor), определяется один раз
+     */
+    private static synchronized ExecutionMode executionMode(Properties config) {
+        if (executionMode == null) {
+            executionMode = ExecutionMode.fromProperties(config);
+        }
+        return executionMode;
+    }
+
+    /**
+     * Опрос одной ленты: ключи jira.feed.<имя>.* переопределяют общие jira.*
+     */
+    private static JiraPoller createPoller(Properties config, JiraFeed feed, JiraClient jiraClient,
+                                           TrafficLightServer server, ScheduledExecutorService scheduler) throws IOException {
+        String customJql = feed.getJql();
+        if (feed.hasCustomJql()) {
+            log.info("[{}] Используется кастомный JQL запрос из конфигурации", feed);
         } else {
-            log("Используется кастомный JQL запрос из конфигурации");
+            log.info("[{}] Используется автоматически сформированный JQL запрос", feed);
         }
+        int pollInterval = Integer.parseInt(feed.get("poll.interval", "5"));
+        log.info("[{}] JQL Query: {}", feed, customJql);
+        log.info("[{}] Poll interval: {} minutes, topic: {}", feed, pollInterval,
+                feed.getTopic() != null ? feed.getTopic() : "default");
 
-        int pollInterval = Integer.parseInt(config.getProperty("jira.poll.interval", "5"));
+        JiraPoller jiraPoller = new JiraPoller(jiraClient, server, customJql, pollInterval, scheduler);
+        jiraPoller.setName(feed.getName());
+        long maxIntervalSeconds = Long.parseLong(feed.get("poll.max.seconds", String.valueOf(pollInterval * 60L)));
+        // По умолчанию интервал не сокращается ниже прежнего poll.interval.minutes
+        long minIntervalSeconds = Long.parseLong(feed.get("poll.min.seconds",
+                String.valueOf(Math.min(pollInterval * 60L, maxIntervalSeconds))));
+        jiraPoller.setAdaptiveInterval(minIntervalSeconds * 1000, maxIntervalSeconds * 1000);
+        jiraPoller.setStatusClassifier(StatusClassifier.fromProperties(config));
+        jiraPoller.setTopic(feed.getTopic());
+        jiraPoller.setIssueTypeLamps(feed.getIssueTypeLamps());
+        String stateFile = feed.getFile("state.file", "jira-state.journal");
+        if (!stateFile.isEmpty()) {
+            long ttlMillis = Long.parseLong(feed.get("state.ttl.hours", "168")) * 3_600_000L;
+            jiraPoller.setStateStore(IssueStateStore.open(Paths.get(stateFile), ttlMillis));
+        }
+        if (Boolean.parseBoolean(feed.get("incremental", "false"))) {
+            JiraWatermark watermark = JiraWatermark.load(
+                    Paths.get(feed.getFile("watermark.file", "jira-watermark.properties")));
+            long skewMillis = Long.parseLong(feed.get("incremental.skew.seconds", "120")) * 1000;
+            String zone = feed.get("timezone", null);
+            jiraPoller.enableIncremental(watermark, skewMillis, zone == null ? ZoneId.systemDefault() : ZoneId.of(zone));
+            log.info("[{}] Incremental polling enabled, watermark file: {}", feed, watermark.getFile());
+        }
+        return jiraPoller;
+    }
 
-        try {
-            log("Starting JIRA integration...");
-            log("JIRA URL: " + jiraUrl);
-            log("JIRA Username: " + jiraUsername);
-            log("JQL Query: " + customJql);
-            log("Poll interval: " + pollInterval + " minutes");
+    /**
+     * Встроенный HTTP сервер на http.port (создается один раз, контексты добавляются по мере надобности)
+     */
+    private static synchronized HttpServer httpServer(Properties config) throws IOException {
+        if (httpServer == null) {
+            int port = Integer.parseInt(config.getProperty("http.port", String.valueOf(DEFAULT_HTTP_PORT)));
+            // По умолчанию только локально: у HTTP сервера нет аутентификации
+            String host = config.getProperty("http.host", "127.0.0.1");
+            httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+            httpServer.setExecutor(executionMode(config).newExecutor("svetoofor-http", 2));
+            httpServer.start();
+            log.info("HTTP server started on {}:{}", host, port);
+        }
+        return httpServer;
+    }
 
-            JiraClient jiraClient = new JiraClient(jiraUrl, jiraUsername, jiraPassword);
-            JiraPoller jiraPoller = new JiraPoller(jiraClient, server, customJql, pollInterval);
-            jiraPoller.start();
+    /**
+     * Точка сбора метрик Prometheus на встроенном HTTP сервере (metrics.enabled, metrics.path).
+     * Выключена по умолчанию: без нее сервер не открывает HTTP порт, если не включены вебхуки.
+     */
+    private static void startMetrics(Properties config) {
+        if (!Boolean.parseBoolean(config.getProperty("metrics.enabled", "false"))) {
+            return;
+        }
+        String path = config.getProperty("metrics.path", "/metrics");
+        try {
+            httpServer(config).createContext(path, new MetricsHandler());
+            log.info("Metrics endpoint: {}", path);
+        } catch (IOException e) {
+            log.error("Failed to start metrics endpoint: {}", e.getMessage(), e);
+        }
+    }
 
-            log("JIRA integration started successfully");
-        } catch (Exception e) {
-            System.err.println("Failed to start JIRA integration: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Прием вебхуков JIRA (jira.webhook.enabled=true); опрос остается сверкой.
+     * Без jira.webhook.token вебхук не включается: любой в сети мог бы зажечь индикаторы.
+     */
+    private static void startWebhook(Properties config, JiraFeed feed, JiraPoller jiraPoller) throws IOException {
+        if (!Boolean.parseBoolean(feed.get("webhook.enabled", "false"))) {
+            return;
         }
+        String token = getConfigValue(config, "jira.webhook.token", "JIRA_WEBHOOK_TOKEN");
+        if (token == null) {
+            log.error("[{}] JIRA webhook disabled: jira.webhook.token (JIRA_WEBHOOK_TOKEN) is not set", feed);
+            return;
+        }
+        String path = feed.getWebhookPath();
+        JiraWebhookHandler handler = new JiraWebhookHandler(jiraPoller, token);
+        // По умолчанию - типы задач, для которых у ленты есть индикатор
+        String types = feed.get("webhook.issue.types", String.join(",", feed.getIssueTypeLamps().keySet()));
+        Set<String> issueTypes = Arrays.stream(types.split(","))
+                .map(String::trim)
+                .filter(type -> !type.isEmpty())
+                .collect(Collectors.toSet());
+        handler.setIssueTypes(issueTypes);
+        handler.setMaxBodyBytes(Integer.parseInt(config.getProperty("jira.webhook.max.body.bytes",
+                String.valueOf(JiraWebhookHandler.DEFAULT_MAX_BODY_BYTES))));
+
+        httpServer(config).createContext(path, handler);
+        log.info("[{}] JIRA webhook endpoint: {} (issue types: {})", feed, path, issueTypes.isEmpty() ? "all" : issueTypes);
     }
 }
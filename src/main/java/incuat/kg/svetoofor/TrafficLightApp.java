@@ -1,6 +1,10 @@
 package incuat.kg.svetoofor;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import incuat.kg.svetoofor.log.Log;
+import incuat.kg.svetoofor.log.LogConfig;
+import incuat.kg.svetoofor.protocol.Command;
+import incuat.kg.svetoofor.protocol.DeflateExtension;
+import incuat.kg.svetoofor.protocol.Lamp;
+import incuat.kg.svetoofor.protocol.WireProtocol;
 import javafx.application.Application;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -12,32 +16,32 @@ import javafx.scene.shape.Ellipse;
 import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
-import javafx.util.Duration;
 import javafx.util.Pair;
 
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 public class TrafficLightApp extends Application {
     private TrafficLightSpec wsClient = new TrafficLightSpec();
+    private final UiDispatcher uiDispatcher = new UiDispatcher(this);
 
     private Ellipse redCircle;
     private Ellipse yellowCircle;
     private Ellipse greenCircle;
 
-    private Timeline redBlinkTimeline;
-    private Timeline yellowBlinkTimeline;
-    private Timeline greenBlinkTimeline;
+    private final LampScheduler lampScheduler = new LampScheduler();
 
-    private boolean isIncidentActive = false;
     private boolean isAdmin = false;
     private Tooltip incidentTooltip;
     private Tooltip alertTooltip;
     private String currentIncidentName;
     private String currentAlertName;
 
+    // Примененные, но еще не отрисованные изменения: seq пакета → момент приема (поток JavaFX)
+    private final Map<Long, Long> pendingRepaints = new HashMap<>();
+
     // Configuration loaded from client.properties
     private String serverAddress = "10.10.90.170";
     private int serverPort = 52521;
@@ -48,28 +52,9 @@ public class TrafficLightApp extends Application {
     private String configPath = "client.properties";  // Путь к конфигу для сохранения
 
     // Логирование
-    private static final DateTimeFormatter LOG_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static PrintWriter logWriter;
-
-    static {
-        try {
-            String logPath = System.getProperty("user.home") + "/AppData/Local/TrafficLightClient/svetoofor.log";
-            File logFile = new File(logPath);
-            logFile.getParentFile().mkdirs();
-            logWriter = new PrintWriter(new FileWriter(logFile, true), true);
-        } catch (IOException e) {
-            System.err.println("Не удалось создать файл логов: " + e.getMessage());
-        }
-    }
-
-    private static void log(String message) {
-        String timestamp = LocalDateTime.now().format(LOG_FORMATTER);
-        String logMessage = "[" + timestamp + "] " + message;
-        System.out.println(logMessage);
-        if (logWriter != null) {
-            logWriter.println(logMessage);
-        }
-    }
+    private static final Log log = Log.get(TrafficLightApp.class);
+    private static final String DEFAULT_LOG_FILE =
+            System.getProperty("user.home") + "/AppData/Local/TrafficLightClient/svetoofor.log";
 
     public static void main(String[] args) {
         launch(args);
@@ -87,6 +72,12 @@ public class TrafficLightApp extends Application {
         primaryStage.close();
     }
 
+    @Override
+    public void stop() {
+        // Закрываем соединение без переподключения
+        wsClient.close();
+    }
+
     private void loadConfiguration() {
         Properties props = new Properties();
         boolean loaded = false;
@@ -95,7 +86,7 @@ public class TrafficLightApp extends Application {
         try (var is = getClass().getClassLoader().getResourceAsStream("client.properties")) {
             if (is != null) {
                 props.load(is);
-                log("Loaded configuration from JAR resource: client.properties");
+                log.info("Loaded configuration from JAR resource: client.properties");
                 loaded = true;
             }
         } catch (IOException e) {
@@ -113,7 +104,7 @@ public class TrafficLightApp extends Application {
             for (String path : configPaths) {
                 try (FileInputStream fis = new FileInputStream(path)) {
                     props.load(fis);
-                    log("Loaded configuration from: " + path);
+                    log.info("Loaded configuration from: {}", path);
                     configPath = path;  // Сохраняем путь для записи
                     loaded = true;
                     break;
@@ -123,10 +114,31 @@ public class TrafficLightApp extends Application {
             }
         }
 
+        Log.configure(LogConfig.fromProperties(props, DEFAULT_LOG_FILE));
+
         // Загружаем параметры из конфигурации (приоритет: переменные окружения > properties файл > значения по умолчанию)
         serverAddress = getConfigValue(props, "server.address", "SERVER_ADDRESS", serverAddress);
         serverPort = Integer.parseInt(getConfigValue(props, "server.port", "SERVER_PORT", String.valueOf(serverPort)));
 
+        // Протокол: binary (по умолчанию) или text; старый сервер сам ответит строками
+        String protocol = getConfigValue(props, "server.protocol", "SERVER_PROTOCOL", "binary");
+        wsClient.setProtocol("text".equalsIgnoreCase(protocol) ? WireProtocol.TEXT_V2 : WireProtocol.BINARY);
+        wsClient.setDeflate(DeflateExtension.fromProperties(props, true));
+        wsClient.setGroups(getConfigValue(props, "server.groups", "SERVER_GROUPS", null));
+        wsClient.setReconnect(
+                Long.parseLong(getConfigValue(props, "ws.reconnect.min.seconds", "WS_RECONNECT_MIN_SECONDS",
+                        String.valueOf(TrafficLightSpec.DEFAULT_RECONNECT_MIN_SECONDS))) * 1000,
+                Long.parseLong(getConfigValue(props, "ws.reconnect.max.seconds", "WS_RECONNECT_MAX_SECONDS",
+                        String.valueOf(TrafficLightSpec.DEFAULT_RECONNECT_MAX_SECONDS))) * 1000);
+        lampScheduler.setCadence(
+                Long.parseLong(getConfigValue(props, "ui.blink.on.ms", "UI_BLINK_ON_MS",
+                        String.valueOf(LampScheduler.DEFAULT_BLINK_ON_MILLIS))),
+                Long.parseLong(getConfigValue(props, "ui.blink.off.ms", "UI_BLINK_OFF_MS",
+                        String.valueOf(LampScheduler.DEFAULT_BLINK_OFF_MILLIS))));
+        wsClient.setPingInterval(Integer.parseInt(getConfigValue(props, "ws.ping.seconds", "WS_PING_SECONDS",
+                String.valueOf(TrafficLightSpec.DEFAULT_PING_SECONDS))));
+        wsClient.setTrace(Boolean.parseBoolean(getConfigValue(props, "ws.trace", "WS_TRACE", "true")));
+
         adminLogin = getConfigValue(props, "admin.login", "ADMIN_LOGIN", adminLogin);
         adminPassword = getConfigValue(props, "admin.password", "ADMIN_PASSWORD", adminPassword);
 
@@ -135,11 +147,11 @@ public class TrafficLightApp extends Application {
 
         // Выводим адрес сервера (может уже содержать ws://)
         if (serverAddress.startsWith("ws://") || serverAddress.startsWith("wss://")) {
-            log("Server: " + serverAddress);
+            log.info("Server: {}", serverAddress);
         } else {
-            log("Server: ws://" + serverAddress + ":" + serverPort);
+            log.info("Server: ws://{}:{}", serverAddress, serverPort);
         }
-        log("Window size: " + windowWidth + "x" + windowHeight);
+        log.info("Window size: {}x{}", windowWidth, windowHeight);
     }
 
     private String getConfigValue(Properties props, String propKey, String envKey, String defaultValue) {
@@ -176,9 +188,9 @@ public class TrafficLightApp extends Application {
                 props.store(fos, "Traffic Light Client Configuration");
             }
 
-            log("Размер окна сохранен: " + windowWidth + "x" + windowHeight);
+            log.info("Размер окна сохранен: {}x{}", windowWidth, windowHeight);
         } catch (IOException e) {
-            System.err.println("Не удалось сохранить размер окна: " + e.getMessage());
+            log.warn("Не удалось сохранить размер окна: {}", e.getMessage());
         }
     }
 
@@ -188,7 +200,7 @@ public class TrafficLightApp extends Application {
             javafx.scene.image.Image icon = new javafx.scene.image.Image(getClass().getResourceAsStream("/44_85245.ico"));
             stage.getIcons().add(icon);
         } catch (Exception e) {
-            System.err.println("Не удалось загрузить иконку: " + e.getMessage());
+            log.warn("Не удалось загрузить иконку: {}", e.getMessage());
         }
 
         Label label = new Label("Выберите роль:");
@@ -208,21 +220,21 @@ public class TrafficLightApp extends Application {
         stage.show();
 
         adminButton.setOnAction(e -> {
-            log("Пользователь выбрал режим: Админ");
+            log.info("Пользователь выбрал режим: Админ");
             if (showLoginDialog()) {
                 isAdmin = true;
-                log("Авторизация админа успешна");
+                log.info("Авторизация админа успешна");
                 showTrafficLightStage();
                 stage.close();
             } else {
-                log("Авторизация админа не удалась - неверные данные");
+                log.info("Авторизация админа не удалась - неверные данные");
                 Alert alert = new Alert(Alert.AlertType.ERROR, "Неверный логин или пароль", ButtonType.OK);
                 alert.showAndWait();
             }
         });
 
         specialistButton.setOnAction(e -> {
-            log("Пользователь выбрал режим: Специалист");
+            log.info("Пользователь выбрал режим: Специалист");
             isAdmin = false;
             showTrafficLightStage();
             stage.close();
@@ -232,8 +244,8 @@ public class TrafficLightApp extends Application {
     private boolean showLoginDialog() {
         // Если логин/пароль не заданы - пропускаем авторизацию
         if (adminLogin == null || adminLogin.isEmpty() || adminPassword == null || adminPassword.isEmpty()) {
-            log("Предупреждение: учетные данные администратора не настроены!");
-            log("Установите admin.login и admin.password в client.properties");
+            log.info("Предупреждение: учетные данные администратора не настроены!");
+            log.info("Установите admin.login и admin.password в client.properties");
             Alert alert = new Alert(Alert.AlertType.WARNING,
                 "Учетные данные администратора не настроены в client.properties\nПроверьте настройки admin.login и admin.password",
                 ButtonType.OK);
@@ -273,10 +285,10 @@ public class TrafficLightApp extends Application {
             String enteredLogin = result.get().getKey();
             String enteredPassword = result.get().getValue();
 
-            log("Попытка входа - Логин: " + enteredLogin);
-            log("Ожидаемый логин: '" + adminLogin + "'");
-            log("Логин совпадает: " + adminLogin.equals(enteredLogin));
-            log("Пароль совпадает: " + adminPassword.equals(enteredPassword));
+            log.info("Попытка входа - Логин: {}", enteredLogin);
+            log.info("Ожидаемый логин: '{}'", adminLogin);
+            log.info("Логин совпадает: {}", adminLogin.equals(enteredLogin));
+            log.info("Пароль совпадает: {}", adminPassword.equals(enteredPassword));
 
             return adminLogin.equals(enteredLogin) && adminPassword.equals(enteredPassword);
         }
@@ -316,7 +328,7 @@ public class TrafficLightApp extends Application {
             javafx.scene.image.Image icon = new javafx.scene.image.Image(getClass().getResourceAsStream("/44_85245.ico"));
             stage.getIcons().add(icon);
         } catch (Exception e) {
-            System.err.println("Не удалось загрузить иконку: " + e.getMessage());
+            log.warn("Не удалось загрузить иконку: {}", e.getMessage());
         }
 
         // Вычисляем масштаб на основе размера окна
@@ -326,11 +338,11 @@ public class TrafficLightApp extends Application {
 
         // Инициализируем круглые сигналы с адаптивным размером
         redCircle = new Ellipse(circleRadius, circleRadius);
-        redCircle.setFill(Color.rgb(40, 40, 40));
         yellowCircle = new Ellipse(circleRadius, circleRadius);
-        yellowCircle.setFill(Color.rgb(40, 40, 40));
         greenCircle = new Ellipse(circleRadius, circleRadius);
-        greenCircle.setFill(Color.rgb(40, 40, 40));
+        lampScheduler.bind(Lamp.INCIDENT, redCircle);
+        lampScheduler.bind(Lamp.ALERT, yellowCircle);
+        lampScheduler.bind(Lamp.QUEUE, greenCircle);
 
         // Всплывающие подсказки для инцидента и алерта
         incidentTooltip = new Tooltip();
@@ -395,15 +407,15 @@ public class TrafficLightApp extends Application {
             if (isAdmin) {
                 // Клик по третьему кругу (очередь мониторинг) - переключение между красным и зеленым
                 Color currentColor = (Color) greenCircle.getFill();
-                if (currentColor.equals(Color.rgb(40, 40, 40)) || currentColor.equals(Color.LIMEGREEN)) {
+                if (currentColor.equals(LampScheduler.OFF) || currentColor.equals(Color.LIMEGREEN)) {
                     // Если выключен или зеленый - включаем красный (очередь большая)
-                    log("Админ переключил очередь: КРАСНЫЙ (большая очередь)");
-                    setQueueColor(greenCircle, Color.RED, "queue_red");
+                    log.info("Админ переключил очередь: КРАСНЫЙ (большая очередь)");
+                    setQueueColor(Color.RED);
                     wsClient.sendMessage("QUEUE_RED");
                 } else {
                     // Если красный - включаем зеленый (очередь не нагружена)
-                    log("Админ переключил очередь: ЗЕЛЁНЫЙ (очередь не нагружена)");
-                    setQueueColor(greenCircle, Color.LIMEGREEN, "queue_green");
+                    log.info("Админ переключил очередь: ЗЕЛЁНЫЙ (очередь не нагружена)");
+                    setQueueColor(Color.LIMEGREEN);
                     wsClient.sendMessage("QUEUE_GREEN");
                 }
                 return;
@@ -412,12 +424,12 @@ public class TrafficLightApp extends Application {
             adminClickCount[0]++;
             if (adminClickCount[0] >= 5) {
                 adminClickCount[0] = 0;
-                log("Секретный вход: попытка авторизации админа");
+                log.info("Секретный вход: попытка авторизации админа");
                 if (showLoginDialog()) {
                     isAdmin = true;
-                    log("Авторизация админа успешна (секретный вход)");
+                    log.info("Авторизация админа успешна (секретный вход)");
                 } else {
-                    log("Авторизация админа не удалась - неверные данные");
+                    log.info("Авторизация админа не удалась - неверные данные");
                     if (adminLogin != null && !adminLogin.isEmpty() && adminPassword != null && !adminPassword.isEmpty()) {
                         Alert alert = new Alert(Alert.AlertType.ERROR, "Неверный логин или пароль", ButtonType.OK);
                         alert.showAndWait();
@@ -428,6 +440,8 @@ public class TrafficLightApp extends Application {
 
         Scene scene = new Scene(root, windowWidth, windowHeight);
         scene.setFill(null); // Прозрачный фон сцены
+        // После раскладки кадра изменения индикаторов уходят на отрисовку - сообщаем серверу
+        scene.addPostLayoutPulseListener(this::reportRepaints);
         root.setStyle("-fx-background-color: transparent;"); // Прозрачный фон root
         stage.setScene(scene);
 
@@ -451,120 +465,102 @@ public class TrafficLightApp extends Application {
         stage.show();
     }
 
-    private void blinkColor(Ellipse circle, Color color, int seconds, String colorName) {
-        // Если зажигается зеленый в кружке инцидента (решение инцидента)
-        if (colorName.equals("green_incident")) {
-            // Останавливаем красный таймер если он есть
-            if (redBlinkTimeline != null) {
-                redBlinkTimeline.stop();
-            }
-            isIncidentActive = false;
-        }
-
-        // Если зажигается зеленый в кружке алерта (решение алерта)
-        if (colorName.equals("green_alert")) {
-            // Останавливаем желтый таймер если он есть
-            if (yellowBlinkTimeline != null) {
-                yellowBlinkTimeline.stop();
-            }
-        }
-
-        // Если зажигается красный - активируем флаг инцидента
-        if (colorName.equals("red")) {
-            isIncidentActive = true;
-        }
-
-        // Зажигаем нужный цвет
-        circle.setFill(color);
-
-        // Останавливаем предыдущий таймер для этого круга
-        Timeline existingTimeline = null;
-        if (circle == redCircle && redBlinkTimeline != null) {
-            existingTimeline = redBlinkTimeline;
-        } else if (circle == yellowCircle && yellowBlinkTimeline != null) {
-            existingTimeline = yellowBlinkTimeline;
-        } else if (circle == greenCircle && greenBlinkTimeline != null) {
-            existingTimeline = greenBlinkTimeline;
-        }
+    private void blinkColor(Lamp lamp, Color color, int seconds) {
+        // Новый сигнал заменяет текущий сигнал индикатора (в т.ч. зеленый - красный)
+        lampScheduler.blink(lamp, color, seconds);
+    }
 
-        if (existingTimeline != null) {
-            existingTimeline.stop();
+    private void turnOffAllLights() {
+        for (Lamp lamp : Lamp.values()) {
+            lampScheduler.off(lamp);
         }
+    }
 
-        // Через указанное время гасим этот цвет (возвращаем темный)
-        Timeline timeline = new Timeline(
-                new KeyFrame(Duration.seconds(seconds), e -> {
-                    circle.setFill(Color.rgb(40, 40, 40));
-                    // Если гаснет красный - снимаем флаг инцидента
-                    if (colorName.equals("red")) {
-                        isIncidentActive = false;
-                    }
-                })
-        );
-        timeline.setCycleCount(1);
-        timeline.play();
-
-        // Сохраняем таймер в зависимости от круга
-        if (circle == redCircle) {
-            redBlinkTimeline = timeline;
-        } else if (circle == yellowCircle) {
-            yellowBlinkTimeline = timeline;
-        } else if (circle == greenCircle) {
-            greenBlinkTimeline = timeline;
-        }
+    // Метод для управления очередью мониторинга (без автоотключения)
+    private void setQueueColor(Color color) {
+        lampScheduler.steady(Lamp.QUEUE, color);
     }
 
-    private void turnOffAllLights() {
-        redCircle.setFill(Color.rgb(40, 40, 40));
-        yellowCircle.setFill(Color.rgb(40, 40, 40));
-        greenCircle.setFill(Color.rgb(40, 40, 40));
+    /**
+     * Очередь команд для UI: сетевые потоки передают команды через нее,
+     * а не через Platform.runLater на каждое сообщение
+     */
+    public UiDispatcher getUiDispatcher() {
+        return uiDispatcher;
     }
 
-    // Метод для управления очередью мониторинга (без автоотключения)
-    private void setQueueColor(Ellipse circle, Color color, String colorName) {
-        // Просто устанавливаем цвет без таймера
-        circle.setFill(color);
+    /**
+     * Изменение из пакета seq применено; задержка отрисовки уйдет серверу после ближайшего кадра
+     */
+    void trackRepaint(long seq, long receivedNanos) {
+        pendingRepaints.putIfAbsent(seq, receivedNanos);
     }
 
+    private void reportRepaints() {
+        if (pendingRepaints.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Map.Entry<Long, Long> entry : pendingRepaints.entrySet()) {
+            wsClient.reportRepaint(entry.getKey(), (now - entry.getValue()) / 1000);
+        }
+        pendingRepaints.clear();
+    }
 
     public void handleServerMessage(String message) {
-        String command = message;
-        String payload = null;
-        int sep = message.indexOf('|');
-        if (sep != -1) {
-            command = message.substring(0, sep);
-            payload = message.substring(sep + 1);
+        Command command = Command.parse(message);
+        if (command != null) {
+            applyCommand(command, Command.payload(message), command.getDurationSeconds());
         }
+    }
 
+    /**
+     * Применение уже разобранной команды (протокол BINARY передает ее без строки)
+     *
+     * @param payload         Название задачи или null
+     * @param durationSeconds Длительность мигания
+     */
+    public void applyCommand(Command command, String payload, int durationSeconds) {
+        if (durationSeconds <= 0) {
+            durationSeconds = command.getDurationSeconds();
+        }
         switch (command) {
-            case "RED_BLINK" -> {
+            case RED_BLINK -> {
                 currentIncidentName = sanitizeTitle(payload);
                 updateTooltip(redCircle, incidentTooltip, buildTooltipText("Инцидент", currentIncidentName));
-                blinkColor(redCircle, Color.RED, 120, "red");
+                blinkColor(Lamp.INCIDENT, Color.RED, durationSeconds);
             }
-            case "YELLOW_BLINK" -> {
+            case YELLOW_BLINK -> {
                 currentAlertName = sanitizeTitle(payload);
                 updateTooltip(yellowCircle, alertTooltip, buildTooltipText("Алерт", currentAlertName));
-                blinkColor(yellowCircle, Color.YELLOW, 120, "yellow");
+                blinkColor(Lamp.ALERT, Color.YELLOW, durationSeconds);
             }
-            case "GREEN_BLINK_INCIDENT" -> {
+            case GREEN_BLINK_INCIDENT -> {
                 currentIncidentName = null;
                 updateTooltip(redCircle, incidentTooltip, null);
-                blinkColor(redCircle, Color.LIMEGREEN, 100, "green_incident");  // Зеленый в кружке инцидента
+                blinkColor(Lamp.INCIDENT, Color.LIMEGREEN, durationSeconds);  // Зеленый в кружке инцидента
             }
-            case "GREEN_BLINK_ALERT" -> {
+            case GREEN_BLINK_ALERT -> {
                 currentAlertName = null;
                 updateTooltip(yellowCircle, alertTooltip, null);
-                blinkColor(yellowCircle, Color.LIMEGREEN, 60, "green_alert");  // Зеленый в кружке алерта
+                blinkColor(Lamp.ALERT, Color.LIMEGREEN, durationSeconds);  // Зеленый в кружке алерта
+            }
+            case QUEUE_RED -> setQueueColor(Color.RED);
+            case QUEUE_GREEN -> setQueueColor(Color.LIMEGREEN);
+            default -> {
+                // GREEN_BLINK (решение задачи неизвестного типа) индикаторы не меняет
             }
-            case "QUEUE_RED" -> setQueueColor(greenCircle, Color.RED, "queue_red");
-            case "QUEUE_GREEN" -> setQueueColor(greenCircle, Color.LIMEGREEN, "queue_green");
         }
     }
 
     private void updateTooltip(Ellipse circle, Tooltip tooltip, String text) {
         if (text == null || text.isEmpty()) {
             Tooltip.uninstall(circle, tooltip);
+            tooltip.setText(null);
+            return;
+        }
+        // Та же задача - подсказка уже установлена
+        if (text.equals(tooltip.getText())) {
             return;
         }
         tooltip.setText(text);
@@ -1,173 +1,595 @@
 package incuat.kg.svetoofor;
 
 
-import javafx.application.Platform;
+import incuat.kg.svetoofor.log.Log;
+import incuat.kg.svetoofor.log.LogConfig;
+import incuat.kg.svetoofor.metrics.Counter;
+import incuat.kg.svetoofor.metrics.Histogram;
+import incuat.kg.svetoofor.metrics.Metrics;
+import incuat.kg.svetoofor.protocol.BinaryFrame;
+import incuat.kg.svetoofor.protocol.DeflateExtension;
+import incuat.kg.svetoofor.protocol.SyncFrame;
+import incuat.kg.svetoofor.protocol.TraceReport;
+import incuat.kg.svetoofor.protocol.WireProtocol;
+import incuat.kg.svetoofor.server.ClientSession;
+import incuat.kg.svetoofor.server.ConnectionRegistry;
+import incuat.kg.svetoofor.server.HandshakeParams;
+import incuat.kg.svetoofor.server.LatencyTracker;
+import incuat.kg.svetoofor.server.SendQueueLimit;
+import incuat.kg.svetoofor.server.SignalTrace;
+import incuat.kg.svetoofor.server.StateSnapshot;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
 import org.java_websocket.server.WebSocketServer;
 import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.handshake.ClientHandshake;
 
-import java.io.*;
 import java.net.InetSocketAddress;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Collections;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class TrafficLightServer extends WebSocketServer {
 
-    private final Set<WebSocket> clients = Collections.synchronizedSet(new HashSet<>());
+    private final ConnectionRegistry clients = new ConnectionRegistry();
+    // Проверка очередей отстающих клиентов
+    private static final long CATCH_UP_INTERVAL_MS = 500;
     private TrafficLightApp app;
 
-    private static final DateTimeFormatter LOG_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static PrintWriter logWriter;
+    private static final Log log = Log.get(TrafficLightServer.class);
 
-    static {
-        try {
-            // Явно указываем путь к логу
-            String logPath = "/home/fudo/svetofor/svetofor/svetoofor-server.log";
-            File logFile = new File(logPath);
-            logWriter = new PrintWriter(new FileWriter(logFile, true), true);
-        } catch (IOException e) {
-            System.err.println("Не удалось создать файл логов: " + e.getMessage());
-        }
-    }
+    // Текущее состояние светофора для синхронизации новых клиентов по топикам:
+    // последний сигнал каждого индикатора + номер рассылки (seq, общий для топиков)
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong lastSeq = new AtomicLong();
+    private final ConcurrentHashMap<String, StateSnapshot> states = new ConcurrentHashMap<>();
+    // Состояние топиков без рассылок: снимок создается только рассылкой,
+    // подписка на топик его не создает
+    private final StateSnapshot emptyState = StateSnapshot.initial(epoch);
+    // Номер рассылки и ее постановка в очереди - под блокировкой своего топика,
+    // порядок кадров в очереди клиента - под блокировкой его сессии (ClientSession):
+    // подключение и досинхронизация не ждут рассылок в чужие очереди
+    private final ConcurrentHashMap<String, Object> topicLocks = new ConcurrentHashMap<>();
+    // Задержка сигналов по этапам (отчеты ACK/PAINT клиентов)
+    private final LatencyTracker latency = new LatencyTracker(epoch);
 
-    private static void log(String message) {
-        String timestamp = LocalDateTime.now().format(LOG_FORMATTER);
-        String logMessage = "[" + timestamp + "] " + message;
-        System.out.println(logMessage);
-        if (logWriter != null) {
-            logWriter.println(logMessage);
-        }
-    }
+    // Предел очереди отправки клиента (null - без предела) и отстающие клиенты
+    private volatile SendQueueLimit sendQueueLimit;
+    private final Set<ClientSession> behind = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService catchUpScheduler;
+    private Counter queueOverflows;
+    private Counter framesSkipped;
+    private Counter resyncs;
 
-    // Хранение текущего состояния светофора для синхронизации новых клиентов
-    // Просто сохраняем последний сигнал для каждого индикатора
-    private String currentRedState = null;      // RED_BLINK или GREEN_BLINK_INCIDENT или null
-    private String currentYellowState = null;   // YELLOW_BLINK или GREEN_BLINK_ALERT или null
-    private String currentQueueState = null;    // QUEUE_RED или QUEUE_GREEN или null
+    private static final Counter opened = Metrics.counter("svetoofor_ws_connections_opened_total",
+            "WebSocket connections opened");
+    private static final Counter closed = Metrics.counter("svetoofor_ws_connections_closed_total",
+            "WebSocket connections closed");
+    private static final Counter broadcasts = Metrics.counter("svetoofor_broadcasts_total",
+            "Messages fanned out to subscribers");
+    private static final Histogram fanOutTime = Metrics.histogram("svetoofor_broadcast_fanout_seconds",
+            "Time to encode and enqueue one message for all subscribers of a topic");
 
     public TrafficLightServer(int port) {
         super(new InetSocketAddress(port));
+        registerGauges();
+    }
+
+    /**
+     * Сервер со сжатием permessage-deflate для клиентов, которые его предлагают
+     */
+    public TrafficLightServer(int port, DeflateExtension deflate) {
+        super(new InetSocketAddress(port), List.of(deflate.draft()));
+        registerGauges();
+        log.info("WebSocket compression: {}", deflate);
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("svetoofor_ws_clients", "Connected WebSocket clients", clients::size);
+        Metrics.gauge("svetoofor_ws_clients_behind", "Clients excluded from fan-out by a full send queue",
+                behind::size);
+        Metrics.gauge("svetoofor_ws_send_queue_frames", "Frames waiting in all outbound queues",
+                () -> sendQueueDepth(false));
+        Metrics.gauge("svetoofor_ws_send_queue_max_frames", "Longest outbound queue of a single client",
+                () -> sendQueueDepth(true));
+    }
+
+    // Очереди отправки Java-WebSocket (WebSocketImpl.outQueue), считаются только при сборе метрик
+    private long sendQueueDepth(boolean max) {
+        long result = 0;
+        for (WebSocket conn : clients.connections()) {
+            if (conn instanceof WebSocketImpl) {
+                int size = ((WebSocketImpl) conn).outQueue.size();
+                result = max ? Math.max(result, size) : result + size;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Предел очереди отправки клиента (ws.send.queue.*)
+     *
+     * @param limit Предел или null - очереди не ограничены
+     */
+    public synchronized void setSendQueueLimit(SendQueueLimit limit) {
+        if (limit == null) {
+            this.sendQueueLimit = null;
+            return;
+        }
+        // Счетчики - до публикации предела: рассылка, увидевшая предел, видит и их
+        String policy = limit.getPolicy().getId();
+        queueOverflows = Metrics.counter("svetoofor_ws_send_queue_overflows_total",
+                "Clients that exceeded the send queue limit", "policy", policy);
+        framesSkipped = Metrics.counter("svetoofor_ws_frames_skipped_total",
+                "Broadcast frames not queued for clients that are behind", "policy", policy);
+        resyncs = Metrics.counter("svetoofor_ws_resyncs_total",
+                "Catch-up frames sent to clients whose send queue drained", "policy", policy);
+        this.sendQueueLimit = limit;
+        if (catchUpScheduler == null && limit.getPolicy() != SendQueueLimit.Policy.DISCONNECT) {
+            catchUpScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ws-catch-up");
+                thread.setDaemon(true);
+                return thread;
+            });
+            catchUpScheduler.scheduleWithFixedDelay(this::catchUp, CATCH_UP_INTERVAL_MS, CATCH_UP_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+        log.info("WebSocket send queue limit: {}", limit);
     }
 
     public void setApp(TrafficLightApp app) {
         this.app = app;
     }
 
+    /**
+     * Объявляем клиенту поддержку отчетов о задержке (TraceReport)
+     */
+    @Override
+    public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+                                                                      ClientHandshake request) throws InvalidDataException {
+        ServerHandshakeBuilder response = super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+        response.put(TraceReport.HEADER, "1");
+        return response;
+    }
+
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
-        clients.add(conn);
-        log("Client connected: " + conn.getRemoteSocketAddress());
+        HandshakeParams params = HandshakeParams.of(handshake);
+        ClientSession session = clients.register(conn, params);
+        opened.increment();
+        log.info("Client connected: {} (id={}, version={}, groups={})", conn.getRemoteSocketAddress(), session.getId(), session.getClientVersion(), session.getGroups());
+
+        sendState(conn, session, params);
+    }
 
-        // Отправляем новому клиенту все сохраненные состояния
-        // Красный индикатор (инциденты)
-        if (currentRedState != null) {
-            conn.send(currentRedState);
-            log("Sent current red state to new client: " + currentRedState);
+    /**
+     * Синхронизация нового клиента с текущим состоянием каждого его топика.
+     * Клиенты TEXT_V2 и BINARY получают готовый пакет SNAPSHOT, а при
+     * переподключении с ?epoch=E&since=N - только DELTA с изменениями после N.
+     * Старые клиенты получают сохраненные сигналы отдельными сообщениями.
+     */
+    private void sendState(WebSocket conn, ClientSession session, HandshakeParams params) {
+        long epoch = parseLong(params.get(SyncFrame.EPOCH_PARAM, null));
+        long since = parseLong(params.get(SyncFrame.SINCE_PARAM, null));
+        // Снимки читаются под блокировкой сессии: рассылка, успевшая в очередь
+        // клиента раньше, в них уже учтена, а следующие встанут после них
+        synchronized (session) {
+            for (Map.Entry<String, StateSnapshot> state : statesBySeq(session.getGroups())) {
+                sendState(conn, session, state.getKey(), state.getValue(), epoch, since);
+            }
         }
+    }
 
-        // Желтый индикатор (алерты)
-        if (currentYellowState != null) {
-            conn.send(currentYellowState);
-            log("Sent current yellow state to new client: " + currentYellowState);
+    /**
+     * Снимки топиков по возрастанию seq: клиент нескольких топиков получает
+     * их пакеты в порядке номеров
+     */
+    private List<Map.Entry<String, StateSnapshot>> statesBySeq(Set<String> topics) {
+        List<Map.Entry<String, StateSnapshot>> snapshots = new ArrayList<>(topics.size());
+        for (String topic : topics) {
+            snapshots.add(Map.entry(topic, getState(topic)));
+        }
+        snapshots.sort(Comparator.comparingLong(state -> state.getValue().getSeq()));
+        return snapshots;
+    }
+
+    private void sendState(WebSocket conn, ClientSession session, String topic, StateSnapshot snapshot,
+                           long epoch, long since) {
+        if (session.getProtocol() == WireProtocol.TEXT_LEGACY) {
+            List<String> messages = snapshot.legacyMessages();
+            for (String message : messages) {
+                conn.send(message);
+            }
+            session.markQueued(topic, snapshot.getSeq(), snapshot.getSeq());
+            if (!messages.isEmpty()) {
+                log.info("Sent current state to new client: {}", messages);
+            }
+            return;
+        }
+
+        if (snapshot.canResume(epoch, since, lastSeq.get())) {
+            sendChanges(conn, session, topic, snapshot, since);
+            log.info("Resumed client {} from seq {} (current seq {})", session.getId(), since, snapshot.getSeq());
+            return;
+        }
+
+        long seq = snapshot.getSeq();
+        long frameSeq = frameSeq(session, seq);
+        if (frameSeq != seq) {
+            send(conn, session.getProtocol(), true, snapshot.getEpoch(), frameSeq, snapshot.legacyMessages());
+        } else if (session.getProtocol() == WireProtocol.BINARY) {
+            conn.send(snapshot.getBinaryFrame());
+        } else {
+            conn.send(snapshot.getFrame());
         }
+        session.markQueued(topic, seq, frameSeq);
+        log.info("Sent state snapshot seq {} to new client {}", frameSeq, session.getId());
+    }
+
+    /**
+     * Номер кадра для очереди клиента. Кадр, который встанет за кадром с не
+     * меньшим seq (другого топика или рассылки, успевшей раньше снимка),
+     * получает новый номер - иначе клиент отбросит его как устаревший.
+     * Вызывается под блокировкой сессии.
+     */
+    private long frameSeq(ClientSession session, long seq) {
+        return session.isOutOfOrder(seq) ? lastSeq.incrementAndGet() : seq;
+    }
 
-        // Зеленый индикатор (очередь мониторинга)
-        if (currentQueueState != null) {
-            conn.send(currentQueueState);
-            log("Sent current queue state to new client: " + currentQueueState);
+    private static void send(WebSocket conn, WireProtocol protocol, boolean snapshot, long epoch, long seq,
+                             List<String> commands) {
+        if (protocol == WireProtocol.BINARY) {
+            conn.send(BinaryFrame.encode(snapshot ? BinaryFrame.TYPE_SNAPSHOT : BinaryFrame.TYPE_DELTA, epoch, seq, commands));
+        } else {
+            conn.send(SyncFrame.encode(snapshot ? SyncFrame.SNAPSHOT : SyncFrame.DELTA, epoch, seq, commands));
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-        clients.remove(conn);
-        log("Client disconnected: " + conn.getRemoteSocketAddress());
+        ClientSession session = clients.unregister(conn);
+        if (session != null) {
+            closed.increment();
+            behind.remove(session);
+        }
+        log.info("Client disconnected: {} (id={})", conn.getRemoteSocketAddress(), session != null ? session.getId() : null);
+    }
+
+    @Override
+    public void onWebsocketPong(WebSocket conn, Framedata f) {
+        super.onWebsocketPong(conn, f);
+        ClientSession session = clients.get(conn);
+        if (session != null) {
+            session.markAck(System.currentTimeMillis());
+        }
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
-        log("Получено сообщение: " + message);
+        ClientSession session = clients.get(conn);
+        if (session != null) {
+            session.markAck(System.currentTimeMillis());
+        }
 
-        // Сохраняем текущее состояние для синхронизации
-        updateState(message);
+        // Отчеты о задержке не рассылаются
+        TraceReport report = TraceReport.decode(message);
+        if (report != null) {
+            latency.onReport(report);
+            return;
+        }
+        log.info("Получено сообщение: {}", message);
 
-        // Рассылаем всем подключенным клиентам
-        synchronized (clients) {
-            for (WebSocket client : clients) {
-                client.send(message);
-            }
+        // Сохраняем текущее состояние и рассылаем подписчикам топиков отправителя
+        Set<String> topics = session != null ? session.getGroups() : Set.of(ConnectionRegistry.DEFAULT_TOPIC);
+        for (String topic : topics) {
+            publish(topic, message, null);
         }
 
         // Вызываем обработчик в TrafficLightApp (в UI потоке JavaFX)
         if (app != null) {
-            Platform.runLater(() -> app.handleServerMessage(message));
+            app.getUiDispatcher().submit(message);
         }
     }
 
     @Override
     public void onError(WebSocket conn, Exception ex) {
-        ex.printStackTrace();
+        log.error("WebSocket error: {}", ex.getMessage(), ex);
     }
 
     @Override
     public void onStart() {
-        log("Server started on port " + getPort());
+        log.info("Server started on port {}", getPort());
     }
 
+    /**
+     * Рассылка в топик по умолчанию
+     */
     public void broadcast(String message) {
-        log("Рассылка сообщения: " + message);
+        broadcast(ConnectionRegistry.DEFAULT_TOPIC, message);
+    }
 
-        // Сохраняем текущее состояние для синхронизации
-        updateState(message);
+    /**
+     * Рассылка подписчикам топика
+     *
+     * @param topic Топик (null - по умолчанию)
+     */
+    public void broadcast(String topic, String message) {
+        broadcast(topic, message, null);
+    }
 
-        synchronized (clients) {
-            for (WebSocket client : clients) {
-                client.send(message);
-            }
+    /**
+     * Рассылка сигнала с происхождением для трассировки задержки
+     *
+     * @param topic Топик (null - по умолчанию)
+     * @param trace Время события в JIRA и обнаружения (null - без трассировки)
+     */
+    public void broadcast(String topic, String message, SignalTrace trace) {
+        String target = topic != null ? ConnectionRegistry.normalizeTopic(topic) : null;
+        if (target == null) {
+            target = ConnectionRegistry.DEFAULT_TOPIC;
         }
+        log.info("Рассылка сообщения [{}]: {}", target, message);
+
+        // Сохраняем текущее состояние для синхронизации
+        publish(target, message, trace);
 
         // Также вызываем локальный обработчик
         if (app != null) {
-            Platform.runLater(() -> app.handleServerMessage(message));
+            app.getUiDispatcher().submit(message);
+        }
+    }
+
+    /**
+     * Обновление состояния топика и рассылка под блокировкой топика: кадры
+     * одного топика уходят в очереди клиентов в порядке seq. Рассылки в разные
+     * топики, подключения и досинхронизация друг друга не ждут.
+     */
+    private void publish(String topic, String message, SignalTrace trace) {
+        synchronized (topicLocks.computeIfAbsent(topic, t -> new Object())) {
+            fanOut(topic, updateState(topic, message), message, trace);
         }
     }
 
     /**
-     * Обновляет сохраненное состояние светофора на основе полученного сообщения
-     * Просто сохраняем последний сигнал без проверок времени
+     * Рассылка сообщения подписчикам топика.
+     * Кадр кодируется один раз на протокол и draft (как в WebSocketServer.broadcast)
+     * и переиспользуется для всех клиентов; при сжатии кадр сжимается для первого
+     * клиента и уходит остальным уже сжатым (DeflateExtension). Обход реестра
+     * не блокирует onOpen/onClose; постановка в очередь клиента - под блокировкой
+     * его сессии, поэтому кадр не обгонит снимок или досинхронизацию.
      */
-    private void updateState(String message) {
-        String command = message;
-        int sep = message.indexOf('|');
-        if (sep != -1) {
-            command = message.substring(0, sep);
+    private void fanOut(String topic, StateSnapshot snapshot, String message, SignalTrace trace) {
+        long start = System.nanoTime();
+        long seq = snapshot.getSeq();
+        SendQueueLimit limit = sendQueueLimit;
+        for (WireProtocol protocol : WireProtocol.values()) {
+            Collection<WebSocket> connections = clients.connections(topic, protocol);
+            if (connections.isEmpty()) {
+                continue;
+            }
+            Object data = switch (protocol) {
+                case TEXT_LEGACY -> message;
+                case TEXT_V2 -> SyncFrame.encode(SyncFrame.DELTA, snapshot.getEpoch(), seq, List.of(message));
+                case BINARY -> ByteBuffer.wrap(BinaryFrame.encode(BinaryFrame.TYPE_DELTA, snapshot.getEpoch(), seq,
+                        List.of(message)));
+            };
+            Map<Draft, List<Framedata>> frames = new HashMap<>();
+            for (WebSocket conn : connections) {
+                ClientSession session = clients.get(conn);
+                if (session == null || (limit != null && !admit(conn, session, limit, seq))) {
+                    continue;
+                }
+                try {
+                    synchronized (session) {
+                        if (session.isBehind()) {
+                            // Пропущенное придет досинхронизацией
+                            framesSkipped.increment();
+                            continue;
+                        }
+                        if (session.isQueued(topic, seq)) {
+                            // Уже в снимке или досинхронизации, поставленных раньше
+                            continue;
+                        }
+                        long frameSeq = protocol == WireProtocol.TEXT_LEGACY ? seq : frameSeq(session, seq);
+                        if (frameSeq == seq) {
+                            conn.sendFrame(frames.computeIfAbsent(conn.getDraft(), draft -> createFrames(draft, data)));
+                        } else {
+                            send(conn, protocol, false, snapshot.getEpoch(), frameSeq, List.of(message));
+                        }
+                        session.markQueued(topic, seq, frameSeq);
+                    }
+                } catch (WebsocketNotConnectedException e) {
+                    // Соединение закрылось во время рассылки - onClose уберет сессию
+                }
+            }
         }
+        broadcasts.increment();
+        fanOutTime.recordSince(start);
+        latency.emitted(seq, trace);
+    }
+
+    private static List<Framedata> createFrames(Draft draft, Object data) {
+        return data instanceof String ? draft.createFrames((String) data, false)
+                : draft.createFrames(((ByteBuffer) data).duplicate(), false);
+    }
 
-        switch (command) {
-            // Красный индикатор (инциденты)
-            case "RED_BLINK":
-            case "GREEN_BLINK_INCIDENT":
-                currentRedState = message;
-                break;
+    /**
+     * Можно ли поставить клиенту кадр рассылки seq по пределу очереди.
+     * Размер очереди - атомарный счетчик LinkedBlockingQueue, проверка дешевая.
+     */
+    private boolean admit(WebSocket conn, ClientSession session, SendQueueLimit limit, long seq) {
+        if (!(conn instanceof WebSocketImpl)) {
+            return true;
+        }
+        if (conn.isClosing()) {
+            // Уже закрывается (в т.ч. после переполнения) - кадры ему не нужны
+            return false;
+        }
+        if (session.isBehind()) {
+            // Окончательная проверка - под блокировкой сессии в fanOut
+            return true;
+        }
+        int queued = ((WebSocketImpl) conn).outQueue.size();
+        if (queued < limit.getMaxFrames()) {
+            return true;
+        }
 
-            // Желтый индикатор (алерты)
-            case "YELLOW_BLINK":
-            case "GREEN_BLINK_ALERT":
-                currentYellowState = message;
-                break;
+        if (limit.getPolicy() == SendQueueLimit.Policy.DISCONNECT) {
+            queueOverflows.increment();
+            log.warn("Client {} ({}) send queue overflow: {} frames, disconnecting",
+                    session.getId(), conn.getRemoteSocketAddress(), queued);
+            // Закрывающий кадр встает в очередь за неотправленными; если клиент
+            // не ответит, соединение разорвет проверка ping (connectionLostTimeout)
+            conn.close(CloseFrame.TRY_AGAIN_LATER, "Send queue overflow");
+            return false;
+        }
+        // Кадры до seq уже в очереди и дойдут; остальное придет досинхронизацией
+        if (session.markBehind(seq - 1, System.currentTimeMillis())) {
+            queueOverflows.increment();
+            behind.add(session);
+            log.warn("Client {} ({}) send queue overflow: {} frames, {}", session.getId(),
+                    conn.getRemoteSocketAddress(), queued, limit.getPolicy() == SendQueueLimit.Policy.MARK_STALE
+                            ? "marked stale" : "dropping intermediate frames");
+        }
+        framesSkipped.increment();
+        return false;
+    }
 
-            // Зеленый индикатор (очередь мониторинга)
-            case "QUEUE_RED":
-            case "QUEUE_GREEN":
-                currentQueueState = message;
-                break;
+    /**
+     * Возврат отстающих клиентов, чьи очереди освободились: DELTA с последним
+     * состоянием индикаторов, изменившихся после отставания (drop), или полный
+     * SNAPSHOT (stale). Отправка и снятие отметки - под блокировкой сессии,
+     * поэтому рассылка не проскочит между ними: все, что рассылка пропустила,
+     * уже есть в снимке состояния. Вызывается планировщиком раз в CATCH_UP_INTERVAL_MS.
+     */
+    void catchUp() {
+        SendQueueLimit limit = sendQueueLimit;
+        if (limit == null || behind.isEmpty()) {
+            return;
         }
+        for (ClientSession session : behind) {
+            WebSocket conn = session.getConnection();
+            if (!conn.isOpen()) {
+                behind.remove(session);
+                continue;
+            }
+            if (!limit.canCatchUp(((WebSocketImpl) conn).outQueue.size())) {
+                continue;
+            }
+            try {
+                synchronized (session) {
+                    long since = session.getBehindSince();
+                    for (Map.Entry<String, StateSnapshot> state : statesBySeq(session.getGroups())) {
+                        if (limit.getPolicy() == SendQueueLimit.Policy.MARK_STALE) {
+                            sendState(conn, session, state.getKey(), state.getValue(), -1, -1);
+                        } else {
+                            sendChanges(conn, session, state.getKey(), state.getValue(), since);
+                        }
+                    }
+                    session.clearBehind();
+                }
+                behind.remove(session);
+                resyncs.increment();
+                log.info("Client {} caught up after {} ms behind", session.getId(),
+                        System.currentTimeMillis() - session.getBehindAt());
+            } catch (RuntimeException e) {
+                // Соединение закрылось во время отправки - onClose уберет сессию
+                log.warn("Catch-up failed for client {}: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Индикаторы топика, изменившиеся после since. Вызывается под блокировкой сессии.
+     */
+    private void sendChanges(WebSocket conn, ClientSession session, String topic, StateSnapshot snapshot, long since) {
+        List<String> changed = snapshot.legacyMessagesSince(since);
+        if (changed.isEmpty()) {
+            return;
+        }
+        long seq = snapshot.getSeq();
+        if (session.getProtocol() == WireProtocol.TEXT_LEGACY) {
+            changed.forEach(conn::send);
+            session.markQueued(topic, seq, seq);
+            return;
+        }
+        long frameSeq = frameSeq(session, seq);
+        send(conn, session.getProtocol(), false, snapshot.getEpoch(), frameSeq, changed);
+        session.markQueued(topic, seq, frameSeq);
+    }
+
+    @Override
+    public void stop(int timeout, String closeMessage) throws InterruptedException {
+        synchronized (this) {
+            if (catchUpScheduler != null) {
+                catchUpScheduler.shutdownNow();
+                catchUpScheduler = null;
+            }
+        }
+        super.stop(timeout, closeMessage);
+    }
+
+    /**
+     * @return Текущий снимок состояния топика по умолчанию
+     */
+    public StateSnapshot getState() {
+        return getState(ConnectionRegistry.DEFAULT_TOPIC);
+    }
+
+    /**
+     * @return Текущий снимок состояния топика (пустой, если рассылок в него не было)
+     */
+    public StateSnapshot getState(String topic) {
+        return states.getOrDefault(topic, emptyState);
+    }
+
+    /**
+     * @return Реестр подключенных клиентов с их метаданными
+     */
+    public ConnectionRegistry getClients() {
+        return clients;
+    }
+
+    /**
+     * Обновляет сохраненное состояние топика на основе полученного сообщения.
+     * Новый снимок подменяется атомарно, seq растет с каждой рассылкой.
+     *
+     * @return Снимок, в котором учтено сообщение
+     */
+    private StateSnapshot updateState(String topic, String message) {
+        return states.compute(topic, (t, current) ->
+                (current != null ? current : StateSnapshot.initial(epoch)).apply(message, lastSeq.incrementAndGet()));
     }
 
     public static void main(String[] args) {
+        Log.configure(LogConfig.fromProperties(new Properties(), ServerLauncher.DEFAULT_LOG_FILE));
         TrafficLightServer server = new TrafficLightServer(52521); // порт 52521
         server.start();
     }
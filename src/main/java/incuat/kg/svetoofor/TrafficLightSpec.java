@@ -1,76 +1,332 @@
 package incuat.kg.svetoofor;
 
+import incuat.kg.svetoofor.log.Log;
+import incuat.kg.svetoofor.protocol.BinaryFrame;
+import incuat.kg.svetoofor.protocol.DeflateExtension;
+import incuat.kg.svetoofor.protocol.Handshake;
+import incuat.kg.svetoofor.protocol.SyncFrame;
+import incuat.kg.svetoofor.protocol.TraceReport;
+import incuat.kg.svetoofor.protocol.WireProtocol;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.handshake.ServerHandshake;
 import java.net.URI;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class TrafficLightSpec {
 
-    private WebSocketClient client;
-    private static final DateTimeFormatter LOG_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static PrintWriter logWriter;
+    private static final String CLIENT_VERSION = "1.0.0";
 
-    static {
-        try {
-            String logPath = System.getProperty("user.home") + "/AppData/Local/TrafficLightClient/svetoofor.log";
-            File logFile = new File(logPath);
-            logFile.getParentFile().mkdirs();
-            logWriter = new PrintWriter(new FileWriter(logFile, true), true);
-        } catch (IOException e) {
-            System.err.println("Не удалось создать файл логов: " + e.getMessage());
-        }
+    public static final int DEFAULT_RECONNECT_MIN_SECONDS = 1;
+    public static final int DEFAULT_RECONNECT_MAX_SECONDS = 60;
+    public static final int DEFAULT_PING_SECONDS = 15;
+
+    private volatile WebSocketClient client;
+    private WireProtocol protocol = WireProtocol.BINARY;
+    private DeflateExtension deflate;
+    private String groups;
+
+    // Переподключение: экспоненциальная задержка с джиттером
+    private long reconnectMinMillis = DEFAULT_RECONNECT_MIN_SECONDS * 1000L;
+    private long reconnectMaxMillis = DEFAULT_RECONNECT_MAX_SECONDS * 1000L;
+    private int pingSeconds = DEFAULT_PING_SECONDS;
+    private int failedAttempts = 0;
+    private volatile boolean closed = false;
+    private String serverUri;
+    private TrafficLightApp app;
+    private final ScheduledExecutorService reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "svetoofor-reconnect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Последнее известное состояние сервера для возобновления синхронизации
+    private volatile long serverEpoch = -1;
+    private volatile long lastSeq = -1;
+    // Отчеты о задержке (ACK/PAINT): включены у клиента и поддерживаются сервером
+    private boolean trace = true;
+    private volatile boolean serverTraces;
+    private static final Log log = Log.get(TrafficLightSpec.class);
+
+    /**
+     * Протокол, запрашиваемый у сервера (TEXT_V2 или BINARY)
+     */
+    public void setProtocol(WireProtocol protocol) {
+        this.protocol = protocol;
     }
 
-    private static void log(String message) {
-        String timestamp = LocalDateTime.now().format(LOG_FORMATTER);
-        String logMessage = "[" + timestamp + "] " + message;
-        System.out.println(logMessage);
-        if (logWriter != null) {
-            logWriter.println(logMessage);
-        }
+    /**
+     * Топики (доски команд) через запятую, null - топик по умолчанию
+     */
+    public void setGroups(String groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Предлагать серверу сжатие permessage-deflate (null - не предлагать)
+     */
+    public void setDeflate(DeflateExtension deflate) {
+        this.deflate = deflate;
+    }
+
+    /**
+     * Отправлять серверу отчеты о приеме и отрисовке сигналов (по умолчанию - да,
+     * если сервер их поддерживает)
+     */
+    public void setTrace(boolean trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Границы задержки переподключения
+     */
+    public void setReconnect(long minMillis, long maxMillis) {
+        this.reconnectMinMillis = Math.max(100, minMillis);
+        this.reconnectMaxMillis = Math.max(this.reconnectMinMillis, maxMillis);
+    }
+
+    /**
+     * Интервал ping/pong, с. Соединение без ответа на ping считается
+     * потерянным через полтора интервала (0 - не проверять)
+     */
+    public void setPingInterval(int seconds) {
+        this.pingSeconds = seconds;
     }
 
+    /**
+     * Подключение к серверу. При потере соединения клиент переподключается
+     * сам и возобновляет синхронизацию с последнего полученного seq.
+     */
     public void connect(String serverUri, TrafficLightApp app) {
+        this.serverUri = serverUri;
+        this.app = app;
+        this.closed = false;
+        openClient();
+    }
+
+    /**
+     * Закрыть соединение и остановить переподключение
+     */
+    public void close() {
+        closed = true;
+        reconnector.shutdownNow();
+        WebSocketClient current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Новое соединение. WebSocketClient нельзя переиспользовать с другим адресом,
+     * а адрес меняется - в нем точка возобновления (epoch/since).
+     */
+    private void openClient() {
+        if (closed) {
+            return;
+        }
+        URI uri;
         try {
-            client = new WebSocketClient(new URI(serverUri)) {
-                @Override
-                public void onOpen(ServerHandshake handshake) {
-                    log("Подключено к серверу: " + serverUri);
+            uri = new URI(buildUri(serverUri));
+        } catch (URISyntaxException e) {
+            log.error("Некорректный адрес сервера: {}", serverUri, e);
+            return;
+        }
+        Draft draft = deflate != null ? deflate.draft() : new Draft_6455();
+        WebSocketClient newClient = new WebSocketClient(uri, draft) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+                serverTraces = trace && handshake.hasFieldValue(TraceReport.HEADER);
+                onConnected();
+            }
+
+            @Override
+            public void onMessage(String message) {
+                log.debug("Получена команда от сервера: {}", message);
+
+                SyncFrame frame = SyncFrame.decode(message);
+                if (frame == null) {
+                    // Одиночная команда (старый формат)
+                    app.getUiDispatcher().submit(message);
+                    return;
                 }
 
-                @Override
-                public void onMessage(String message) {
-                    log("Получена команда от сервера: " + message);
-                    // Сообщение от сервера → запускаем метод в JavaFX
-                    javafx.application.Platform.runLater(() -> app.handleServerMessage(message));
+                long receivedNanos = System.nanoTime();
+                if (!advance(frame.getEpoch(), frame.getSeq())) {
+                    return;
+                }
+                long traceSeq = acknowledge(this, frame.isSnapshot(), frame.getEpoch(), frame.getSeq());
+                // Сообщения от сервера → в JavaFX, по последней команде на индикатор
+                for (String command : frame.getCommands()) {
+                    app.getUiDispatcher().submit(command, traceSeq, receivedNanos);
                 }
+            }
 
-                @Override
-                public void onClose(int code, String reason, boolean remote) {
-                    log("Отключено от сервера. Код: " + code + ", Причина: " + reason);
+            @Override
+            public void onMessage(ByteBuffer bytes) {
+                long receivedNanos = System.nanoTime();
+                BinaryFrame frame = BinaryFrame.decode(bytes);
+                if (frame == null) {
+                    log.warn("Неизвестный двоичный пакет от сервера ({} байт)", bytes.remaining());
+                    return;
                 }
+                log.debug("Получен пакет от сервера: seq {}, команд {}", frame.getSeq(), frame.getEntries().size());
 
-                @Override
-                public void onError(Exception ex) {
-                    log("Ошибка WebSocket: " + ex.getMessage());
-                    ex.printStackTrace();
+                if (!advance(frame.getEpoch(), frame.getSeq())) {
+                    return;
                 }
-            };
-            client.connect();
-        } catch (Exception e) {
-            e.printStackTrace();
+                long traceSeq = acknowledge(this, frame.isSnapshot(), frame.getEpoch(), frame.getSeq());
+                // Команды уже разобраны - передаем без разбора строк
+                for (BinaryFrame.Entry entry : frame.getEntries()) {
+                    if (entry.getCommand() != null) {
+                        app.getUiDispatcher().submit(entry.getCommand(), entry.getPayload(), entry.getDurationSeconds(),
+                                traceSeq, receivedNanos);
+                    } else {
+                        app.getUiDispatcher().submit(entry.getPayload(), traceSeq, receivedNanos);
+                    }
+                }
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+                onDisconnected(this, code, reason);
+            }
+
+            @Override
+            public void onError(Exception ex) {
+                // Ошибка подключения - штатная ситуация при недоступном сервере
+                if (!isOpen()) {
+                    log.warn("Ошибка WebSocket: {}", ex.getMessage());
+                } else {
+                    log.error("Ошибка WebSocket: {}", ex.getMessage(), ex);
+                }
+            }
+        };
+        newClient.setConnectionLostTimeout(pingSeconds);
+        client = newClient;
+        newClient.connect();
+    }
+
+    /**
+     * Учет номера принятого пакета. Сервер отправляет пакеты по возрастанию seq,
+     * поэтому пакет того же запуска сервера с seq не больше последнего - повтор
+     * или устаревший (например, досинхронизация после уже полученной рассылки)
+     *
+     * @return false, если пакет нужно отбросить
+     */
+    private boolean advance(long epoch, long seq) {
+        if (epoch == serverEpoch && seq <= lastSeq) {
+            log.debug("Отброшен устаревший пакет: seq {} (последний {})", seq, lastSeq);
+            return false;
+        }
+        serverEpoch = epoch;
+        lastSeq = seq;
+        return true;
+    }
+
+    /**
+     * ACK на пакет с изменениями - сразу в потоке приема, чтобы сервер измерил сеть
+     *
+     * @return seq для отчета об отрисовке или -1, если отчеты не нужны
+     */
+    private long acknowledge(WebSocketClient source, boolean snapshot, long epoch, long seq) {
+        if (!serverTraces || snapshot) {
+            return -1;
+        }
+        source.send(TraceReport.ack(epoch, seq));
+        return seq;
+    }
+
+    /**
+     * Отчет об отрисовке изменения из пакета seq
+     *
+     * @param micros Микросекунды от приема пакета до отрисовки
+     */
+    public void reportRepaint(long seq, long micros) {
+        WebSocketClient current = client;
+        if (serverTraces && current != null && current.isOpen()) {
+            current.send(TraceReport.paint(serverEpoch, seq, micros));
+        }
+    }
+
+    private void onConnected() {
+        synchronized (reconnector) {
+            failedAttempts = 0;
+        }
+        if (serverEpoch >= 0) {
+            log.info("Переподключено к серверу: {} (возобновление с seq {})", serverUri, lastSeq);
+        } else {
+            log.info("Подключено к серверу: {}", serverUri);
+        }
+    }
+
+    /**
+     * Соединение закрыто или не установлено - планируем следующую попытку
+     */
+    private void onDisconnected(WebSocketClient source, int code, String reason) {
+        if (source != client) {
+            return;
+        }
+        if (closed) {
+            log.info("Отключено от сервера. Код: {}, Причина: {}", code, reason);
+            return;
+        }
+        long delay = nextReconnectDelay();
+        log.info("Отключено от сервера. Код: {}, Причина: {}. Переподключение через {} мс", code, reason, delay);
+        try {
+            reconnector.schedule(this::openClient, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // close() уже вызван
+        }
+    }
+
+    /**
+     * Экспоненциальная задержка с полным джиттером: случайное значение от
+     * минимальной до текущей границы, чтобы клиенты после перезапуска
+     * сервера не подключались одновременно
+     */
+    private long nextReconnectDelay() {
+        synchronized (reconnector) {
+            failedAttempts = Math.min(failedAttempts + 1, 20);
+            long bound = Math.min(reconnectMaxMillis, reconnectMinMillis << Math.min(failedAttempts - 1, 16));
+            return reconnectMinMillis + ThreadLocalRandom.current().nextLong(bound - reconnectMinMillis + 1);
+        }
+    }
+
+    /**
+     * Добавляет к адресу сервера параметры рукопожатия: протокол, версию клиента,
+     * топики и, если состояние уже получено, точку возобновления (epoch/since)
+     */
+    private String buildUri(String serverUri) {
+        StringBuilder uri = new StringBuilder(serverUri);
+        uri.append(serverUri.indexOf('?') == -1 ? '?' : '&');
+        uri.append(WireProtocol.PARAM).append('=').append(protocol.getId());
+        uri.append('&').append(Handshake.VERSION_PARAM).append('=').append(CLIENT_VERSION);
+        if (groups != null && !groups.isBlank()) {
+            uri.append('&').append(Handshake.GROUPS_PARAM).append('=')
+                    .append(URLEncoder.encode(groups.trim(), StandardCharsets.UTF_8));
+        }
+        if (serverEpoch >= 0 && lastSeq >= 0) {
+            uri.append('&').append(SyncFrame.EPOCH_PARAM).append('=').append(serverEpoch);
+            uri.append('&').append(SyncFrame.SINCE_PARAM).append('=').append(lastSeq);
         }
+        return uri.toString();
     }
 
     public void sendMessage(String message) {
         if (client != null && client.isOpen()) {
-            log("Отправка команды на сервер: " + message);
+            log.info("Отправка команды на сервер: {}", message);
             client.send(message);
         } else {
-            log("Невозможно отправить команду - нет подключения к серверу");
+            log.info("Невозможно отправить команду - нет подключения к серверу");
         }
     }
 }
@@ -0,0 +1,102 @@
+package incuat.kg.svetoofor;
+
+import incuat.kg.svetoofor.protocol.Command;
+import incuat.kg.svetoofor.protocol.Lamp;
+import javafx.application.Platform;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Передача команд от сети в поток JavaFX с объединением.
+ *
+ * Для каждого индикатора хранится только последняя еще не примененная
+ * команда (атомарная ячейка). В очереди JavaFX одновременно не больше одной
+ * задачи выгрузки: пачка из N сообщений между кадрами стоит одного обновления
+ * на индикатор вместо N пересозданий Timeline и Tooltip.
+ */
+public class UiDispatcher {
+
+    /**
+     * Отложенная команда индикатора
+     */
+    private static final class Pending {
+        final Command command;
+        final String payload;
+        final int durationSeconds;
+        // Пакет сервера и момент его приема (System.nanoTime) для отчета PAINT; seq < 0 - без трассировки
+        final long seq;
+        final long receivedNanos;
+
+        Pending(Command command, String payload, int durationSeconds, long seq, long receivedNanos) {
+            this.command = command;
+            this.payload = payload;
+            this.durationSeconds = durationSeconds;
+            this.seq = seq;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    private final TrafficLightApp app;
+    private final AtomicReferenceArray<Pending> slots = new AtomicReferenceArray<>(Lamp.count());
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    public UiDispatcher(TrafficLightApp app) {
+        this.app = app;
+    }
+
+    /**
+     * @param message Команда в строковом виде "COMMAND|payload"
+     */
+    public void submit(String message) {
+        submit(message, -1, 0);
+    }
+
+    /**
+     * Команда из пакета сервера seq, принятого в receivedNanos (System.nanoTime):
+     * после отрисовки приложение сообщит серверу задержку UI
+     */
+    public void submit(String message, long seq, long receivedNanos) {
+        Command command = Command.parse(message);
+        if (command != null) {
+            submit(command, Command.payload(message), command.getDurationSeconds(), seq, receivedNanos);
+        }
+    }
+
+    public void submit(Command command, String payload, int durationSeconds) {
+        submit(command, payload, durationSeconds, -1, 0);
+    }
+
+    /**
+     * Команда заменяет еще не примененную команду того же индикатора.
+     * Команды без индикатора (GREEN_BLINK) на экран не влияют и отбрасываются.
+     */
+    public void submit(Command command, String payload, int durationSeconds, long seq, long receivedNanos) {
+        Lamp lamp = command.getLamp();
+        if (lamp == null) {
+            return;
+        }
+        slots.set(lamp.ordinal(), new Pending(command, payload, durationSeconds, seq, receivedNanos));
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::drain);
+        }
+    }
+
+    /**
+     * Применение накопленных команд (поток JavaFX)
+     */
+    private void drain() {
+        // Снимаем флаг до выгрузки: команда, пришедшая во время выгрузки,
+        // либо попадет в нее, либо запланирует следующую
+        drainScheduled.set(false);
+        for (int i = 0; i < slots.length(); i++) {
+            Pending pending = slots.getAndSet(i, null);
+            if (pending != null) {
+                app.applyCommand(pending.command, pending.payload, pending.durationSeconds);
+                if (pending.seq >= 0) {
+                    app.trackRepaint(pending.seq, pending.receivedNanos);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package incuat.kg.svetoofor.jira;
+
+import incuat.kg.svetoofor.log.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Состояние обработанных задач JIRA (ключ, последний статус, время перехода),
+ * переживающее перезапуск сервера.
+ *
+ * В памяти - ConcurrentHashMap, на диске - журнал только на дозапись в
+ * memory-mapped файле. Запись: [keyLen:short][kind:byte][time:long]
+ * [statusLen:short][key][status]; keyLen пишется последним и служит признаком
+ * завершенной записи, нули после последней записи - конец журнала.
+ * При старте журнал проигрывается целиком (миллисекунды даже для десятков
+ * тысяч записей). Когда файл заполняется или мертвых записей становится больше
+ * живых, журнал сжимается: живые записи пишутся в новый файл (снимок), который
+ * атомарно подменяет старый. Решенные задачи удаляются по TTL, поэтому
+ * память и файл остаются ограниченными; активные задачи удаляются только
+ * после решения (активные, которых JIRA не возвращала дольше TTL, опрос
+ * перепроверяет по ключу). Записи сбрасываются на диск (force) после каждого
+ * опроса и вебхука - flush(), а не на каждую запись.
+ * Если журнал не удается записать, хранилище работает в памяти и повторяет
+ * попытку не чаще раза в JOURNAL_RETRY_MILLIS.
+ */
+public class IssueStateStore implements Closeable {
+
+    private static final Log log = Log.get(IssueStateStore.class);
+
+    private static final int MAGIC = 0x53564A31; // "SVJ1"
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_OVERHEAD = 2 + 1 + 8 + 2;
+    private static final int MIN_CAPACITY = 256 * 1024;
+    private static final long JOURNAL_RETRY_MILLIS = 5 * 60_000L;
+
+    private static final byte KIND_ACTIVE = 1;
+    private static final byte KIND_RESOLVED = 2;
+    private static final byte KIND_REMOVED = 3;
+
+    /**
+     * Состояние одной задачи
+     */
+    public static final class IssueState {
+        private final String status;
+        private final boolean active;
+        private final long transitionTime;
+        // Последний раз задача была в выдаче JIRA (только в памяти)
+        private volatile long seenAt;
+
+        IssueState(String status, boolean active, long transitionTime) {
+            this(status, active, transitionTime, transitionTime);
+        }
+
+        IssueState(String status, boolean active, long transitionTime, long seenAt) {
+            this.status = status;
+            this.active = active;
+            this.transitionTime = transitionTime;
+            this.seenAt = seenAt;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public long getTransitionTime() {
+            return transitionTime;
+        }
+    }
+
+    private final Path file;
+    private final long ttlMillis;
+    private final Map<String, IssueState> states = new ConcurrentHashMap<>();
+    // Не synchronized: сжатие журнала пишет файл, а поток-владелец монитора
+    // прикреплялся бы к несущему потоку (ленты опрашиваются в виртуальных потоках)
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private FileChannel channel;
+    private MappedByteBuffer journal;
+    private int appendedRecords;
+    // Есть записи, еще не сброшенные на диск
+    private boolean dirty;
+    // Журнал не записался: до этого момента работаем в памяти
+    private long journalRetryAt;
+
+    private IssueStateStore(Path file, long ttlMillis) {
+        this.file = file;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Хранилище без файла - состояние теряется при перезапуске
+     */
+    public static IssueStateStore inMemory(long ttlMillis) {
+        return new IssueStateStore(null, ttlMillis);
+    }
+
+    /**
+     * Открывает журнал и восстанавливает из него состояние
+     *
+     * @param file      Файл журнала (создается при отсутствии)
+     * @param ttlMillis Время хранения решенных задач
+     */
+    public static IssueStateStore open(Path file, long ttlMillis) throws IOException {
+        IssueStateStore store = new IssueStateStore(file, ttlMillis);
+        long started = System.nanoTime();
+        store.load();
+        log.info("Журнал состояния {}: восстановлено задач {} (активных {}) за {} мс",
+                file, store.size(), store.activeCount(), (System.nanoTime() - started) / 1_000_000);
+        return store;
+    }
+
+    public boolean isKnown(String key) {
+        return states.containsKey(key);
+    }
+
+    public boolean isActive(String key) {
+        IssueState state = states.get(key);
+        return state != null && state.active;
+    }
+
+    /**
+     * @return Последний статус активной задачи или null
+     */
+    public String activeStatus(String key) {
+        IssueState state = states.get(key);
+        return state != null && state.active ? state.status : null;
+    }
+
+    public IssueState get(String key) {
+        return states.get(key);
+    }
+
+    public void markActive(String key, String status, long time) {
+        lock.lock();
+        try {
+            states.put(key, new IssueState(status, true, time));
+            append(KIND_ACTIVE, key, status, time);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void markResolved(String key, String status, long time) {
+        lock.lock();
+        try {
+            states.put(key, new IssueState(status, false, time));
+            append(KIND_RESOLVED, key, status, time);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Отметка, что задача есть в текущей выдаче JIRA (продлевает TTL активной задачи)
+     */
+    public void touch(String key, long now) {
+        IssueState state = states.get(key);
+        if (state != null) {
+            state.seenAt = now;
+        }
+    }
+
+    /**
+     * Сверка с полной выдачей JIRA: активные задачи, которых в ней нет
+     * (решены и выпали из JQL, удалены, перенесены или сдвинулись между
+     * страницами во время чтения). Состояние не меняется - задачи нужно
+     * перепроверить по ключу.
+     *
+     * @param seen Ключи всех задач полной выдачи
+     * @return Ключи активных задач, которых нет в выдаче
+     */
+    public List<String> activeMissing(Set<String> seen) {
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, IssueState> entry : states.entrySet()) {
+            if (entry.getValue().active && !seen.contains(entry.getKey())) {
+                missing.add(entry.getKey());
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Активные задачи, которых не было в выдаче дольше TTL. В инкрементальном
+     * режиме открытая, но не меняющаяся задача в выдачу не попадает, поэтому
+     * такие задачи нужно перепроверить по ключу, а не снимать с учета.
+     *
+     * @return Ключи задач (пусто, если TTL не задан)
+     */
+    public List<String> activeUnseen(long now) {
+        List<String> unseen = new ArrayList<>();
+        if (ttlMillis <= 0) {
+            return unseen;
+        }
+        for (Map.Entry<String, IssueState> entry : states.entrySet()) {
+            IssueState state = entry.getValue();
+            if (state.active && now - state.seenAt > ttlMillis) {
+                unseen.add(entry.getKey());
+            }
+        }
+        return unseen;
+    }
+
+    /**
+     * Удаляет решенные задачи старше TTL. Активные задачи не удаляются:
+     * их решение еще должно дать сигнал.
+     *
+     * @return Количество удаленных задач
+     */
+    public int expire(long now) {
+        lock.lock();
+        try {
+            if (ttlMillis <= 0) {
+                return 0;
+            }
+            int removed = 0;
+            for (Map.Entry<String, IssueState> entry : states.entrySet()) {
+                IssueState state = entry.getValue();
+                if (!state.active && now - state.transitionTime > ttlMillis) {
+                    states.remove(entry.getKey());
+                    append(KIND_REMOVED, entry.getKey(), null, now);
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                compactIfWasteful();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            states.clear();
+            if (journal != null) {
+                compact();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public int activeCount() {
+        int count = 0;
+        for (IssueState state : states.values()) {
+            if (state.active) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Сжатие журнала, если мертвых записей больше, чем живых
+     */
+    public void compactIfWasteful() {
+        lock.lock();
+        try {
+            if (journal != null && appendedRecords > Math.max(1024, states.size() * 2)) {
+                compact();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сброс дописанных записей на диск: после сбоя процесса или питания
+     * журнал содержит все записи до последнего flush()
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            if (journal != null && dirty) {
+                journal.force();
+                dirty = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (journal != null) {
+                journal.force();
+                closeChannel();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Журнал
+
+    private void load() throws IOException {
+        if (Files.exists(file) && Files.size(file) >= HEADER_SIZE) {
+            replay();
+        }
+        // Снимок при старте: журнал содержит только живые записи и запас места
+        compact();
+    }
+
+    private void replay() throws IOException {
+        // До первого опроса время появления в выдаче неизвестно - считаем от старта
+        long loadedAt = System.currentTimeMillis();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (buffer.getInt() != MAGIC) {
+                log.warn("Журнал состояния {} поврежден (неверная сигнатура), начинаем с пустого состояния", file);
+                return;
+            }
+            buffer.getInt(); // зарезервировано
+
+            while (buffer.remaining() >= RECORD_OVERHEAD) {
+                int start = buffer.position();
+                int keyLen = buffer.getShort() & 0xFFFF;
+                if (keyLen == 0) {
+                    break;
+                }
+                byte kind = buffer.get();
+                long time = buffer.getLong();
+                int statusLen = buffer.getShort() & 0xFFFF;
+                if (buffer.remaining() < keyLen + statusLen) {
+                    log.warn("Журнал состояния {} обрезан на позиции {}", file, start);
+                    break;
+                }
+                String key = readString(buffer, keyLen);
+                String status = readString(buffer, statusLen);
+
+                switch (kind) {
+                    case KIND_ACTIVE -> states.put(key, new IssueState(status, true, time, loadedAt));
+                    case KIND_RESOLVED -> states.put(key, new IssueState(status, false, time));
+                    case KIND_REMOVED -> states.remove(key);
+                    default -> {
+                        log.warn("Журнал состояния {}: неизвестный тип записи {} на позиции {}", file, kind, start);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void append(byte kind, String key, String status, long time) {
+        if (file == null || (journal == null && System.currentTimeMillis() < journalRetryAt)) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] statusBytes = (status != null ? status : "").getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_OVERHEAD + keyBytes.length + statusBytes.length;
+
+        if (journal == null || journal.remaining() < size + 2) {
+            // Журнал заполнен - снимок живых записей (текущая уже в states)
+            compact();
+            return;
+        }
+        writeRecord(journal, kind, keyBytes, statusBytes, time);
+        appendedRecords++;
+        dirty = true;
+    }
+
+    private static void writeRecord(ByteBuffer buffer, byte kind, byte[] key, byte[] status, long time) {
+        int start = buffer.position();
+        buffer.position(start + 2);
+        buffer.put(kind);
+        buffer.putLong(time);
+        buffer.putShort((short) status.length);
+        buffer.put(key);
+        buffer.put(status);
+        // Длина ключа - последней: запись видна при проигрывании только целиком
+        buffer.putShort(start, (short) key.length);
+    }
+
+    /**
+     * Снимок: живые записи пишутся в новый файл, который атомарно подменяет журнал
+     */
+    private void compact() {
+        if (file == null) {
+            return;
+        }
+        try {
+            long live = 0;
+            for (Map.Entry<String, IssueState> entry : states.entrySet()) {
+                String status = entry.getValue().status;
+                live += RECORD_OVERHEAD + entry.getKey().length() * 4L + (status != null ? status.length() * 4L : 0);
+            }
+            int capacity = (int) Math.max(MIN_CAPACITY, Long.highestOneBit(HEADER_SIZE + live * 2) << 1);
+
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+            Files.deleteIfExists(tmp);
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer snapshot = out.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+                snapshot.putInt(MAGIC);
+                snapshot.putInt(0);
+                for (Map.Entry<String, IssueState> entry : states.entrySet()) {
+                    IssueState state = entry.getValue();
+                    writeRecord(snapshot,
+                            state.active ? KIND_ACTIVE : KIND_RESOLVED,
+                            entry.getKey().getBytes(StandardCharsets.UTF_8),
+                            (state.status != null ? state.status : "").getBytes(StandardCharsets.UTF_8),
+                            state.transitionTime);
+                }
+                snapshot.force();
+            }
+
+            closeChannel();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            skipToEnd(journal);
+            appendedRecords = states.size();
+            // Снимок уже на диске (snapshot.force)
+            dirty = false;
+            if (journalRetryAt > 0) {
+                journalRetryAt = 0;
+                log.info("Журнал состояния {} снова записывается", file);
+            }
+        } catch (IOException e) {
+            // Без журнала продолжаем работать в памяти; записи до повтора не пишутся,
+            // следующий снимок сохранит все состояние целиком
+            closeChannel();
+            if (journalRetryAt == 0) {
+                log.error("Не удалось записать журнал состояния {}, состояние хранится в памяти: {}",
+                        file, e.getMessage(), e);
+            }
+            journalRetryAt = System.currentTimeMillis() + JOURNAL_RETRY_MILLIS;
+        }
+    }
+
+    private static void skipToEnd(ByteBuffer buffer) {
+        buffer.position(HEADER_SIZE);
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            int start = buffer.position();
+            int keyLen = buffer.getShort(start) & 0xFFFF;
+            if (keyLen == 0) {
+                buffer.position(start);
+                return;
+            }
+            int statusLen = buffer.getShort(start + 11) & 0xFFFF;
+            buffer.position(start + RECORD_OVERHEAD + keyLen + statusLen);
+        }
+    }
+
+    private void closeChannel() {
+        journal = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Ошибка закрытия журнала состояния: {}", e.getMessage());
+            }
+            channel = null;
+        }
+    }
+}
@@ -1,24 +1,65 @@
 package incuat.kg.svetoofor.jira;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import incuat.kg.svetoofor.ExecutionMode;
+import incuat.kg.svetoofor.log.Log;
+import incuat.kg.svetoofor.metrics.Histogram;
+import incuat.kg.svetoofor.metrics.Metrics;
 import okhttp3.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Base64;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Клиент для работы с JIRA REST API
  */
 public class JiraClient {
 
+    private static final Log log = Log.get(JiraClient.class);
+
     private final String jiraUrl;
-    private final String username;
-    private final String password;
+    // Заголовок Basic вычисляется один раз
+    private final String authHeader;
+    private final boolean searchGet;
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
 
+    // Постраничный поиск: размер страницы и число страниц, загружаемых параллельно
+    private volatile int pageSize = DEFAULT_PAGE_SIZE;
+    private volatile int pageParallelism = 1;
+    private ExecutorService pageExecutor;
+    // Ограничение одновременных запросов страниц (в режиме VIRTUAL пул их не ограничивает)
+    private Semaphore pagePermits;
+    private volatile ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final String[] ISSUE_FIELDS =
+            {"id", "creator", "summary", "key", "status", "priority", "assignee", "created", "updated",
+                    "resolutiondate", "issuetype"};
+
     public JiraClient(String jiraUrl, String username, String password) {
+        this(jiraUrl, username, password, JiraHttpConfig.defaults());
+    }
+
+    /**
+     * @param httpConfig Настройки HTTP-слоя (кэш, пул соединений, HTTP/2)
+     */
+    public JiraClient(String jiraUrl, String username, String password, JiraHttpConfig httpConfig) {
         // Валидация входных данных
         if (jiraUrl == null || jiraUrl.trim().isEmpty()) {
             throw new IllegalArgumentException("JIRA URL cannot be null or empty");
@@ -36,16 +77,25 @@ public class JiraClient {
         }
 
         this.jiraUrl = jiraUrl.endsWith("/") ? jiraUrl : jiraUrl + "/";
-        this.username = username;
-        this.password = password;
-
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
+        this.authHeader = "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        this.searchGet = httpConfig.isSearchGet();
+        this.httpClient = httpConfig.newHttpClient();
 
         this.objectMapper = new ObjectMapper();
+        registerCacheGauges(httpClient.cache());
+    }
+
+    private static void registerCacheGauges(Cache cache) {
+        if (cache == null) {
+            return;
+        }
+        Metrics.gauge("svetoofor_jira_http_cache_requests", "JIRA GET requests through the HTTP cache",
+                cache::requestCount);
+        Metrics.gauge("svetoofor_jira_http_cache_network", "JIRA GET requests that reached the network",
+                cache::networkCount);
+        Metrics.gauge("svetoofor_jira_http_cache_hits", "JIRA GET responses served or revalidated from the cache",
+                cache::hitCount);
     }
 
     /**
@@ -59,7 +109,53 @@ public class JiraClient {
      * @throws IOException При ошибке запроса
      */
     public JiraSearchResult searchIssues(String jql, int startAt, int maxResults, String[] fields) throws IOException {
+        try (Response response = executeSearch(jql, startAt, maxResults, fields)) {
+            String responseBody = response.body().string();
+            return objectMapper.readValue(responseBody, JiraSearchResult.class);
+        }
+    }
+
+    private Response executeSearch(String jql, int startAt, int maxResults, String[] fields) throws IOException {
         String url = jiraUrl + "rest/api/2/search";
+        Request request = searchGet ? searchGetRequest(url, jql, startAt, maxResults, fields) : null;
+        if (request == null) {
+            request = searchPostRequest(url, jql, startAt, maxResults, fields);
+        }
+
+        Response response = call(request, searchTime);
+        if (!response.isSuccessful()) {
+            response.close();
+            throw apiError(response);
+        }
+        return response;
+    }
+
+    // Предел длины URL запроса: более длинный JQL отправляется POST
+    private static final int MAX_GET_URL_LENGTH = 4000;
+
+    /**
+     * Поиск GET-запросом (кэшируемый и перепроверяемый) или null, если URL слишком длинный
+     */
+    private Request searchGetRequest(String url, String jql, int startAt, int maxResults, String[] fields) {
+        HttpUrl.Builder builder = HttpUrl.get(url).newBuilder()
+                .addQueryParameter("jql", jql)
+                .addQueryParameter("startAt", String.valueOf(startAt))
+                .addQueryParameter("maxResults", String.valueOf(maxResults));
+        if (fields != null && fields.length > 0) {
+            builder.addQueryParameter("fields", String.join(",", fields));
+        }
+        HttpUrl searchUrl = builder.build();
+        if (searchUrl.toString().length() > MAX_GET_URL_LENGTH) {
+            return null;
+        }
+        return new Request.Builder()
+                .url(searchUrl)
+                .get()
+                .addHeader("Authorization", getBasicAuthHeader())
+                .build();
+    }
+
+    private Request searchPostRequest(String url, String jql, int startAt, int maxResults, String[] fields) {
 
         // Формируем JSON запрос
         StringBuilder jsonBuilder = new StringBuilder();
@@ -84,21 +180,257 @@ public class JiraClient {
                 MediaType.parse("application/json; charset=utf-8")
         );
 
-        Request request = new Request.Builder()
+        return new Request.Builder()
                 .url(url)
                 .post(body)
                 .addHeader("Authorization", getBasicAuthHeader())
                 .addHeader("Content-Type", "application/json")
                 .build();
+    }
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("JIRA API error: " + response.code() + " " + response.message());
+    private static final String REQUEST_METRIC = "svetoofor_jira_request_duration_seconds";
+    private static final String REQUEST_HELP = "JIRA REST request time until response headers";
+    private static final Histogram searchTime = Metrics.histogram(REQUEST_METRIC, REQUEST_HELP, "operation", "search");
+    private static final Histogram issueTime = Metrics.histogram(REQUEST_METRIC, REQUEST_HELP, "operation", "issue");
+    private static final String ERRORS_METRIC = "svetoofor_jira_errors_total";
+    private static final String ERRORS_HELP = "Failed JIRA requests by HTTP status (io - network error)";
+
+    /**
+     * Запрос с учетом в метриках: время до заголовков ответа и ошибки сети
+     */
+    private Response call(Request request, Histogram time) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return httpClient.newCall(request).execute();
+        } catch (IOException e) {
+            Metrics.counter(ERRORS_METRIC, ERRORS_HELP, "code", "io").increment();
+            throw e;
+        } finally {
+            time.recordSince(start);
+        }
+    }
+
+    /**
+     * Ошибка по неуспешному ответу: 429/503 - отдельное исключение с Retry-After,
+     * 404 - JiraNotFoundException
+     */
+    private static IOException apiError(Response response) {
+        int code = response.code();
+        Metrics.counter(ERRORS_METRIC, ERRORS_HELP, "code", String.valueOf(code)).increment();
+        if (code == 429 || code == 503) {
+            return new JiraRateLimitException(code, parseRetryAfter(response.header("Retry-After")));
+        }
+        if (code == 404) {
+            return new JiraNotFoundException("JIRA API error: 404 " + response.request().url().encodedPath());
+        }
+        return new IOException("JIRA API error: " + code + " " + response.message());
+    }
+
+    /**
+     * Retry-After: число секунд или HTTP-дата
+     *
+     * @return Задержка в миллисекундах; 0, если заголовка нет или он не разобран
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                long at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Math.max(0, at - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return 0;
             }
+        }
+    }
 
-            String responseBody = response.body().string();
-            return objectMapper.readValue(responseBody, JiraSearchResult.class);
+    /**
+     * Постраничный потоковый поиск.
+     *
+     * Страницы фиксированного размера разбираются Jackson JsonParser прямо из
+     * потока ответа, каждая задача сразу передается в consumer - в памяти
+     * никогда не держится больше одной задачи на страницу, сколько бы ни нашлось.
+     * Первая страница загружается сразу (из нее известен total), остальные -
+     * параллельно, если pageParallelism > 1. Вызовы consumer сериализуются,
+     * поэтому он не обязан быть потокобезопасным; порядок задач между
+     * страницами при параллельной загрузке не гарантируется. При ошибке
+     * страницы остальные больше ничего не передают в consumer, и метод
+     * возвращается только после завершения всех страниц: consumer не
+     * вызывается после выхода из метода.
+     *
+     * @param jql      JQL запрос
+     * @param fields   Поля для получения
+     * @param consumer Обработчик задач
+     * @return Количество переданных в consumer задач
+     * @throws IOException При ошибке запроса любой из страниц
+     */
+    public int searchPaged(String jql, String[] fields, Consumer<JiraIssue> consumer) throws IOException {
+        // Обработчик может писать на диск (журнал состояния); ReentrantLock, а не
+        // synchronized, не прикрепляет виртуальный поток страницы к несущему
+        Lock deliveryLock = new ReentrantLock();
+        // Поиск провален: страницы больше не передают задачи (проверяется под deliveryLock)
+        AtomicBoolean failed = new AtomicBoolean();
+        int size = pageSize;
+
+        PageInfo first = fetchPage(jql, 0, size, fields, consumer, deliveryLock, failed);
+        // JIRA может урезать maxResults (jira.search.views.default.max) - шагаем по фактическому
+        int step = first.maxResults > 0 ? first.maxResults : size;
+        if (first.delivered == 0 || first.total <= step) {
+            return first.delivered;
+        }
+
+        int delivered = first.delivered;
+        int parallelism = pageParallelism;
+        if (parallelism <= 1) {
+            for (int startAt = step; startAt < first.total; startAt += step) {
+                PageInfo page = fetchPage(jql, startAt, step, fields, consumer, deliveryLock, failed);
+                delivered += page.delivered;
+                if (page.delivered == 0) {
+                    break;
+                }
+            }
+            return delivered;
+        }
+
+        ExecutorService executor = pageExecutor(parallelism);
+        Semaphore permits = pagePermits;
+        List<Future<PageInfo>> pages = new ArrayList<>();
+        for (int startAt = step; startAt < first.total; startAt += step) {
+            int pageStart = startAt;
+            pages.add(executor.submit(() -> {
+                permits.acquire();
+                try {
+                    if (failed.get()) {
+                        return new PageInfo();
+                    }
+                    return fetchPage(jql, pageStart, step, fields, consumer, deliveryLock, failed);
+                } finally {
+                    permits.release();
+                }
+            }));
         }
+
+        // Страницы не прерываются: consumer может писать журнал состояния, и
+        // прерывание закрыло бы его канал. Ошибка только останавливает передачу задач,
+        // а выход - после завершения всех страниц
+        IOException failure = null;
+        boolean interrupted = false;
+        for (Future<PageInfo> page : pages) {
+            while (true) {
+                try {
+                    delivered += page.get().delivered;
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    failed.set(true);
+                    if (failure == null) {
+                        failure = new IOException("JIRA search interrupted", e);
+                    }
+                } catch (ExecutionException e) {
+                    failed.set(true);
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException("JIRA page failed", cause);
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return delivered;
+    }
+
+    /**
+     * Загрузка одной страницы с потоковым разбором ответа
+     */
+    private PageInfo fetchPage(String jql, int startAt, int maxResults, String[] fields,
+                               Consumer<JiraIssue> consumer, Lock deliveryLock, AtomicBoolean failed) throws IOException {
+        PageInfo info = new PageInfo();
+        try (Response response = executeSearch(jql, startAt, maxResults, fields);
+             InputStream body = response.body().byteStream();
+             JsonParser parser = objectMapper.getFactory().createParser(body)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected JIRA search response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("total".equals(field)) {
+                    info.total = parser.getIntValue();
+                } else if ("maxResults".equals(field)) {
+                    info.maxResults = parser.getIntValue();
+                } else if ("issues".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        JiraIssue issue = objectMapper.readValue(parser, JiraIssue.class);
+                        deliveryLock.lock();
+                        try {
+                            if (failed.get()) {
+                                // Остаток страницы не нужен: поиск уже завершится ошибкой
+                                return info;
+                            }
+                            consumer.accept(issue);
+                        } finally {
+                            deliveryLock.unlock();
+                        }
+                        info.delivered++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return info;
+    }
+
+    private static final class PageInfo {
+        int total;
+        int maxResults;
+        int delivered;
+    }
+
+    private synchronized ExecutorService pageExecutor(int parallelism) {
+        if (pageExecutor == null) {
+            pageExecutor = executionMode.newExecutor("jira-page-fetcher", parallelism);
+            pagePermits = new Semaphore(parallelism);
+        }
+        return pageExecutor;
+    }
+
+    /**
+     * Модель выполнения параллельной загрузки страниц: пул из pageParallelism
+     * платформенных потоков или виртуальный поток на страницу. В обоих режимах
+     * одновременно загружается не больше pageParallelism страниц.
+     * Задается до первого поиска.
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Размер страницы постраничного поиска
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Сколько страниц загружать одновременно (1 - последовательно).
+     * Задается до первого поиска.
+     */
+    public void setPageParallelism(int pageParallelism) {
+        this.pageParallelism = Math.max(1, pageParallelism);
     }
 
     /**
@@ -124,8 +456,19 @@ public class JiraClient {
      * @throws IOException При ошибке запроса
      */
     public JiraSearchResult searchByCustomJql(String customJql) throws IOException {
-        String[] fields = {"id", "creator", "summary", "key", "status", "priority", "created", "resolutiondate", "issuetype"};
-        return searchIssues(customJql, 0, -1, fields);
+        return searchIssues(customJql, 0, -1, ISSUE_FIELDS);
+    }
+
+    /**
+     * Постраничный потоковый поиск по кастомному JQL запросу
+     *
+     * @param customJql Кастомный JQL запрос
+     * @param consumer  Обработчик каждой найденной задачи
+     * @return Количество обработанных задач
+     * @throws IOException При ошибке запроса
+     */
+    public int searchByCustomJql(String customJql, Consumer<JiraIssue> consumer) throws IOException {
+        return searchPaged(customJql, ISSUE_FIELDS, consumer);
     }
 
     /**
@@ -144,9 +487,9 @@ public class JiraClient {
                 .addHeader("Authorization", getBasicAuthHeader())
                 .build();
 
-        try (Response response = httpClient.newCall(request).execute()) {
+        try (Response response = call(request, issueTime)) {
             if (!response.isSuccessful()) {
-                throw new IOException("JIRA API error: " + response.code() + " " + response.message());
+                throw apiError(response);
             }
 
             String responseBody = response.body().string();
@@ -154,6 +497,70 @@ public class JiraClient {
         }
     }
 
+    /**
+     * Условный запрос задачи: с известным ETag JIRA отвечает 304 без тела,
+     * если задача не менялась
+     *
+     * @param issueKey Ключ задачи
+     * @param fields   Запрашиваемые поля (null - все)
+     * @param etag     ETag сохраненной копии или null
+     * @return Ответ: новая копия задачи или признак "не изменилась"
+     * @throws IOException При ошибке запроса
+     */
+    public IssueResponse getIssue(String issueKey, String[] fields, String etag) throws IOException {
+        HttpUrl.Builder url = HttpUrl.get(jiraUrl + "rest/api/2/issue/" + issueKey).newBuilder();
+        if (fields != null && fields.length > 0) {
+            url.addQueryParameter("fields", String.join(",", fields));
+        }
+
+        Request.Builder request = new Request.Builder()
+                .url(url.build())
+                .get()
+                .addHeader("Authorization", getBasicAuthHeader());
+        if (etag != null) {
+            request.addHeader("If-None-Match", etag);
+        }
+
+        try (Response response = call(request.build(), issueTime)) {
+            if (response.code() == 304) {
+                return new IssueResponse(null, etag);
+            }
+            if (!response.isSuccessful()) {
+                throw apiError(response);
+            }
+            return new IssueResponse(objectMapper.readValue(response.body().string(), JiraIssue.class),
+                    response.header("ETag"));
+        }
+    }
+
+    /**
+     * Ответ условного запроса задачи
+     */
+    public static final class IssueResponse {
+        private final JiraIssue issue;
+        private final String etag;
+
+        IssueResponse(JiraIssue issue, String etag) {
+            this.issue = issue;
+            this.etag = etag;
+        }
+
+        /**
+         * @return Задача или null, если она не изменилась (304)
+         */
+        public JiraIssue getIssue() {
+            return issue;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public boolean isNotModified() {
+            return issue == null;
+        }
+    }
+
     /**
      * Проверка подключения к JIRA
      *
@@ -173,15 +580,13 @@ public class JiraClient {
                 return response.isSuccessful();
             }
         } catch (Exception e) {
-            System.err.println("Ошибка проверки подключения к JIRA: " + e.getMessage());
+            log.error("Ошибка проверки подключения к JIRA: {}", e.getMessage());
             return false;
         }
     }
 
     private String getBasicAuthHeader() {
-        String credentials = username + ":" + password;
-        String encoded = Base64.getEncoder().encodeToString(credentials.getBytes());
-        return "Basic " + encoded;
+        return authHeader;
     }
 
     private String escapeJson(String str) {
@@ -192,7 +597,19 @@ public class JiraClient {
     }
 
     public void close() {
+        synchronized (this) {
+            if (pageExecutor != null) {
+                pageExecutor.shutdownNow();
+            }
+        }
         httpClient.dispatcher().executorService().shutdown();
         httpClient.connectionPool().evictAll();
+        if (httpClient.cache() != null) {
+            try {
+                httpClient.cache().close();
+            } catch (IOException e) {
+                log.warn("Не удалось закрыть HTTP кэш JIRA: {}", e.getMessage());
+            }
+        }
     }
 }
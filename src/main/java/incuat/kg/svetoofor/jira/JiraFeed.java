@@ -0,0 +1,152 @@
+package incuat.kg.svetoofor.jira;
+
+import incuat.kg.svetoofor.protocol.Lamp;
+
+import java.util.*;
+
+/**
+ * Настройки одной ленты JIRA: JQL, интервал опроса, соответствие типов задач
+ * индикаторам, топик досок, файлы состояния и путь вебхука.
+ *
+ * Ленты перечисляются в jira.feeds=incidents,dba; ключ ленты
+ * jira.feed.&lt;имя&gt;.&lt;ключ&gt; переопределяет общий jira.&lt;ключ&gt;
+ * (например, jira.feed.dba.jql и jira.jql). Без jira.feeds работает одна лента
+ * "default" на старых ключах jira.*.
+ */
+public class JiraFeed {
+
+    public static final String DEFAULT_NAME = "default";
+
+    /**
+     * Типы задач по умолчанию: 11206 - инцидент, 13802 - алерт
+     */
+    public static final String DEFAULT_TYPES = "11206:incident,13802:alert";
+
+    private final String name;
+    private final Properties props;
+    // Лента из jira.feeds: файлы и пути по умолчанию получают суффикс с именем
+    private final boolean named;
+
+    private JiraFeed(String name, Properties props, boolean named) {
+        this.name = name;
+        this.props = props;
+        this.named = named;
+    }
+
+    /**
+     * Ленты из конфигурации (jira.feeds) или одна лента на старых ключах
+     */
+    public static List<JiraFeed> fromProperties(Properties props) {
+        String feeds = props.getProperty("jira.feeds", "").trim();
+        if (feeds.isEmpty()) {
+            return List.of(new JiraFeed(DEFAULT_NAME, props, false));
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : feeds.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        List<JiraFeed> result = new ArrayList<>(names.size());
+        for (String name : names) {
+            result.add(new JiraFeed(name, props, true));
+        }
+        return result;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Значение jira.feed.&lt;имя&gt;.&lt;key&gt;, иначе jira.&lt;key&gt;, иначе defaultValue.
+     * Незаполненные подстановки вида ${VAR} считаются отсутствующими.
+     */
+    public String get(String key, String defaultValue) {
+        String value = named ? props.getProperty("jira.feed." + name + "." + key) : null;
+        if (value == null || value.isEmpty() || value.startsWith("${")) {
+            value = props.getProperty("jira." + key);
+        }
+        return value == null || value.isEmpty() || value.startsWith("${") ? defaultValue : value;
+    }
+
+    /**
+     * JQL ленты; без jira.jql - запрос по типу задачи jira.issue.type (обратная совместимость)
+     */
+    public String getJql() {
+        String jql = get("jql", null);
+        if (jql != null) {
+            return jql;
+        }
+        return "issuetype = " + get("issue.type", "11206") + " AND status NOT IN (Closed,Resolved,Done)";
+    }
+
+    public boolean hasCustomJql() {
+        return get("jql", null) != null;
+    }
+
+    /**
+     * @return Топик досок или null (топик по умолчанию)
+     */
+    public String getTopic() {
+        return get("topic", null);
+    }
+
+    /**
+     * Соответствие типов задач индикаторам: jira.types=11206:incident,13802:alert
+     *
+     * @return ID типа задачи → индикатор (INCIDENT или ALERT)
+     */
+    public Map<String, Lamp> getIssueTypeLamps() {
+        Map<String, Lamp> result = new LinkedHashMap<>();
+        for (String pair : get("types", DEFAULT_TYPES).split(",")) {
+            int sep = pair.indexOf(':');
+            if (sep <= 0) {
+                continue;
+            }
+            String lamp = pair.substring(sep + 1).trim().toUpperCase(Locale.ROOT);
+            try {
+                result.put(pair.substring(0, sep).trim(), Lamp.valueOf(lamp));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown lamp '" + lamp + "' in types of JIRA feed " + name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Файл ленты: явный jira.feed.&lt;имя&gt;.&lt;key&gt; или общий файл с суффиксом
+     * имени (jira-state.journal → jira-state-dba.journal), чтобы ленты не делили файл.
+     * Пустое значение - файл не используется.
+     */
+    public String getFile(String key, String defaultFile) {
+        String explicit = named ? props.getProperty("jira.feed." + name + "." + key) : null;
+        if (explicit != null) {
+            return explicit;
+        }
+        String base = props.getProperty("jira." + key, defaultFile);
+        if (!named || base.isEmpty()) {
+            return base;
+        }
+        int dot = base.lastIndexOf('.');
+        int slash = Math.max(base.lastIndexOf('/'), base.lastIndexOf('\\'));
+        return dot > slash ? base.substring(0, dot) + "-" + name + base.substring(dot) : base + "-" + name;
+    }
+
+    /**
+     * Путь вебхука: jira.webhook.path для одной ленты, jira.webhook.path/&lt;имя&gt; для лент из списка
+     */
+    public String getWebhookPath() {
+        String explicit = named ? props.getProperty("jira.feed." + name + ".webhook.path") : null;
+        if (explicit != null && !explicit.isEmpty()) {
+            return explicit;
+        }
+        String base = props.getProperty("jira.webhook.path", "/jira/webhook");
+        return named ? base + "/" + name : base;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
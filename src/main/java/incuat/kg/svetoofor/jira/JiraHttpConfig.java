@@ -0,0 +1,149 @@
+package incuat.kg.svetoofor.jira;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Настройки HTTP-слоя JiraClient: дисковый кэш GET-ответов с перепроверкой,
+ * пул keep-alive соединений, HTTP/2, таймауты и метод поиска.
+ *
+ * Ответы JIRA REST обычно помечены Cache-Control: no-cache, no-store, поэтому
+ * GET-ответы с валидатором (ETag или Last-Modified) переписываются в no-cache:
+ * OkHttp сохраняет их и каждый раз перепроверяет условным запросом
+ * (If-None-Match / If-Modified-Since); неизменный ответ приходит как 304 без тела.
+ * Сжатие gzip согласует OkHttp: он сам добавляет Accept-Encoding: gzip и
+ * распаковывает ответ (явный заголовок в запросе отключил бы распаковку).
+ */
+public class JiraHttpConfig {
+
+    public static final long DEFAULT_CACHE_MAX_BYTES = 10L * 1024 * 1024;
+
+    // Пустой каталог - без дискового кэша
+    private String cacheDir = "";
+    private long cacheMaxBytes = DEFAULT_CACHE_MAX_BYTES;
+    private int maxIdleConnections = 5;
+    private long keepAliveSeconds = 300;
+    private boolean http2 = true;
+    private long connectTimeoutSeconds = 30;
+    private long readTimeoutSeconds = 30;
+    // Поиск GET-запросом: ответ может кэшироваться и перепроверяться (длинный JQL - всегда POST)
+    private boolean searchGet;
+
+    /**
+     * Настройки по умолчанию (без дискового кэша)
+     */
+    public static JiraHttpConfig defaults() {
+        return new JiraHttpConfig();
+    }
+
+    /**
+     * Настройка из server.properties: jira.http.cache.dir, jira.http.cache.max.mb,
+     * jira.http.pool.max.idle, jira.http.pool.keepalive.seconds, jira.http.http2,
+     * jira.http.connect.timeout.seconds, jira.http.read.timeout.seconds, jira.http.search.method.
+     * С дисковым кэшем поиск по умолчанию идет GET-запросом: иначе опрос -
+     * основная нагрузка на JIRA - кэшем не пользуется.
+     */
+    public static JiraHttpConfig fromProperties(Properties props) {
+        JiraHttpConfig config = new JiraHttpConfig();
+        // Дисковый кэш только по явной настройке: в нем лежат ответы JIRA с данными задач
+        config.setCacheDir(props.getProperty("jira.http.cache.dir", "").trim());
+        config.setCacheMaxBytes(Long.parseLong(props.getProperty("jira.http.cache.max.mb",
+                String.valueOf(DEFAULT_CACHE_MAX_BYTES / (1024 * 1024)))) * 1024 * 1024);
+        config.setPool(Integer.parseInt(props.getProperty("jira.http.pool.max.idle", "5")),
+                Long.parseLong(props.getProperty("jira.http.pool.keepalive.seconds", "300")));
+        config.setHttp2(Boolean.parseBoolean(props.getProperty("jira.http.http2", "true")));
+        config.setTimeouts(Long.parseLong(props.getProperty("jira.http.connect.timeout.seconds", "30")),
+                Long.parseLong(props.getProperty("jira.http.read.timeout.seconds", "30")));
+        String searchMethod = props.getProperty("jira.http.search.method", config.cacheDir.isEmpty() ? "post" : "get");
+        config.setSearchGet("get".equalsIgnoreCase(searchMethod.trim()));
+        return config;
+    }
+
+    public void setCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public void setCacheMaxBytes(long cacheMaxBytes) {
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    /**
+     * Пул keep-alive соединений: сколько простаивающих соединений держать и сколько секунд
+     */
+    public void setPool(int maxIdleConnections, long keepAliveSeconds) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    public void setHttp2(boolean http2) {
+        this.http2 = http2;
+    }
+
+    public void setTimeouts(long connectTimeoutSeconds, long readTimeoutSeconds) {
+        this.connectTimeoutSeconds = connectTimeoutSeconds;
+        this.readTimeoutSeconds = readTimeoutSeconds;
+    }
+
+    public void setSearchGet(boolean searchGet) {
+        this.searchGet = searchGet;
+    }
+
+    public boolean isSearchGet() {
+        return searchGet;
+    }
+
+    /**
+     * HTTP клиент по настройкам
+     */
+    OkHttpClient newHttpClient() {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(connectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(readTimeoutSeconds, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                // HTTP/2 согласуется через ALPN только по https; по http остается HTTP/1.1
+                .protocols(http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1));
+        if (!cacheDir.isEmpty()) {
+            builder.cache(new Cache(new File(cacheDir), cacheMaxBytes))
+                    .addNetworkInterceptor(JiraHttpConfig::revalidateCacheable);
+        }
+        return builder.build();
+    }
+
+    /**
+     * GET-ответ с валидатором сохраняется в кэше, но всегда перепроверяется
+     */
+    private static Response revalidateCacheable(Interceptor.Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        // 304 тоже: OkHttp объединяет его заголовки с сохраненным ответом
+        if (!"GET".equals(chain.request().method()) || (!response.isSuccessful() && response.code() != 304)) {
+            return response;
+        }
+        if (response.header("ETag") == null && response.header("Last-Modified") == null) {
+            return response;
+        }
+        return response.newBuilder()
+                .removeHeader("Pragma")
+                .removeHeader("Expires")
+                .header("Cache-Control", "no-cache")
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return "cache=" + (cacheDir.isEmpty() ? "off" : cacheDir + " (" + cacheMaxBytes / (1024 * 1024) + " MB)")
+                + ", pool=" + maxIdleConnections + "/" + keepAliveSeconds + "s"
+                + ", http2=" + http2
+                + ", search=" + (searchGet ? "GET" : "POST");
+    }
+}
@@ -44,10 +44,12 @@ public class JiraIssue {
         @JsonProperty("creator")
         private JiraUser author;
 
+        private JiraUser assignee;
         private JiraStatus status;
         private JiraPriority priority;
         private JiraIssueType issuetype;
         private String created;
+        private String updated;
 
         @JsonProperty("resolutiondate")
         private String resolutionDate;
@@ -68,6 +70,14 @@ public class JiraIssue {
             this.author = author;
         }
 
+        public JiraUser getAssignee() {
+            return assignee;
+        }
+
+        public void setAssignee(JiraUser assignee) {
+            this.assignee = assignee;
+        }
+
         public JiraStatus getStatus() {
             return status;
         }
@@ -92,6 +102,14 @@ public class JiraIssue {
             this.created = created;
         }
 
+        public String getUpdated() {
+            return updated;
+        }
+
+        public void setUpdated(String updated) {
+            this.updated = updated;
+        }
+
         public String getResolutionDate() {
             return resolutionDate;
         }
@@ -133,8 +151,17 @@ public class JiraIssue {
 
     @JsonIgnoreProperties(ignoreUnknown = true)
     public static class JiraStatus {
+        private String id;
         private String name;
 
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
         public String getName() {
             return name;
         }
@@ -0,0 +1,241 @@
+package incuat.kg.svetoofor.jira;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш подробностей задач (исполнитель, приоритет, статус) поверх JiraClient.getIssue.
+ *
+ * Ограничен по размеру (LRU) и по времени жизни записи. Запись действительна,
+ * пока не истек TTL и совпадает поле updated задачи (из опроса или вебхука):
+ * изменившаяся задача загружается заново. Устаревшая по TTL запись
+ * перепроверяется условным запросом с ETag - ответ 304 продлевает ее без тела.
+ * Одновременные промахи по одному ключу объединяются в один запрос к JIRA.
+ *
+ * Кэш пополняется без запросов задачами из выдачи опроса и из вебхуков
+ * (put), поэтому запрос по ключу для только что виденной задачи обходится
+ * без обращения к JIRA. Общий для всех лент.
+ */
+public class JiraIssueCache {
+
+    /**
+     * Поля, которые нужны для сигналов и подсказок досок
+     */
+    public static final String[] DETAIL_FIELDS =
+            {"summary", "status", "priority", "assignee", "created", "updated", "issuetype"};
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60_000L;
+
+    private final JiraClient jiraClient;
+    private final long ttlMillis;
+
+    // Порядок доступа - для вытеснения давно не использованных записей
+    private final Map<String, Entry> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<JiraIssue>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    private static final class Entry {
+        final JiraIssue issue;
+        // null - копия из опроса или вебхука, перепроверяется полным запросом
+        final String etag;
+        final String updated;
+        final long fetchedAt;
+
+        Entry(JiraIssue issue, String etag, long fetchedAt) {
+            this.issue = issue;
+            this.etag = etag;
+            this.updated = issue.getFields() != null ? issue.getFields().getUpdated() : null;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean matches(String updated) {
+            return updated == null || updated.equals(this.updated);
+        }
+    }
+
+    public JiraIssueCache(JiraClient jiraClient) {
+        this(jiraClient, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param maxEntries Максимум задач в кэше
+     * @param ttlMillis  Время, после которого запись перепроверяется в JIRA
+     */
+    public JiraIssueCache(JiraClient jiraClient, int maxEntries, long ttlMillis) {
+        this.jiraClient = jiraClient;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Подробности задачи из кэша или из JIRA
+     *
+     * @param key     Ключ задачи
+     * @param updated Известное время изменения задачи (null - любая действующая копия)
+     * @return Задача с полями DETAIL_FIELDS
+     * @throws IOException При ошибке запроса к JIRA
+     */
+    public JiraIssue get(String key, String updated) throws IOException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.matches(updated)
+                && System.currentTimeMillis() - entry.fetchedAt < ttlMillis) {
+            hits.increment();
+            return entry.issue;
+        }
+        return fetch(key, entry, updated);
+    }
+
+    /**
+     * Текущая копия задачи из JIRA независимо от TTL: сохраненная копия
+     * перепроверяется условным запросом (304 - без тела). Нужна, когда задача
+     * заведомо могла измениться (событие вебхука без полей).
+     *
+     * @throws IOException При ошибке запроса к JIRA
+     */
+    public JiraIssue refresh(String key) throws IOException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        return fetch(key, entry, null);
+    }
+
+    /**
+     * Запрос задачи с объединением одновременных запросов одного ключа
+     */
+    private JiraIssue fetch(String key, Entry entry, String updated) throws IOException {
+        CompletableFuture<JiraIssue> own = new CompletableFuture<>();
+        CompletableFuture<JiraIssue> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+        try {
+            JiraIssue issue = load(key, entry, updated);
+            own.complete(issue);
+            return issue;
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private JiraIssue load(String key, Entry cached, String updated) throws IOException {
+        // ETag отправляется и для изменившейся задачи: JIRA все равно ответит 200
+        JiraClient.IssueResponse response = jiraClient.getIssue(key, DETAIL_FIELDS, cached != null ? cached.etag : null);
+        long now = System.currentTimeMillis();
+        Entry entry;
+        if (response.isNotModified() && cached != null && cached.matches(updated)) {
+            revalidated.increment();
+            entry = new Entry(cached.issue, cached.etag, now);
+        } else if (response.isNotModified()) {
+            // 304 на копию с другим updated - копия устарела, загружаем без ETag
+            misses.increment();
+            response = jiraClient.getIssue(key, DETAIL_FIELDS, null);
+            entry = new Entry(response.getIssue(), response.getEtag(), now);
+        } else {
+            misses.increment();
+            entry = new Entry(response.getIssue(), response.getEtag(), now);
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry.issue;
+    }
+
+    private static JiraIssue await(CompletableFuture<JiraIssue> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for JIRA issue", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("JIRA issue request failed", cause);
+        }
+    }
+
+    /**
+     * Сохраняет задачу, полученную без отдельного запроса (выдача опроса,
+     * вебхук). Задачи без статуса (неполный вебхук) не сохраняются.
+     */
+    public void put(JiraIssue issue) {
+        if (issue == null || issue.getKey() == null || issue.getFields() == null
+                || issue.getFields().getStatus() == null) {
+            return;
+        }
+        Entry entry = new Entry(issue, null, System.currentTimeMillis());
+        synchronized (entries) {
+            Entry cached = entries.get(issue.getKey());
+            // Копия не новее сохраненной (по updated) ее не заменяет: у сохраненной может быть ETag
+            if (cached != null && !isNewer(entry.updated, cached.updated)) {
+                return;
+            }
+            entries.put(issue.getKey(), entry);
+        }
+    }
+
+    private static boolean isNewer(String candidate, String cached) {
+        return candidate != null && (cached == null || JiraTime.parse(candidate) > JiraTime.parse(cached));
+    }
+
+    /**
+     * Удаляет задачу из кэша (например, задача решена)
+     */
+    public void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRevalidated() {
+        return revalidated.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "JiraIssueCache{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+                + ", revalidated=" + getRevalidated() + ", coalesced=" + getCoalesced() + '}';
+    }
+}
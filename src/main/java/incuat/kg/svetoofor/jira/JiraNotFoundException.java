@@ -0,0 +1,16 @@
+package incuat.kg.svetoofor.jira;
+
+import java.io.IOException;
+
+/**
+ * Задача JIRA не найдена (HTTP 404): удалена, перенесена без перенаправления
+ * или недоступна пользователю интеграции.
+ */
+public class JiraNotFoundException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JiraNotFoundException(String message) {
+        super(message);
+    }
+}
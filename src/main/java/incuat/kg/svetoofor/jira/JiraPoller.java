@@ -1,136 +1,511 @@
 package incuat.kg.svetoofor.jira;
 
 import incuat.kg.svetoofor.TrafficLightServer;
+import incuat.kg.svetoofor.log.Log;
+import incuat.kg.svetoofor.metrics.Counter;
+import incuat.kg.svetoofor.metrics.Histogram;
+import incuat.kg.svetoofor.metrics.Metrics;
+import incuat.kg.svetoofor.protocol.Lamp;
+import incuat.kg.svetoofor.server.SignalTrace;
 
 import java.io.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Опрашивает JIRA каждые N минут и отправляет сигналы светофора
+ * Опрашивает JIRA и отправляет сигналы светофора (одна лента - один JQL и топик).
+ *
+ * Интервал адаптивный (setAdaptiveInterval, poll.min.seconds/poll.max.seconds):
+ * пока есть открытые задачи или опрос что-то изменил - минимальный, в спокойном
+ * состоянии удваивается до максимального. После ошибки - экспоненциальная
+ * задержка с джиттером до максимального интервала; при 429/503 потолок -
+ * 4 максимальных интервала и не меньше Retry-After из ответа JIRA.
  */
 public class JiraPoller {
 
     private final JiraClient jiraClient;
     private final TrafficLightServer trafficLightServer;
     private final ScheduledExecutorService scheduler;
+    // Планировщик общий для нескольких лент - не останавливать в stop()
+    private final boolean sharedScheduler;
+    private volatile boolean stopped;
+    private volatile ScheduledFuture<?> nextPoll;
+    // Исполнитель опросов и вебхуков; планировщик только отсчитывает интервалы.
+    // По умолчанию - сам планировщик (пул платформенных потоков)
+    private Executor worker;
+
+    // Задачи ленты (опрос, вебхуки) выполняются по одной, даже на общем пуле
+    private final Queue<Runnable> serialTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean serialRunning = new AtomicBoolean();
 
     private final String customJql;
     private final int pollIntervalMinutes;
 
-    // Отслеживание обработанных инцидентов
-    private final Set<String> processedIssues = Collections.synchronizedSet(new HashSet<>());
-
-    // Отслеживание активных (открытых) инцидентов
-    private final Map<String, String> activeIncidents = Collections.synchronizedMap(new HashMap<>());
+    // Адаптивный интервал: minInterval, пока задачи меняются,
+    // в спокойном состоянии удваивается до maxInterval
+    private long minIntervalMillis;
+    private long maxIntervalMillis;
+    private long currentIntervalMillis;
+    // Подряд неудачных опросов - для экспоненциальной задержки
+    private int consecutiveFailures;
+    // Переходов состояния за текущий опрос
+    private int pollChanges;
+
+    // Начало текущего опроса или время приема вебхука - для трассировки сигналов
+    private long pollStartMillis;
+
+    private StatusClassifier statusClassifier = StatusClassifier.defaults();
+
+    // Топик досок, в который уходят сигналы (null - топик по умолчанию)
+    private String topic;
+    private String name = JiraFeed.DEFAULT_NAME;
+
+    // Метрики ленты (метка feed), создаются в start(), когда имя уже задано
+    private Histogram pollTime;
+    private Counter pollsOk;
+    private Counter pollsFailed;
+    private Counter pollsRateLimited;
+    private Counter issuesScanned;
+    // Задержка обнаружения: от создания или решения задачи в JIRA до сигнала
+    private Histogram detectedCreated;
+    private Histogram detectedResolved;
+
+    // ID типа задачи → индикатор; остальные типы - как инцидент
+    private Map<String, Lamp> issueTypeLamps = Map.of("11206", Lamp.INCIDENT, "13802", Lamp.ALERT);
+
+    // Подсказка сигнала с приоритетом и исполнителем
+    private boolean enrichSummary;
+    // Копии задач по ключу (общий для лент; null - без кэша)
+    private JiraIssueCache issueCache;
+
+    // Обработанные и активные (открытые) инциденты, при наличии журнала - переживают перезапуск
+    private IssueStateStore stateStore = IssueStateStore.inMemory(0);
+    // Состояние восстановлено из журнала - эвристика по дате создания не нужна
+    private boolean stateRestored;
 
     // Флаг первого запуска - чтобы не отправлять сигналы на все существующие задачи
     private boolean isFirstRun = true;
 
-    private static final DateTimeFormatter LOG_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static PrintWriter logWriter;
+    // Инкрементальный режим: JQL дополняется условием updated >= (отметка - запас)
+    private JiraWatermark watermark;
+    private long watermarkSkewMillis;
+    private ZoneId jiraZone;
+    // После перезапуска: задачи, созданные до сохраненной отметки, считаются уже известными
+    private long resumeCutoff;
 
-    static {
-        try {
-            // Явно указываем путь к логу
-            String logPath = "/home/fudo/svetofor/svetofor/svetoofor-server.log";
-            File logFile = new File(logPath);
-            logWriter = new PrintWriter(new FileWriter(logFile, true), true);
-        } catch (IOException e) {
-            System.err.println("Не удалось создать файл логов: " + e.getMessage());
-        }
-    }
+    private static final Log log = Log.get(JiraPoller.class);
 
-    private static void log(String message) {
-        String timestamp = LocalDateTime.now().format(LOG_FORMATTER);
-        String logMessage = "[" + timestamp + "] " + message;
-        System.out.println(logMessage);
-        if (logWriter != null) {
-            logWriter.println(logMessage);
-        }
+    public JiraPoller(JiraClient jiraClient,
+                      TrafficLightServer trafficLightServer,
+                      String customJql, int pollIntervalMinutes) {
+        this(jiraClient, trafficLightServer, customJql, pollIntervalMinutes, newScheduler(1), false);
     }
 
+    /**
+     * Лента на общем планировщике и общем JiraClient (несколько лент).
+     * stop() не останавливает ни планировщик, ни клиент - ими владеет вызывающий.
+     */
     public JiraPoller(JiraClient jiraClient,
                       TrafficLightServer trafficLightServer,
-                      String customJql, int pollIntervalMinutes) {
+                      String customJql, int pollIntervalMinutes,
+                      ScheduledExecutorService sharedScheduler) {
+        this(jiraClient, trafficLightServer, customJql, pollIntervalMinutes, sharedScheduler, true);
+    }
+
+    private JiraPoller(JiraClient jiraClient, TrafficLightServer trafficLightServer,
+                       String customJql, int pollIntervalMinutes,
+                       ScheduledExecutorService scheduler, boolean sharedScheduler) {
         this.jiraClient = jiraClient;
         this.trafficLightServer = trafficLightServer;
         this.customJql = customJql;
         this.pollIntervalMinutes = pollIntervalMinutes;
-        this.scheduler = Executors.newScheduledThreadPool(1);
+        this.scheduler = scheduler;
+        this.sharedScheduler = sharedScheduler;
+        this.worker = scheduler;
+        this.minIntervalMillis = TimeUnit.MINUTES.toMillis(pollIntervalMinutes);
+        this.maxIntervalMillis = minIntervalMillis;
+        this.currentIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Планировщик опроса
+     *
+     * @param threads Число потоков (общий пул лент ограничен этим числом)
+     */
+    public static ScheduledExecutorService newScheduler(int threads) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r, "jira-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Опрос планируется разовыми задачами - при остановке они не должны выполняться
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        return executor;
+    }
+
+    /**
+     * Исполнитель блокирующей работы ленты (запросы к JIRA, журнал состояния).
+     * С виртуальными потоками (ExecutionMode.VIRTUAL) медленный ответ JIRA не
+     * занимает поток планировщика и не задерживает опрос других лент.
+     * Исполнителем владеет вызывающий: stop() его не останавливает.
+     */
+    public void setWorkerExecutor(Executor worker) {
+        this.worker = worker != null ? worker : scheduler;
+    }
+
+    /**
+     * Имя ленты для журнала
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    private void initMetrics() {
+        pollTime = Metrics.histogram("svetoofor_jira_poll_duration_seconds",
+                "Full JIRA poll time including paging and issue processing", "feed", name);
+        String pollsHelp = "JIRA polls by result";
+        pollsOk = Metrics.counter("svetoofor_jira_polls_total", pollsHelp, "feed", name, "result", "ok");
+        pollsFailed = Metrics.counter("svetoofor_jira_polls_total", pollsHelp, "feed", name, "result", "error");
+        pollsRateLimited = Metrics.counter("svetoofor_jira_polls_total", pollsHelp, "feed", name, "result", "rate_limited");
+        issuesScanned = Metrics.counter("svetoofor_jira_issues_scanned_total",
+                "Issues returned by JIRA searches", "feed", name);
+        String detectionHelp = "Time from an issue event in JIRA to its signal";
+        detectedCreated = Metrics.histogram("svetoofor_jira_detection_latency_seconds", detectionHelp,
+                "feed", name, "event", "created");
+        detectedResolved = Metrics.histogram("svetoofor_jira_detection_latency_seconds", detectionHelp,
+                "feed", name, "event", "resolved");
+    }
+
+    /**
+     * Задержка обнаружения по времени события из JIRA; неизвестное время не учитывается.
+     * Часы JIRA могут спешить относительно сервера - отрицательная задержка считается нулем.
+     */
+    private static void recordDetection(Histogram latency, String eventTime, long now) {
+        long at = JiraTime.parse(eventTime);
+        if (at > 0) {
+            latency.record(TimeUnit.MILLISECONDS.toNanos(now - at));
+        }
+    }
+
+    /**
+     * Соответствие типов задач индикаторам (ID типа → INCIDENT/ALERT)
+     */
+    public void setIssueTypeLamps(Map<String, Lamp> issueTypeLamps) {
+        this.issueTypeLamps = Map.copyOf(issueTypeLamps);
+    }
+
+    /**
+     * Адаптивный интервал опроса.
+     * Пока есть активные задачи или состояние меняется, JIRA опрашивается с
+     * интервалом minMillis; в спокойном состоянии интервал удваивается после
+     * каждого опроса до maxMillis. При minMillis == maxMillis интервал постоянный.
+     */
+    public void setAdaptiveInterval(long minMillis, long maxMillis) {
+        this.minIntervalMillis = Math.max(1000, minMillis);
+        this.maxIntervalMillis = Math.max(this.minIntervalMillis, maxMillis);
+        this.currentIntervalMillis = this.minIntervalMillis;
+    }
+
+    /**
+     * Топик, подписчикам которого рассылаются сигналы этой JIRA
+     */
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * Правила классификации статусов (активный/решенный/не влияет)
+     */
+    public void setStatusClassifier(StatusClassifier statusClassifier) {
+        this.statusClassifier = statusClassifier;
+    }
+
+    /**
+     * Подсказка сигнала дополняется приоритетом и исполнителем (поля уже есть
+     * в выдаче поиска и в вебхуке). Без этого подсказка - только название задачи.
+     */
+    public void setEnrichSummary(boolean enrichSummary) {
+        this.enrichSummary = enrichSummary;
+    }
+
+    /**
+     * Кэш задач по ключу. Пополняется выдачей опроса и вебхуками; из него
+     * берутся подробности задачи, если вебхук пришел без статуса.
+     */
+    public void setIssueCache(JiraIssueCache issueCache) {
+        this.issueCache = issueCache;
+    }
+
+    /**
+     * Подключает сохраняемое хранилище состояния задач.
+     * Если в журнале есть записи, первый опрос уже не считается первым:
+     * известные задачи не дадут повторных сигналов, а новые - получат их сразу.
+     */
+    public void setStateStore(IssueStateStore stateStore) {
+        this.stateStore = stateStore;
+        if (stateStore.size() > 0) {
+            isFirstRun = false;
+            stateRestored = true;
+            log.info("Состояние задач восстановлено: известных {}, активных {}",
+                    stateStore.size(), stateStore.activeCount());
+        }
+    }
+
+    /**
+     * Включает инкрементальный опрос.
+     * Каждый опрос запрашивает только задачи, обновленные после отметки минус
+     * запас skew (учитывает минутную точность JQL и расхождение часов). Отметка
+     * сдвигается только после успешного опроса, поэтому пропущенный или
+     * упавший опрос не теряет изменений - следующий просто захватит больше.
+     *
+     * @param watermark   Сохраняемая отметка
+     * @param skewMillis  Запас назад от отметки
+     * @param jiraZone    Часовой пояс пользователя JIRA (для дат в JQL)
+     */
+    public void enableIncremental(JiraWatermark watermark, long skewMillis, ZoneId jiraZone) {
+        this.watermark = watermark;
+        this.watermarkSkewMillis = skewMillis;
+        this.jiraZone = jiraZone;
+        if (watermark.get() > 0) {
+            // Продолжаем с сохраненной отметки вместо полной перезагрузки
+            isFirstRun = false;
+            resumeCutoff = watermark.get();
+            log.info("Инкрементальный опрос продолжается с отметки {}", JiraTime.toJql(watermark.get(), jiraZone));
+        }
     }
 
     /**
      * Запуск периодического опроса
      */
     public void start() {
-        log("Запуск JIRA Poller...");
-        log("Интервал опроса: " + pollIntervalMinutes + " минут");
-        log("JQL запрос: " + customJql);
+        initMetrics();
+        log.info("Запуск JIRA Poller [{}]...", name);
+        if (minIntervalMillis == maxIntervalMillis) {
+            log.info("Интервал опроса: {} секунд", minIntervalMillis / 1000);
+        } else {
+            log.info("Интервал опроса: от {} до {} секунд (адаптивный)", minIntervalMillis / 1000, maxIntervalMillis / 1000);
+        }
+        log.info("JQL запрос: {}", customJql);
 
         // Проверка подключения
         if (!jiraClient.testConnection()) {
-            System.err.println("❌ Не удалось подключиться к JIRA!");
-            System.err.println("Проверьте настройки jira.url, jira.username, jira.password");
+            log.error("❌ Не удалось подключиться к JIRA!");
+            log.error("Проверьте настройки jira.url, jira.username, jira.password");
             return;
         }
 
-        log("✅ Подключение к JIRA успешно");
+        log.info("✅ Подключение к JIRA успешно");
+
+        // Первый опрос сразу, дальше каждый опрос сам планирует следующий
+        scheduleNext(TimeUnit.SECONDS.toMillis(10));
+    }
 
-        // Запускаем первый опрос сразу, затем по расписанию
-        scheduler.schedule(this::poll, 10, TimeUnit.SECONDS);
-        scheduler.scheduleAtFixedRate(this::poll, pollIntervalMinutes, pollIntervalMinutes, TimeUnit.MINUTES);
+    /**
+     * Обработка задачи, пришедшей не из опроса (вебхук JIRA).
+     * Выполняется в потоке опроса, поэтому состояние задач меняет только один поток.
+     * Вебхук без статуса задачи (урезанное тело) дополняется копией из кэша:
+     * с известным updated действующая по TTL копия той же версии берется без
+     * запроса, иначе копия перепроверяется в JIRA. Серия таких событий по одной
+     * задаче из разных лент обходится одним запросом.
+     */
+    public void submitIssue(JiraIssue issue) {
+        if (stopped || scheduler.isShutdown()) {
+            return;
+        }
+        long receivedAt = System.currentTimeMillis();
+        runSerially(() -> {
+            try {
+                pollStartMillis = receivedAt;
+                JiraIssue details = withDetails(issue);
+                if (details == null) {
+                    return;
+                }
+                if (processIssue(details)) {
+                    log.info("   (событие получено через вебхук: {})", issue.getKey());
+                }
+                stateStore.flush();
+            } catch (Exception e) {
+                log.error("❌ Ошибка обработки задачи из вебхука {}: {}", issue.getKey(), e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * @return Задача со статусом или null, если подробности получить не удалось
+     */
+    private JiraIssue withDetails(JiraIssue issue) throws IOException {
+        if (issue.getFields() != null && issue.getFields().getStatus() != null) {
+            return issue;
+        }
+        if (issueCache == null) {
+            log.warn("Вебхук без статуса задачи {} пропущен (кэш задач выключен)", issue.getKey());
+            return null;
+        }
+        String updated = issue.getFields() != null ? issue.getFields().getUpdated() : null;
+        // Без updated версия задачи неизвестна - только перепроверка
+        return updated != null ? issueCache.get(issue.getKey(), updated) : issueCache.refresh(issue.getKey());
+    }
+
+    private void scheduleNext(long delayMillis) {
+        if (stopped || scheduler.isShutdown()) {
+            return;
+        }
+        nextPoll = scheduler.schedule(() -> runSerially(this::pollAndReschedule), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Задачи одной ленты выполняются строго по очереди (состояние задач меняет
+     * один поток за раз), разные ленты - параллельно на общем пуле
+     */
+    private void runSerially(Runnable task) {
+        serialTasks.add(task);
+        if (serialRunning.compareAndSet(false, true)) {
+            worker.execute(this::drainSerialTasks);
+        }
+    }
+
+    private void drainSerialTasks() {
+        Runnable task;
+        while ((task = serialTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("❌ Ошибка задачи JIRA [{}]: {}", name, e.getMessage(), e);
+            }
+        }
+        serialRunning.set(false);
+        // Задача, добавленная после poll() и до сброса флага
+        if (!serialTasks.isEmpty() && serialRunning.compareAndSet(false, true)) {
+            worker.execute(this::drainSerialTasks);
+        }
+    }
+
+    private void pollAndReschedule() {
+        long delay;
+        long start = System.nanoTime();
+        try {
+            boolean ok = poll();
+            (ok ? pollsOk : pollsFailed).increment();
+            delay = ok ? nextIntervalAfterSuccess() : nextIntervalAfterFailure(null);
+        } catch (JiraRateLimitException e) {
+            pollsRateLimited.increment();
+            delay = nextIntervalAfterFailure(e);
+            log.warn("⏳ JIRA ограничивает частоту запросов ({}), следующий опрос через {} с", e.getStatusCode(), delay / 1000);
+        }
+        pollTime.recordSince(start);
+        scheduleNext(delay);
+    }
+
+    /**
+     * После успешного опроса: короткий интервал, пока есть открытые задачи
+     * или за опрос что-то изменилось, иначе - постепенное увеличение до максимума
+     */
+    private long nextIntervalAfterSuccess() {
+        consecutiveFailures = 0;
+        if (pollChanges > 0 || stateStore.activeCount() > 0) {
+            currentIntervalMillis = minIntervalMillis;
+        } else {
+            currentIntervalMillis = Math.min(maxIntervalMillis, currentIntervalMillis * 2);
+        }
+        return currentIntervalMillis;
+    }
+
+    /**
+     * После ошибки: экспоненциальная задержка с джиттером (от половины до полной),
+     * не меньше Retry-After. Для ограничения частоты потолок - 4 максимальных
+     * интервала, для прочих ошибок - максимальный интервал.
+     */
+    private long nextIntervalAfterFailure(JiraRateLimitException rateLimit) {
+        consecutiveFailures = Math.min(consecutiveFailures + 1, 20);
+        long cap = rateLimit != null ? maxIntervalMillis * 4 : maxIntervalMillis;
+        long backoff = Math.min(cap, minIntervalMillis << Math.min(consecutiveFailures, 16));
+        long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        long retryAfter = rateLimit != null ? rateLimit.getRetryAfterMillis() : 0;
+        currentIntervalMillis = Math.max(jittered, retryAfter);
+        return currentIntervalMillis;
     }
 
     /**
      * Опрос JIRA
+     *
+     * @return true, если опрос прошел успешно
+     * @throws JiraRateLimitException JIRA ответила 429/503
      */
-    private void poll() {
+    private boolean poll() throws JiraRateLimitException {
+        pollChanges = 0;
         try {
             if (isFirstRun) {
-                log("\n🔍 Первый запуск - загрузка существующих задач (без отправки сигналов)...");
+                log.info("\n🔍 Первый запуск - загрузка существующих задач (без отправки сигналов)...");
             } else {
-                log("\n🔍 Опрос JIRA на наличие новых инцидентов/алертов...");
+                log.info("\n🔍 Опрос JIRA на наличие новых инцидентов/алертов...");
             }
 
-            JiraSearchResult result = jiraClient.searchByCustomJql(customJql);
+            // Задачи обрабатываются по мере разбора страниц, без загрузки всего списка в память
+            int[] newCount = {0};
+            long[] maxUpdated = {0};
+            pollStartMillis = System.currentTimeMillis();
+            // Без отметки выдача полная: по ней сверяются активные задачи.
+            // Страницы передаются обработчику по одной (deliveryLock), HashSet достаточно
+            boolean fullResult = !isIncremental();
+            Set<String> seen = fullResult ? new HashSet<>() : null;
+            int found = jiraClient.searchByCustomJql(buildPollJql(), issue -> {
+                if (issue.getFields() != null) {
+                    maxUpdated[0] = Math.max(maxUpdated[0], JiraTime.parse(issue.getFields().getUpdated()));
+                }
+                if (seen != null) {
+                    seen.add(issue.getKey());
+                }
+                if (processIssue(issue)) {
+                    newCount[0]++;
+                }
+            });
+            issuesScanned.add(found);
+            commitWatermark(maxUpdated[0]);
+            if (fullResult) {
+                reconcile(stateStore.activeMissing(seen));
+            } else {
+                reconcile(stateStore.activeUnseen(System.currentTimeMillis()));
+            }
+            stateStore.expire(System.currentTimeMillis());
+            stateStore.flush();
 
-            if (result.getIssues() == null || result.getIssues().isEmpty()) {
-                log("   Новых инцидентов/алертов не найдено");
+            if (found == 0) {
+                log.info("   Новых инцидентов/алертов не найдено");
                 if (isFirstRun) {
                     isFirstRun = false;
-                    log("✅ Инициализация завершена. Начинаем мониторинг новых задач...");
+                    log.info("✅ Инициализация завершена. Начинаем мониторинг новых задач...");
                 }
-                return;
+                return true;
             }
 
-            log("   Найдено записей: " + result.getIssues().size());
-
-            int newCount = 0;
-            for (JiraIssue issue : result.getIssues()) {
-                if (processIssue(issue)) {
-                    newCount++;
-                }
-            }
+            log.info("   Найдено записей: {}", found);
 
             if (isFirstRun) {
-                log("✅ Инициализация завершена. Загружено существующих задач: " + result.getIssues().size());
-                log("   Начинаем мониторинг новых задач...");
+                log.info("✅ Инициализация завершена. Загружено существующих задач: {}", found);
+                log.info("   Начинаем мониторинг новых задач...");
                 isFirstRun = false;
-            } else if (newCount > 0) {
-                log("✅ Обработано новых записей: " + newCount);
+            } else if (newCount[0] > 0) {
+                log.info("✅ Обработано новых записей: {}", newCount[0]);
+                log.info("   Задержка обнаружения: новые {}, решенные {}", detectedCreated, detectedResolved);
             }
+            return true;
 
+        } catch (JiraRateLimitException e) {
+            throw e;
         } catch (IOException e) {
-            System.err.println("❌ Ошибка при опросе JIRA: " + e.getMessage());
+            log.error("❌ Ошибка при опросе JIRA: {}", e.getMessage());
         } catch (Exception e) {
-            System.err.println("❌ Неожиданная ошибка: " + e.getMessage());
-            e.printStackTrace();
+            log.error("❌ Неожиданная ошибка: {}", e.getMessage(), e);
         }
+        return false;
     }
 
     /**
@@ -141,8 +516,8 @@ public class JiraPoller {
      */
     private boolean processIssue(JiraIssue issue) {
         String key = issue.getKey();
-        String currentStatus = issue.getFields() != null && issue.getFields().getStatus() != null
-                ? issue.getFields().getStatus().getName() : "Unknown";
+        JiraIssue.JiraStatus status = issue.getFields() != null ? issue.getFields().getStatus() : null;
+        String currentStatus = status != null && status.getName() != null ? status.getName() : "Unknown";
 
         // Определяем тип задачи
         String issueTypeId = issue.getFields() != null && issue.getFields().getIssuetype() != null
@@ -150,36 +525,48 @@ public class JiraPoller {
         String issueTypeName = issue.getFields() != null && issue.getFields().getIssuetype() != null
                 ? issue.getFields().getIssuetype().getName() : "unknown";
 
-        boolean isIncident = "11206".equals(issueTypeId);
-        boolean isAlert = "13802".equals(issueTypeId);
+        Lamp lamp = issueTypeLamps.get(issueTypeId);
+        boolean isIncident = lamp == Lamp.INCIDENT;
+        boolean isAlert = lamp == Lamp.ALERT;
 
         // Проверяем статусы
-        boolean isActive = isActiveStatus(currentStatus);
-        boolean isResolved = isResolvedStatus(currentStatus);
+        StatusCategory category = statusClassifier.classify(status);
+        boolean isActive = category == StatusCategory.ACTIVE;
+        boolean isResolved = category == StatusCategory.RESOLVED;
+
+        if (issueCache != null) {
+            issueCache.put(issue);
+        }
 
         // Если задача уже была активной
-        if (activeIncidents.containsKey(key)) {
-            String previousStatus = activeIncidents.get(key);
+        stateStore.touch(key, System.currentTimeMillis());
+        String previousStatus = stateStore.activeStatus(key);
+        if (previousStatus != null) {
 
             // Если статус изменился на решенный (ОДИН РАЗ показываем зеленый)
-            if (!isResolvedStatus(previousStatus) && isResolved) {
-                activeIncidents.remove(key);
-                processedIssues.add(key);
+            if (isResolved) {
+                long now = System.currentTimeMillis();
+                stateStore.markResolved(key, currentStatus, now);
+                pollChanges++;
+                if (issue.getFields() != null) {
+                    recordDetection(detectedResolved, issue.getFields().getUpdated(), now);
+                }
 
-                log("✅ Задача решена: " + key + " (тип: " + issueTypeName + ")");
-                log("   Статус: " + previousStatus + " → " + currentStatus);
+                log.info("✅ Задача решена: {} (тип: {})", key, issueTypeName);
+                log.info("   Статус: {} → {}", previousStatus, currentStatus);
 
                 // Отправляем зеленый сигнал ОДИН РАЗ (30 секунд) в соответствующий кружок
                 if (trafficLightServer != null) {
+                    SignalTrace trace = trace(issue.getFields() != null ? issue.getFields().getUpdated() : null);
                     if (isIncident) {
-                        log("   🟢 Отправка сигнала: GREEN_BLINK_INCIDENT (решение инцидента)");
-                        trafficLightServer.broadcast("GREEN_BLINK_INCIDENT");
+                        log.info("   🟢 Отправка сигнала: GREEN_BLINK_INCIDENT (решение инцидента)");
+                        trafficLightServer.broadcast(topic, "GREEN_BLINK_INCIDENT", trace);
                     } else if (isAlert) {
-                        log("   🟢 Отправка сигнала: GREEN_BLINK_ALERT (решение алерта)");
-                        trafficLightServer.broadcast("GREEN_BLINK_ALERT");
+                        log.info("   🟢 Отправка сигнала: GREEN_BLINK_ALERT (решение алерта)");
+                        trafficLightServer.broadcast(topic, "GREEN_BLINK_ALERT", trace);
                     } else {
-                        log("   🟢 Отправка сигнала: GREEN_BLINK (решение)");
-                        trafficLightServer.broadcast("GREEN_BLINK");
+                        log.info("   🟢 Отправка сигнала: GREEN_BLINK (решение)");
+                        trafficLightServer.broadcast(topic, "GREEN_BLINK", trace);
                     }
                 }
 
@@ -189,9 +576,10 @@ public class JiraPoller {
             // Если статус остается активным - просто обновляем, БЕЗ повторного сигнала
             if (isActive) {
                 if (!previousStatus.equals(currentStatus)) {
-                    activeIncidents.put(key, currentStatus);
-                    log("🔄 Обновление статуса: " + key);
-                    log("   Статус: " + previousStatus + " → " + currentStatus + " (без повторного сигнала)");
+                    stateStore.markActive(key, currentStatus, System.currentTimeMillis());
+                    pollChanges++;
+                    log.info("🔄 Обновление статуса: {}", key);
+                    log.info("   Статус: {} → {} (без повторного сигнала)", previousStatus, currentStatus);
                 }
                 return false; // НЕ отправляем повторный сигнал
             }
@@ -200,48 +588,52 @@ public class JiraPoller {
         }
 
         // Пропускаем уже обработанные (были решены ранее)
-        if (processedIssues.contains(key)) {
+        if (stateStore.isKnown(key)) {
             return false;
         }
 
         // Если попалась уже решенная задача - просто запоминаем, без сигнала
         if (isResolved) {
-            processedIssues.add(key);
+            stateStore.markResolved(key, currentStatus, System.currentTimeMillis());
             return false;
         }
 
         // Новая активная задача
         if (isActive) {
-            processedIssues.add(key);
-            activeIncidents.put(key, currentStatus);
+            stateStore.markActive(key, currentStatus, System.currentTimeMillis());
 
             // При первом запуске НЕ отправляем сигналы - только запоминаем задачи
-            if (isFirstRun) {
+            if (isFirstRun || createdBeforeResume(issue)) {
                 // Только логируем без отправки сигнала
-                log("   📋 Существующая задача: " + key + " (тип: " + issueTypeName + ", ID: " + issueTypeId + ", статус: " + currentStatus + ")");
+                log.info("   📋 Существующая задача: {} (тип: {}, ID: {}, статус: {})", key, issueTypeName, issueTypeId, currentStatus);
                 return false;
             }
 
             // После первого запуска - отправляем сигнал на НОВЫЕ задачи
-            log("📋 Новая активная задача: " + key + " (тип: " + issueTypeName + ", ID: " + issueTypeId + ")");
+            pollChanges++;
+            if (issue.getFields() != null) {
+                recordDetection(detectedCreated, issue.getFields().getCreated(), System.currentTimeMillis());
+            }
+            log.info("📋 Новая активная задача: {} (тип: {}, ID: {})", key, issueTypeName, issueTypeId);
 
             // Формируем сообщение для консоли
             String message = formatIncidentMessage(issue);
-            log("   " + message);
+            log.info("   {}", message);
 
             // Сигнал светофора в зависимости от типа - ОДИН РАЗ
             if (trafficLightServer != null) {
-                String summary = sanitizeSummary(issue);
+                String summary = enrichSummary(issue, sanitizeSummary(issue));
                 String payload = (summary != null && !summary.isEmpty()) ? ("|" + summary) : "";
+                SignalTrace trace = trace(issue.getFields() != null ? issue.getFields().getCreated() : null);
                 if (isIncident) {
-                    log("   🔴 Отправка сигнала: RED_BLINK (инцидент) - ОДИН РАЗ");
-                    trafficLightServer.broadcast("RED_BLINK" + payload);
+                    log.info("   🔴 Отправка сигнала: RED_BLINK (инцидент) - ОДИН РАЗ");
+                    trafficLightServer.broadcast(topic, "RED_BLINK" + payload, trace);
                 } else if (isAlert) {
-                    log("   🟡 Отправка сигнала: YELLOW_BLINK (алерт) - ОДИН РАЗ");
-                    trafficLightServer.broadcast("YELLOW_BLINK" + payload);
+                    log.info("   🟡 Отправка сигнала: YELLOW_BLINK (алерт) - ОДИН РАЗ");
+                    trafficLightServer.broadcast(topic, "YELLOW_BLINK" + payload, trace);
                 } else {
-                    log("   ⚪ Неизвестный тип, отправка RED_BLINK");
-                    trafficLightServer.broadcast("RED_BLINK" + payload);
+                    log.info("   ⚪ Неизвестный тип, отправка RED_BLINK");
+                    trafficLightServer.broadcast(topic, "RED_BLINK" + payload, trace);
                 }
             }
 
@@ -253,53 +645,106 @@ public class JiraPoller {
     }
 
     /**
-     * Проверка, является ли статус активным (требует красного светофора)
-     * Активные статусы: Создан, Назначен, Исполнитель, Руководитель
+     * Активные задачи, пропавшие из полной выдачи или давно не появлявшиеся в
+     * инкрементальной, перепроверяются по ключу: решение, выпавшее из JQL
+     * (status NOT IN ...), опрос не видит, а задача, сдвинувшаяся между
+     * страницами во время чтения, в выдачу не попадает. Решенная задача
+     * проходит обычную обработку (зеленый сигнал), удаленная (404) снимается
+     * с учета без сигнала, открытая остается активной.
      */
-    private boolean isActiveStatus(String status) {
-        if (status == null) {
-            return false;
+    private void reconcile(List<String> missing) throws JiraRateLimitException {
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<String> removed = new ArrayList<>();
+        for (String key : missing) {
+            JiraIssue issue;
+            try {
+                issue = issueCache != null ? issueCache.refresh(key) : jiraClient.getIssue(key);
+            } catch (JiraNotFoundException e) {
+                stateStore.markResolved(key, stateStore.activeStatus(key), System.currentTimeMillis());
+                if (issueCache != null) {
+                    issueCache.invalidate(key);
+                }
+                pollChanges++;
+                removed.add(key);
+                continue;
+            } catch (JiraRateLimitException e) {
+                throw e;
+            } catch (IOException e) {
+                // Остальные перепроверит следующий полный опрос
+                log.warn("Не удалось перепроверить задачу {}: {}", key, e.getMessage());
+                break;
+            }
+            if (!processIssue(issue) && stateStore.isActive(key)) {
+                log.debug("   Задача {} открыта, но нет в выдаче JIRA", key);
+            }
         }
+        if (!removed.isEmpty()) {
+            log.info("   Не найдены в JIRA, сняты с учета без сигнала: {}", removed);
+        }
+    }
 
-        String statusLower = status.toLowerCase();
+    private boolean isIncremental() {
+        return watermark != null && watermark.get() > 0;
+    }
 
-        return statusLower.contains("создан") ||
-               statusLower.contains("назначен") ||
-               statusLower.contains("исполнитель") ||
-               statusLower.contains("руководитель") ||
-               statusLower.contains("created") ||
-               statusLower.contains("assigned") ||
-               statusLower.contains("in progress") ||
-               statusLower.contains("в работе");
+    /**
+     * @param eventTime Время события в JIRA (created или updated задачи)
+     */
+    private SignalTrace trace(String eventTime) {
+        return new SignalTrace(JiraTime.parse(eventTime), pollStartMillis);
     }
 
     /**
-     * Проверка, является ли статус решенным (требует зеленого светофора)
-     * Решенные статусы: В ожидании, Решен, Закрыто, Отклонен, Отменен, Завершен
+     * JQL текущего опроса: в инкрементальном режиме к запросу добавляется
+     * условие updated >= "отметка - запас" (перед ORDER BY, если он есть)
      */
-    private boolean isResolvedStatus(String status) {
-        if (status == null) {
-            return false;
+    private String buildPollJql() {
+        if (!isIncremental()) {
+            return customJql;
         }
+        return incrementalJql(customJql, watermark.get() - watermarkSkewMillis, jiraZone);
+    }
 
-        String statusLower = status.toLowerCase();
+    /**
+     * @param sinceMillis Отметка с учетом запаса
+     * @param zone        Часовой пояс пользователя JIRA
+     */
+    static String incrementalJql(String jql, long sinceMillis, ZoneId zone) {
+        String since = JiraTime.toJql(sinceMillis, zone);
 
-        return statusLower.contains("ожидании") ||
-               statusLower.contains("решен") ||
-               statusLower.contains("закрыт") ||
-               statusLower.contains("отклонен") ||
-               statusLower.contains("отменен") ||
-               statusLower.contains("завершен") ||
-               statusLower.contains("pending") ||
-               statusLower.contains("resolved") ||
-               statusLower.contains("closed") ||
-               statusLower.contains("rejected") ||
-               statusLower.contains("declined") ||
-               statusLower.contains("canceled") ||
-               statusLower.contains("cancelled") ||
-               statusLower.contains("done") ||
-               statusLower.contains("finished") ||
-               statusLower.contains("completed");
+        int orderBy = jql.toUpperCase(Locale.ROOT).lastIndexOf("ORDER BY");
+        String filter = orderBy == -1 ? jql : jql.substring(0, orderBy);
+        String order = orderBy == -1 ? "" : " " + jql.substring(orderBy);
+        return "(" + filter.trim() + ") AND updated >= \"" + since + "\"" + order;
+    }
+
+    /**
+     * Сдвиг и сохранение отметки после успешного опроса
+     */
+    private void commitWatermark(long maxUpdated) {
+        if (watermark == null) {
+            return;
+        }
+        resumeCutoff = 0;
+        if (maxUpdated <= 0) {
+            return;
+        }
+        watermark.advance(maxUpdated);
+        try {
+            watermark.save();
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить отметку опроса {}: {}", watermark.getFile(), e.getMessage());
+        }
+    }
+
+    private boolean createdBeforeResume(JiraIssue issue) {
+        if (stateRestored || resumeCutoff <= 0 || issue.getFields() == null) {
+            return false;
+        }
+        long created = JiraTime.parse(issue.getFields().getCreated());
+        return created > 0 && created < resumeCutoff;
     }
 
     /**
@@ -343,6 +788,25 @@ public class JiraPoller {
         return cleaned.isEmpty() ? null : cleaned;
     }
 
+    /**
+     * Название задачи с приоритетом и исполнителем из полей самой задачи:
+     * без отдельного запроса к JIRA, пока страница поиска держит deliveryLock
+     */
+    private String enrichSummary(JiraIssue issue, String summary) {
+        if (!enrichSummary || summary == null || issue.getFields() == null) {
+            return summary;
+        }
+        StringBuilder sb = new StringBuilder(summary);
+        if (issue.getFields().getPriority() != null) {
+            sb.append(" · приоритет: ").append(getPriorityLevel(issue));
+        }
+        JiraIssue.JiraUser assignee = issue.getFields().getAssignee();
+        if (assignee != null && assignee.getDisplayName() != null) {
+            sb.append(" · исполнитель: ").append(assignee.getDisplayName().replace("|", "/"));
+        }
+        return sb.toString();
+    }
+
     /**
      * Определение уровня приоритета
      */
@@ -385,7 +849,23 @@ public class JiraPoller {
      * Остановка опроса
      */
     public void stop() {
-        log("Остановка JIRA Poller...");
+        log.info("Остановка JIRA Poller [{}]...", name);
+        stopped = true;
+        if (sharedScheduler || worker != scheduler) {
+            ScheduledFuture<?> pending = nextPoll;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            if (!sharedScheduler) {
+                scheduler.shutdownNow();
+            }
+            // Журнал (и собственный клиент) закрываются после текущего опроса ленты
+            runSerially(sharedScheduler ? stateStore::close : () -> {
+                stateStore.close();
+                jiraClient.close();
+            });
+            return;
+        }
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -395,14 +875,14 @@ public class JiraPoller {
             scheduler.shutdownNow();
         }
         jiraClient.close();
+        stateStore.close();
     }
 
     /**
      * Очистка истории обработанных инцидентов (для освобождения памяти)
      */
     public void clearProcessedIssues() {
-        processedIssues.clear();
-        activeIncidents.clear();
-        log("История обработанных инцидентов очищена");
+        stateStore.clear();
+        log.info("История обработанных инцидентов очищена");
     }
 }
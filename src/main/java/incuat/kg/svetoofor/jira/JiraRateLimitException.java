@@ -0,0 +1,33 @@
+package incuat.kg.svetoofor.jira;
+
+import java.io.IOException;
+
+/**
+ * JIRA ограничивает частоту запросов (HTTP 429 или 503).
+ * Содержит задержку из заголовка Retry-After, если сервер ее передал.
+ */
+public class JiraRateLimitException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    public JiraRateLimitException(int statusCode, long retryAfterMillis) {
+        super("JIRA API rate limit: " + statusCode
+                + (retryAfterMillis > 0 ? ", retry after " + retryAfterMillis / 1000 + " s" : ""));
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return Задержка до повтора в миллисекундах; 0, если сервер ее не указал
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,42 @@
+package incuat.kg.svetoofor.jira;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Преобразование дат JIRA REST API ("2024-05-17T14:03:21.000+0600")
+ * и форматирование дат для JQL ("2024/05/17 14:03").
+ */
+public final class JiraTime {
+
+    private static final DateTimeFormatter API_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+    private static final DateTimeFormatter JQL_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm");
+
+    private JiraTime() {
+    }
+
+    /**
+     * @return Время в миллисекундах или -1, если строка пустая или не разбирается
+     */
+    public static long parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return OffsetDateTime.parse(value, API_FORMAT).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Дата для JQL. JIRA интерпретирует ее в часовом поясе пользователя,
+     * под которым выполняется запрос, и точностью до минуты.
+     */
+    public static String toJql(long epochMillis, ZoneId zone) {
+        return JQL_FORMAT.format(Instant.ofEpochMilli(epochMillis).atZone(zone));
+    }
+}
@@ -0,0 +1,109 @@
+package incuat.kg.svetoofor.jira;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отметка инкрементального опроса: максимальное значение поля updated среди
+ * уже обработанных задач. Хранится в файле, чтобы после перезапуска опрос
+ * продолжался с того же места без полного пересканирования.
+ */
+public class JiraWatermark {
+
+    private static final String KEY = "updated.max";
+
+    private final Path file;
+    // save() пишет файл: ReentrantLock не прикрепляет виртуальный поток к несущему
+    private final ReentrantLock lock = new ReentrantLock();
+    private long value;
+    private long saved;
+
+    private JiraWatermark(Path file, long value) {
+        this.file = file;
+        this.value = value;
+        this.saved = value;
+    }
+
+    /**
+     * Загрузка отметки из файла
+     *
+     * @param file Файл отметки (может не существовать)
+     * @return Отметка; 0, если файла нет или он поврежден
+     */
+    public static JiraWatermark load(Path file) {
+        long value = 0;
+        if (Files.exists(file)) {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+                value = Long.parseLong(props.getProperty(KEY, "0"));
+            } catch (IOException | NumberFormatException e) {
+                value = 0;
+            }
+        }
+        return new JiraWatermark(file, value);
+    }
+
+    /**
+     * @return Время последнего обработанного изменения (мс) или 0
+     */
+    public long get() {
+        lock.lock();
+        try {
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сдвигает отметку вперед, если candidate новее
+     */
+    public void advance(long candidate) {
+        lock.lock();
+        try {
+            if (candidate > value) {
+                value = candidate;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Атомарно сохраняет отметку (через временный файл), если она изменилась
+     */
+    public void save() throws IOException {
+        lock.lock();
+        try {
+            if (value == saved) {
+                return;
+            }
+            Properties props = new Properties();
+            props.setProperty(KEY, String.valueOf(value));
+
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "JIRA poller watermark");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            saved = value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,178 @@
+package incuat.kg.svetoofor.jira;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import incuat.kg.svetoofor.log.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Прием вебхуков JIRA (jira:issue_created, jira:issue_updated).
+ *
+ * Задача из вебхука проходит ту же обработку, что и задачи из опроса
+ * (JiraPoller.submitIssue), поэтому сигнал уходит через миллисекунды после
+ * события, а периодический опрос остается сверкой на случай потерянных вебхуков.
+ *
+ * Коды ответа: 202 - принято, 204 - событие не интересно, 400 - неверный JSON,
+ * 401 - неверный токен, 405 - не POST, 413 - слишком большое тело.
+ */
+public class JiraWebhookHandler implements HttpHandler {
+
+    private static final Log log = Log.get(JiraWebhookHandler.class);
+
+    public static final String TOKEN_HEADER = "X-Svetofor-Token";
+    public static final String TOKEN_PARAM = "token";
+    public static final int DEFAULT_MAX_BODY_BYTES = 1024 * 1024;
+
+    private static final Set<String> ACCEPTED_EVENTS = Set.of("jira:issue_created", "jira:issue_updated");
+
+    private final JiraPoller poller;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final byte[] token;
+    private Set<String> issueTypes = Collections.emptySet();
+    private int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+
+    /**
+     * @param poller Обработчик задач
+     * @param token  Общий секрет (заголовок X-Svetofor-Token или параметр token), обязателен
+     */
+    public JiraWebhookHandler(JiraPoller poller, String token) {
+        if (token == null || token.isEmpty()) {
+            throw new IllegalArgumentException("Webhook token is required");
+        }
+        this.poller = poller;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Принимать только задачи этих типов (ID типа задачи); пустое множество - все
+     */
+    public void setIssueTypes(Set<String> issueTypes) {
+        this.issueTypes = issueTypes;
+    }
+
+    public void setMaxBodyBytes(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                respond(exchange, 405);
+                return;
+            }
+            if (!authorized(exchange)) {
+                log.warn("Вебхук JIRA отклонен: неверный токен ({})", exchange.getRemoteAddress());
+                respond(exchange, 401);
+                return;
+            }
+
+            byte[] body = readBody(exchange);
+            if (body == null) {
+                log.warn("Вебхук JIRA отклонен: тело больше {} байт", maxBodyBytes);
+                respond(exchange, 413);
+                return;
+            }
+
+            JsonNode root;
+            try {
+                root = objectMapper.readTree(body);
+            } catch (IOException e) {
+                respond(exchange, 400);
+                return;
+            }
+            if (root == null || !root.isObject()) {
+                respond(exchange, 400);
+                return;
+            }
+
+            String event = root.path("webhookEvent").asText("");
+            if (!ACCEPTED_EVENTS.contains(event)) {
+                respond(exchange, 204);
+                return;
+            }
+
+            JsonNode issueNode = root.get("issue");
+            if (issueNode == null || !issueNode.isObject() || !issueNode.hasNonNull("key")
+                    || !issueNode.path("fields").isObject()) {
+                respond(exchange, 400);
+                return;
+            }
+            JiraIssue issue = objectMapper.treeToValue(issueNode, JiraIssue.class);
+
+            if (!issueTypes.isEmpty()) {
+                JiraIssue.JiraIssueType type = issue.getFields().getIssuetype();
+                if (type == null || !issueTypes.contains(type.getId())) {
+                    respond(exchange, 204);
+                    return;
+                }
+            }
+
+            poller.submitIssue(issue);
+            respond(exchange, 202);
+        } catch (RuntimeException e) {
+            log.error("Ошибка обработки вебхука JIRA: {}", e.getMessage(), e);
+            respond(exchange, 500);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String provided = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        if (provided == null) {
+            provided = queryParam(exchange.getRequestURI().getRawQuery(), TOKEN_PARAM);
+        }
+        return provided != null && MessageDigest.isEqual(token, provided.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String queryParam(String query, String name) {
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Тело запроса или null, если оно превышает maxBodyBytes
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null) {
+            try {
+                if (Long.parseLong(length.trim()) > maxBodyBytes) {
+                    return null;
+                }
+            } catch (NumberFormatException ignored) {
+                // Проверим по фактическому размеру
+            }
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(maxBodyBytes + 1);
+            return body.length > maxBodyBytes ? null : body;
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int code) throws IOException {
+        exchange.sendResponseHeaders(code, -1);
+        OutputStream out = exchange.getResponseBody();
+        out.close();
+    }
+}
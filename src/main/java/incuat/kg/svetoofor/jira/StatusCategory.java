@@ -0,0 +1,13 @@
+package incuat.kg.svetoofor.jira;
+
+/**
+ * Категория статуса задачи JIRA для светофора
+ */
+public enum StatusCategory {
+    /** Задача открыта - требует красного/желтого сигнала */
+    ACTIVE,
+    /** Задача решена - один раз зеленый сигнал */
+    RESOLVED,
+    /** Статус не влияет на светофор */
+    IGNORED
+}
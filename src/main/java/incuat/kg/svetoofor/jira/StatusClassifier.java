@@ -0,0 +1,166 @@
+package incuat.kg.svetoofor.jira;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Классификация статусов JIRA: ACTIVE, RESOLVED или IGNORED.
+ *
+ * Порядок: явные ID статусов, затем точные нормализованные имена из
+ * конфигурации, затем подстроки (по умолчанию - DEFAULT_ACTIVE_MATCH/DEFAULT_RESOLVED_MATCH).
+ * Решенный статус проверяется раньше активного. Результат кэшируется по ID
+ * статуса (или по имени, если ID нет), так что каждый статус разбирается один
+ * раз, а дальше - один поиск в хэш-таблице на задачу.
+ */
+public class StatusClassifier {
+
+    /**
+     * Подстроки активных статусов по умолчанию: Создан, Назначен, Исполнитель, Руководитель
+     */
+    public static final List<String> DEFAULT_ACTIVE_MATCH = List.of(
+            "создан", "назначен", "исполнитель", "руководитель",
+            "created", "assigned", "in progress", "в работе");
+
+    /**
+     * Подстроки решенных статусов по умолчанию: В ожидании, Решен, Закрыто, Отклонен, Отменен, Завершен
+     */
+    public static final List<String> DEFAULT_RESOLVED_MATCH = List.of(
+            "ожидании", "решен", "закрыт", "отклонен", "отменен", "завершен",
+            "pending", "resolved", "closed", "rejected", "declined",
+            "canceled", "cancelled", "done", "finished", "completed");
+
+    private final Map<String, StatusCategory> byId = new HashMap<>();
+    private final Map<String, StatusCategory> byName = new HashMap<>();
+    private final String[] activeMatch;
+    private final String[] resolvedMatch;
+
+    private final Map<String, StatusCategory> idCache = new ConcurrentHashMap<>();
+    private final Map<String, StatusCategory> nameCache = new ConcurrentHashMap<>();
+
+    public StatusClassifier(Collection<String> activeMatch, Collection<String> resolvedMatch) {
+        this.activeMatch = normalizeAll(activeMatch);
+        this.resolvedMatch = normalizeAll(resolvedMatch);
+    }
+
+    /**
+     * Классификатор только с правилами по подстрокам по умолчанию
+     */
+    public static StatusClassifier defaults() {
+        return new StatusClassifier(DEFAULT_ACTIVE_MATCH, DEFAULT_RESOLVED_MATCH);
+    }
+
+    /**
+     * Настройка из server.properties (списки через запятую):
+     * jira.status.{active,resolved,ignored}.ids - ID статусов,
+     * jira.status.{active,resolved,ignored}.names - точные имена,
+     * jira.status.{active,resolved}.match - подстроки для неизвестных статусов.
+     */
+    public static StatusClassifier fromProperties(Properties props) {
+        StatusClassifier classifier = new StatusClassifier(
+                list(props, "jira.status.active.match", DEFAULT_ACTIVE_MATCH),
+                list(props, "jira.status.resolved.match", DEFAULT_RESOLVED_MATCH));
+        for (StatusCategory category : StatusCategory.values()) {
+            String prefix = "jira.status." + category.name().toLowerCase(Locale.ROOT);
+            for (String id : list(props, prefix + ".ids", List.of())) {
+                classifier.mapId(id, category);
+            }
+            for (String name : list(props, prefix + ".names", List.of())) {
+                classifier.mapName(name, category);
+            }
+        }
+        return classifier;
+    }
+
+    public void mapId(String statusId, StatusCategory category) {
+        byId.put(statusId.trim(), category);
+        idCache.clear();
+    }
+
+    public void mapName(String statusName, StatusCategory category) {
+        byName.put(normalize(statusName), category);
+        idCache.clear();
+        nameCache.clear();
+    }
+
+    public StatusCategory classify(JiraIssue.JiraStatus status) {
+        return status == null ? StatusCategory.IGNORED : classify(status.getId(), status.getName());
+    }
+
+    /**
+     * @param statusId   ID статуса (может быть null)
+     * @param statusName Имя статуса (может быть null)
+     */
+    public StatusCategory classify(String statusId, String statusName) {
+        if (statusId != null) {
+            StatusCategory cached = idCache.get(statusId);
+            if (cached != null) {
+                return cached;
+            }
+            StatusCategory category = byId.get(statusId);
+            if (category == null) {
+                category = classifyName(statusName);
+            }
+            idCache.put(statusId, category);
+            return category;
+        }
+        return classifyName(statusName);
+    }
+
+    private StatusCategory classifyName(String statusName) {
+        if (statusName == null) {
+            return StatusCategory.IGNORED;
+        }
+        StatusCategory cached = nameCache.get(statusName);
+        if (cached != null) {
+            return cached;
+        }
+
+        String normalized = normalize(statusName);
+        StatusCategory category = byName.get(normalized);
+        if (category == null) {
+            if (containsAny(normalized, resolvedMatch)) {
+                category = StatusCategory.RESOLVED;
+            } else if (containsAny(normalized, activeMatch)) {
+                category = StatusCategory.ACTIVE;
+            } else {
+                category = StatusCategory.IGNORED;
+            }
+        }
+        nameCache.put(statusName, category);
+        return category;
+    }
+
+    private static boolean containsAny(String value, String[] patterns) {
+        for (String pattern : patterns) {
+            if (value.contains(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String[] normalizeAll(Collection<String> values) {
+        return values.stream()
+                .map(StatusClassifier::normalize)
+                .filter(value -> !value.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static List<String> list(Properties props, String key, List<String> defaults) {
+        String value = props.getProperty(key);
+        if (value == null) {
+            return defaults;
+        }
+        List<String> result = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                result.add(item.trim());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,392 @@
+package incuat.kg.svetoofor.log;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронная запись логов.
+ *
+ * Потоки-производители (WebSocket selector, JIRA Poller, JavaFX) только кладут
+ * запись в кольцевой буфер: захват слота - CAS по head, публикация - volatile
+ * запись sequence слота. Слоты выделены заранее, форматирование строки и
+ * времени откладывается до фонового потока. Единственный фоновый поток
+ * забирает записи пачками, пишет их через большой буфер, сбрасывает буфер
+ * один раз на пачку, периодически делает fsync и ротирует файл по размеру.
+ *
+ * Если буфер переполнен, запись отбрасывается (поток-производитель никогда не
+ * ждет диск), а количество потерянных записей выводится в лог при следующей пачке.
+ */
+final class AsyncLogWriter implements Runnable {
+
+    private static final DateTimeFormatter LOG_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+    private static final class Entry {
+        volatile long sequence;
+        long timestamp;
+        LogLevel level;
+        String pattern;
+        int argCount;
+        Object arg0;
+        Object arg1;
+        Object[] args;
+        Throwable thrown;
+
+        void clear() {
+            level = null;
+            pattern = null;
+            arg0 = null;
+            arg1 = null;
+            args = null;
+            thrown = null;
+        }
+    }
+
+    private final Entry[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread thread;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+    private volatile LogConfig pendingConfig;
+
+    // Состояние фонового потока
+    private LogConfig config;
+    private Writer fileWriter;
+    private FileOutputStream fileStream;
+    private CountingOutputStream fileCounter;
+    private long lastFsync;
+    private boolean dirty;
+    private final Writer stdout = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+    private final Writer stderr = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(FileDescriptor.err), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+    private final StringBuilder line = new StringBuilder(256);
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTimestamp;
+
+    AsyncLogWriter(LogConfig config) {
+        int capacity = Integer.highestOneBit(Math.max(1024, config.getBufferSize()) - 1) << 1;
+        this.ring = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Entry();
+        }
+        this.mask = capacity - 1;
+        this.pendingConfig = config;
+
+        this.thread = new Thread(this, "svetoofor-log-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void reconfigure(LogConfig config) {
+        this.pendingConfig = config;
+        wakeUp();
+    }
+
+    /**
+     * Постановка записи в очередь. Не блокирует и не выделяет память
+     * (аргументы передаются ссылками, форматирование - в фоновом потоке).
+     *
+     * @return false, если буфер переполнен и запись отброшена
+     */
+    boolean offer(LogLevel level, String pattern, int argCount, Object arg0, Object arg1, Object[] args, Throwable thrown) {
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail >= ring.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+
+        Entry entry = ring[(int) seq & mask];
+        entry.timestamp = System.currentTimeMillis();
+        entry.level = level;
+        entry.pattern = pattern;
+        entry.argCount = argCount;
+        entry.arg0 = arg0;
+        entry.arg1 = arg1;
+        entry.args = args;
+        entry.thrown = thrown;
+        entry.sequence = seq + 1;
+
+        if (sleeping) {
+            wakeUp();
+        }
+        return true;
+    }
+
+    private void wakeUp() {
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Дописать все накопленные записи и закрыть файл (shutdown hook)
+     */
+    void shutdown() {
+        running = false;
+        wakeUp();
+        try {
+            thread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            applyPendingConfig();
+            int drained = drain();
+            if (drained > 0) {
+                flushBatch();
+                continue;
+            }
+            if (!running) {
+                break;
+            }
+            maybeFsync();
+
+            sleeping = true;
+            if (ring[(int) tail & mask].sequence != tail + 1 && pendingConfig == null && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+        flushBatch();
+        fsync();
+        closeFile();
+    }
+
+    private int drain() {
+        int count = 0;
+        long next = tail;
+        Entry entry = ring[(int) next & mask];
+        while (entry.sequence == next + 1) {
+            write(entry);
+            entry.clear();
+            next++;
+            tail = next;
+            count++;
+            entry = ring[(int) next & mask];
+        }
+
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            writeLine(LogLevel.WARN, System.currentTimeMillis(), "Буфер логов переполнен, потеряно записей: " + lost, null);
+            count++;
+        }
+        return count;
+    }
+
+    private void write(Entry entry) {
+        String message = format(entry.pattern, entry.argCount, entry.arg0, entry.arg1, entry.args);
+        writeLine(entry.level, entry.timestamp, message, entry.thrown);
+    }
+
+    private void writeLine(LogLevel level, long timestamp, String message, Throwable thrown) {
+        line.setLength(0);
+        line.append('[').append(timestamp(timestamp)).append("] ");
+        if (level == LogLevel.WARN || level == LogLevel.ERROR) {
+            line.append(level.name()).append(' ');
+        }
+        line.append(message).append(System.lineSeparator());
+        if (thrown != null) {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            line.append(trace);
+        }
+
+        try {
+            if (config.isConsole()) {
+                (level == LogLevel.ERROR ? stderr : stdout).append(line);
+            }
+            if (fileWriter != null) {
+                fileWriter.append(line);
+                dirty = true;
+                if (config.getMaxFileBytes() > 0 && fileCounter.count >= config.getMaxFileBytes()) {
+                    rotate();
+                }
+            }
+        } catch (IOException e) {
+            reportFailure("Ошибка записи лога", e);
+        }
+    }
+
+    private String timestamp(long millis) {
+        long second = millis / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).format(LOG_FORMATTER);
+        }
+        return cachedTimestamp;
+    }
+
+    /**
+     * Подстановка аргументов на место {} в шаблоне
+     */
+    static String format(String pattern, int argCount, Object arg0, Object arg1, Object[] args) {
+        if (argCount == 0 || pattern == null) {
+            return String.valueOf(pattern);
+        }
+        StringBuilder sb = new StringBuilder(pattern.length() + 32);
+        int from = 0;
+        int index = 0;
+        while (index < argCount) {
+            int at = pattern.indexOf("{}", from);
+            if (at == -1) {
+                break;
+            }
+            Object arg = args != null ? args[index] : (index == 0 ? arg0 : arg1);
+            sb.append(pattern, from, at).append(arg);
+            from = at + 2;
+            index++;
+        }
+        sb.append(pattern, from, pattern.length());
+        return sb.toString();
+    }
+
+    private void flushBatch() {
+        try {
+            stdout.flush();
+            stderr.flush();
+            if (fileWriter != null) {
+                fileWriter.flush();
+            }
+        } catch (IOException e) {
+            reportFailure("Ошибка сброса лога", e);
+        }
+        maybeFsync();
+    }
+
+    private void maybeFsync() {
+        if (dirty && System.currentTimeMillis() - lastFsync >= config.getFsyncIntervalMillis()) {
+            fsync();
+        }
+    }
+
+    private void fsync() {
+        if (fileStream == null || !dirty) {
+            return;
+        }
+        try {
+            fileWriter.flush();
+            fileStream.getChannel().force(false);
+        } catch (IOException e) {
+            reportFailure("Ошибка fsync лога", e);
+        }
+        dirty = false;
+        lastFsync = System.currentTimeMillis();
+    }
+
+    private void applyPendingConfig() {
+        LogConfig next = pendingConfig;
+        if (next == null) {
+            return;
+        }
+        pendingConfig = null;
+
+        String previousFile = config != null ? config.getFile() : null;
+        config = next;
+        if (next.getFile() == null ? previousFile != null : !next.getFile().equals(previousFile) || fileWriter == null) {
+            closeFile();
+            openFile();
+        }
+    }
+
+    private void openFile() {
+        if (config.getFile() == null) {
+            return;
+        }
+        try {
+            File file = new File(config.getFile());
+            File parent = file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            fileStream = new FileOutputStream(file, true);
+            fileCounter = new CountingOutputStream(fileStream, file.length());
+            fileWriter = new BufferedWriter(new OutputStreamWriter(fileCounter, StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+        } catch (IOException e) {
+            fileStream = null;
+            fileWriter = null;
+            reportFailure("Не удалось создать файл логов", e);
+        }
+    }
+
+    private void closeFile() {
+        if (fileWriter == null) {
+            return;
+        }
+        try {
+            fileWriter.close();
+        } catch (IOException e) {
+            reportFailure("Ошибка закрытия лога", e);
+        }
+        fileWriter = null;
+        fileStream = null;
+        fileCounter = null;
+        dirty = false;
+    }
+
+    /**
+     * Ротация: svetoofor.log -> svetoofor.log.1 -> ... -> svetoofor.log.N (удаляется)
+     */
+    private void rotate() throws IOException {
+        fileWriter.flush();
+        fileStream.getChannel().force(false);
+        closeFile();
+
+        String base = config.getFile();
+        int maxFiles = Math.max(1, config.getMaxFiles());
+        new File(base + "." + maxFiles).delete();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File from = new File(base + "." + i);
+            if (from.exists()) {
+                from.renameTo(new File(base + "." + (i + 1)));
+            }
+        }
+        new File(base).renameTo(new File(base + ".1"));
+        openFile();
+    }
+
+    private void reportFailure(String message, IOException e) {
+        // Писать об ошибке лога больше некуда
+        System.err.println(message + ": " + e.getMessage());
+    }
+
+    /**
+     * Считает байты, фактически ушедшие в файл (для ротации по размеру)
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out, long initial) {
+            super(out);
+            this.count = initial;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package incuat.kg.svetoofor.log;
+
+/**
+ * Общий логгер приложения поверх AsyncLogWriter.
+ *
+ * Использование: {@code private static final Log log = Log.get(MyClass.class);}
+ * и {@code log.info("Client connected: {}", address)}. Аргументы подставляются
+ * в фоновом потоке записи; при выключенном уровне вызов ничего не выделяет
+ * (перегрузки на 0, 1 и 2 аргумента обходятся без varargs-массива).
+ *
+ * Файл и уровень задаются один раз при старте через {@link #configure(LogConfig)};
+ * до этого записи идут только в консоль.
+ */
+public final class Log {
+
+    private static final Object INIT_LOCK = new Object();
+    private static volatile AsyncLogWriter writer;
+    private static volatile LogLevel threshold = LogLevel.INFO;
+
+    private final String name;
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    public static Log get(Class<?> owner) {
+        return new Log(owner.getSimpleName());
+    }
+
+    /**
+     * Настройка файла, уровня, ротации. Можно вызывать повторно - фоновый поток
+     * переоткроет файл; емкость буфера фиксируется при первом вызове.
+     */
+    public static void configure(LogConfig config) {
+        synchronized (INIT_LOCK) {
+            threshold = config.getLevel();
+            if (writer == null) {
+                writer = start(config);
+            } else {
+                writer.reconfigure(config);
+            }
+        }
+    }
+
+    private static AsyncLogWriter writer() {
+        AsyncLogWriter w = writer;
+        if (w == null) {
+            synchronized (INIT_LOCK) {
+                w = writer;
+                if (w == null) {
+                    w = start(LogConfig.consoleOnly());
+                    writer = w;
+                }
+            }
+        }
+        return w;
+    }
+
+    private static AsyncLogWriter start(LogConfig config) {
+        AsyncLogWriter w = new AsyncLogWriter(config);
+        Runtime.getRuntime().addShutdownHook(new Thread(w::shutdown, "svetoofor-log-shutdown"));
+        return w;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled(LogLevel level) {
+        return level.compareTo(threshold) >= 0 && level != LogLevel.OFF;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(LogLevel.DEBUG);
+    }
+
+    public void debug(String message) {
+        if (isEnabled(LogLevel.DEBUG)) {
+            writer().offer(LogLevel.DEBUG, message, 0, null, null, null, null);
+        }
+    }
+
+    public void debug(String pattern, Object arg) {
+        if (isEnabled(LogLevel.DEBUG)) {
+            writer().offer(LogLevel.DEBUG, pattern, 1, arg, null, null, null);
+        }
+    }
+
+    public void debug(String pattern, Object arg0, Object arg1) {
+        if (isEnabled(LogLevel.DEBUG)) {
+            writer().offer(LogLevel.DEBUG, pattern, 2, arg0, arg1, null, null);
+        }
+    }
+
+    public void info(String message) {
+        if (isEnabled(LogLevel.INFO)) {
+            writer().offer(LogLevel.INFO, message, 0, null, null, null, null);
+        }
+    }
+
+    public void info(String pattern, Object arg) {
+        if (isEnabled(LogLevel.INFO)) {
+            writer().offer(LogLevel.INFO, pattern, 1, arg, null, null, null);
+        }
+    }
+
+    public void info(String pattern, Object arg0, Object arg1) {
+        if (isEnabled(LogLevel.INFO)) {
+            writer().offer(LogLevel.INFO, pattern, 2, arg0, arg1, null, null);
+        }
+    }
+
+    public void info(String pattern, Object... args) {
+        if (isEnabled(LogLevel.INFO)) {
+            writer().offer(LogLevel.INFO, pattern, args.length, null, null, args, null);
+        }
+    }
+
+    public void warn(String message) {
+        if (isEnabled(LogLevel.WARN)) {
+            writer().offer(LogLevel.WARN, message, 0, null, null, null, null);
+        }
+    }
+
+    public void warn(String pattern, Object arg) {
+        if (isEnabled(LogLevel.WARN)) {
+            writer().offer(LogLevel.WARN, pattern, 1, arg, null, null, null);
+        }
+    }
+
+    public void warn(String pattern, Object arg0, Object arg1) {
+        if (isEnabled(LogLevel.WARN)) {
+            writer().offer(LogLevel.WARN, pattern, 2, arg0, arg1, null, null);
+        }
+    }
+
+    public void warn(String pattern, Object... args) {
+        if (isEnabled(LogLevel.WARN)) {
+            writer().offer(LogLevel.WARN, pattern, args.length, null, null, args, null);
+        }
+    }
+
+    public void error(String message) {
+        if (isEnabled(LogLevel.ERROR)) {
+            writer().offer(LogLevel.ERROR, message, 0, null, null, null, null);
+        }
+    }
+
+    public void error(String pattern, Object arg) {
+        if (isEnabled(LogLevel.ERROR)) {
+            writer().offer(LogLevel.ERROR, pattern, 1, arg, null, null, null);
+        }
+    }
+
+    public void error(String message, Throwable thrown) {
+        if (isEnabled(LogLevel.ERROR)) {
+            writer().offer(LogLevel.ERROR, message, 0, null, null, null, thrown);
+        }
+    }
+
+    public void error(String pattern, Object arg, Throwable thrown) {
+        if (isEnabled(LogLevel.ERROR)) {
+            writer().offer(LogLevel.ERROR, pattern, 1, arg, null, null, thrown);
+        }
+    }
+
+    public void error(String pattern, Object arg0, Object arg1, Throwable thrown) {
+        if (isEnabled(LogLevel.ERROR)) {
+            writer().offer(LogLevel.ERROR, pattern, 2, arg0, arg1, null, thrown);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package incuat.kg.svetoofor.log;
+
+import java.util.Properties;
+
+/**
+ * Настройки логирования.
+ * Читаются из server.properties / client.properties:
+ * log.file, log.level, log.max.size.mb, log.max.files, log.fsync.interval.ms, log.buffer.size
+ */
+public final class LogConfig {
+
+    private final String file;
+    private final LogLevel level;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final long fsyncIntervalMillis;
+    private final int bufferSize;
+    private final boolean console;
+
+    public LogConfig(String file, LogLevel level, long maxFileBytes, int maxFiles,
+                     long fsyncIntervalMillis, int bufferSize, boolean console) {
+        this.file = file;
+        this.level = level;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.bufferSize = bufferSize;
+        this.console = console;
+    }
+
+    /**
+     * Настройки по умолчанию: только консоль, уровень INFO
+     */
+    public static LogConfig consoleOnly() {
+        return new LogConfig(null, LogLevel.INFO, 0, 0, 1000, 16384, true);
+    }
+
+    /**
+     * Настройки из properties
+     *
+     * @param props       Конфигурация
+     * @param defaultFile Путь к файлу логов, если log.file не задан
+     */
+    public static LogConfig fromProperties(Properties props, String defaultFile) {
+        String file = props.getProperty("log.file", defaultFile);
+        if (file != null && (file.trim().isEmpty() || file.startsWith("${"))) {
+            file = defaultFile;
+        }
+        return new LogConfig(
+                file,
+                LogLevel.parse(props.getProperty("log.level"), LogLevel.INFO),
+                Long.parseLong(props.getProperty("log.max.size.mb", "50")) * 1024 * 1024,
+                Integer.parseInt(props.getProperty("log.max.files", "5")),
+                Long.parseLong(props.getProperty("log.fsync.interval.ms", "1000")),
+                Integer.parseInt(props.getProperty("log.buffer.size", "16384")),
+                Boolean.parseBoolean(props.getProperty("log.console", "true")));
+    }
+
+    /**
+     * @return Путь к файлу логов или null (только консоль)
+     */
+    public String getFile() {
+        return file;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * @return Размер файла для ротации (0 - без ротации)
+     */
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    /**
+     * @return Емкость кольцевого буфера (округляется вверх до степени двойки)
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isConsole() {
+        return console;
+    }
+}
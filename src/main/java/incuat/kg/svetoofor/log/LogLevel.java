@@ -0,0 +1,27 @@
+package incuat.kg.svetoofor.log;
+
+/**
+ * Уровни логирования
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF;
+
+    /**
+     * @param name Имя уровня (без учета регистра)
+     * @param defaultLevel Значение по умолчанию для пустого/неизвестного имени
+     */
+    public static LogLevel parse(String name, LogLevel defaultLevel) {
+        if (name == null || name.trim().isEmpty()) {
+            return defaultLevel;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultLevel;
+        }
+    }
+}
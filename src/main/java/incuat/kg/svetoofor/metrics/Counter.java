@@ -0,0 +1,27 @@
+package incuat.kg.svetoofor.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Монотонный счетчик. LongAdder раскладывает запись по ячейкам потоков,
+ * поэтому горячие пути (рассылка, подключения) не конкурируют за одну ячейку.
+ */
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,140 @@
+package incuat.kg.svetoofor.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей в наносекундах с логарифмическими корзинами
+ * (как в HdrHistogram): 4 корзины на каждую степень двойки, то есть
+ * относительная погрешность не больше 25% во всем диапазоне long.
+ *
+ * Запись - вычисление индекса по старшим битам и инкремент LongAdder,
+ * без блокировок и выделения памяти. Для Prometheus корзины сворачиваются
+ * в границы-степени двойки от ~1 мкс до ~69 с (набор границ не меняется
+ * между опросами).
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 2;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB;
+
+    // Границы экспорта: 2^10 нс (~1 мкс) .. 2^36 нс (~69 с)
+    static final int EXPORT_MIN_OCTAVE = 10;
+    static final int EXPORT_MAX_OCTAVE = 36;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos Длительность в наносекундах (отрицательная считается нулем)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[index(value)].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Длительность от отметки System.nanoTime() до текущего момента
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int index(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (octave - SUB_BITS)) & (SUB - 1));
+        return (octave - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /**
+     * @return Наибольшее значение, попадающее в корзину
+     */
+    static long upperBound(int index) {
+        if (index < SUB) {
+            return index;
+        }
+        int octave = index / SUB + SUB_BITS - 1;
+        int sub = index % SUB;
+        long upper = ((long) (SUB + sub + 1) << (octave - SUB_BITS)) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    /**
+     * Оценка перцентиля (верхняя граница корзины)
+     *
+     * @param percentile От 0 до 100
+     * @return Наносекунды; 0, если значений нет
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long c : snapshot) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Накопленные счетчики на границах экспорта 2^octave - 1 нс
+     * (EXPORT_MIN_OCTAVE..EXPORT_MAX_OCTAVE)
+     */
+    long[] cumulativeExport() {
+        long[] snapshot = snapshot();
+        long[] result = new long[EXPORT_MAX_OCTAVE - EXPORT_MIN_OCTAVE + 1];
+        long seen = 0;
+        int i = 0;
+        for (int octave = EXPORT_MIN_OCTAVE; octave <= EXPORT_MAX_OCTAVE; octave++) {
+            long bound = (1L << octave) - 1;
+            while (i < BUCKETS && upperBound(i) <= bound) {
+                seen += snapshot[i++];
+            }
+            result[octave - EXPORT_MIN_OCTAVE] = seen;
+        }
+        return result;
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets[i].sum();
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, p50=%.1fms, p99=%.1fms",
+                getCount(), percentile(50) / 1e6, percentile(99) / 1e6);
+    }
+}
@@ -0,0 +1,169 @@
+package incuat.kg.svetoofor.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Общий реестр метрик процесса.
+ *
+ * Использование: {@code private static final Counter opened = Metrics.counter("svetoofor_ws_opened_total", "...");}
+ * и {@code opened.increment()}. Метрика с метками: {@code Metrics.counter(name, help, "feed", "dba")}.
+ * Повторная регистрация того же имени и меток возвращает ту же метрику;
+ * датчик (gauge) при повторной регистрации заменяется.
+ *
+ * Запись не блокирует (LongAdder), чтение - только при выгрузке в текстовом
+ * формате Prometheus ({@link #writePrometheus(StringBuilder)}).
+ */
+public final class Metrics {
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        final String id;
+
+        Type(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class Family {
+        final Type type;
+        final String help;
+        // Метки в формате Prometheus (k="v",...) → метрика
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(Type type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    // Быстрый поиск уже созданных метрик с динамическими метками (коды ошибок)
+    private static final Map<String, Object> byKey = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param labels Пары имя, значение
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, Type.COUNTER, labels, Counter::new);
+    }
+
+    /**
+     * Гистограмма длительностей; выгружается в секундах
+     */
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) register(name, help, Type.HISTOGRAM, labels, Histogram::new);
+    }
+
+    /**
+     * Датчик, значение которого вычисляется при выгрузке
+     */
+    public static void gauge(String name, String help, LongSupplier value, String... labels) {
+        Family family = family(name, help, Type.GAUGE);
+        String key = labels(labels);
+        family.series.put(key, value);
+        byKey.put(name + '{' + key + '}', value);
+    }
+
+    private static Object register(String name, String help, Type type, String[] labels,
+                                   Supplier<Object> factory) {
+        String key = name + '{' + labels(labels) + '}';
+        Object existing = byKey.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        Family family = family(name, help, type);
+        Object metric = family.series.computeIfAbsent(labels(labels), k -> factory.get());
+        byKey.putIfAbsent(key, metric);
+        return metric;
+    }
+
+    private static Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type.id);
+        }
+        return family;
+    }
+
+    private static String labels(String[] pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(pairs[i]).append("=\"").append(escape(pairs[i + 1])).append('"');
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Выгрузка всех метрик в текстовом формате Prometheus 0.0.4
+     */
+    public static void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type.id).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                switch (family.type) {
+                    case COUNTER:
+                        sample(out, name, labels, ((Counter) metric).get());
+                        break;
+                    case GAUGE:
+                        sample(out, name, labels, ((LongSupplier) metric).getAsLong());
+                        break;
+                    default:
+                        writeHistogram(out, name, labels, (Histogram) metric);
+                }
+            }
+        }
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] cumulative = histogram.cumulativeExport();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < cumulative.length; i++) {
+            double le = ((1L << (Histogram.EXPORT_MIN_OCTAVE + i)) - 1) / 1e9;
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                    .append(cumulative[i]).append('\n');
+        }
+        // Корзины увеличиваются раньше счетчика - +Inf не должен быть меньше последней
+        long count = Math.max(histogram.getCount(), cumulative[cumulative.length - 1]);
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(count).append('\n');
+        out.append(name).append("_sum");
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(histogram.getSumNanos() / 1e9).append('\n');
+        sample(out, name + "_count", labels, count);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+}
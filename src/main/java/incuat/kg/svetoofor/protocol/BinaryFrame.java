@@ -0,0 +1,200 @@
+package incuat.kg.svetoofor.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Пакет протокола BINARY - двоичный аналог SyncFrame для WebSocket binary frames.
+ *
+ * Формат (big-endian):
+ * <pre>
+ *   type:u8 (1 - SNAPSHOT, 2 - DELTA) | epoch:i64 | seq:i64 | count:u8
+ *   count x [ opcode:u8 | lamp:u8 | duration:u16 | payloadLen:u16 | payload:UTF-8 ]
+ * </pre>
+ * opcode - номер команды (Command.getOpcode), lamp - индикатор (0xFF - нет),
+ * duration - длительность сигнала в секундах. Для неизвестной команды
+ * opcode = 0, а в payload передается исходная строка целиком.
+ */
+public final class BinaryFrame {
+
+    public static final byte TYPE_SNAPSHOT = 1;
+    public static final byte TYPE_DELTA = 2;
+
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 1;
+    private static final int ENTRY_OVERHEAD = 1 + 1 + 2 + 2;
+    private static final int NO_LAMP = 0xFF;
+    private static final int MAX_PAYLOAD = 0xFFFF;
+    private static final int MAX_ENTRIES = 0xFF;
+
+    /**
+     * Одна команда пакета
+     */
+    public static final class Entry {
+        private final Command command;
+        private final String payload;
+        private final int durationSeconds;
+
+        Entry(Command command, String payload, int durationSeconds) {
+            this.command = command;
+            this.payload = payload;
+            this.durationSeconds = durationSeconds;
+        }
+
+        /**
+         * @return Команда или null, если opcode неизвестен (тогда payload - исходная строка)
+         */
+        public Command getCommand() {
+            return command;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public int getDurationSeconds() {
+            return durationSeconds;
+        }
+
+        /**
+         * @return Команда в строковом виде "COMMAND|payload"
+         */
+        public String toMessage() {
+            if (command == null) {
+                return payload;
+            }
+            return payload == null ? command.name() : command.name() + Command.SEPARATOR + payload;
+        }
+    }
+
+    private final boolean snapshot;
+    private final long epoch;
+    private final long seq;
+    private final List<Entry> entries;
+
+    private BinaryFrame(boolean snapshot, long epoch, long seq, List<Entry> entries) {
+        this.snapshot = snapshot;
+        this.epoch = epoch;
+        this.seq = seq;
+        this.entries = entries;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Сериализация пакета
+     *
+     * @param type     TYPE_SNAPSHOT или TYPE_DELTA
+     * @param messages Команды в строковом виде "COMMAND|payload" (не больше 255)
+     */
+    public static byte[] encode(byte type, long epoch, long seq, List<String> messages) {
+        int count = Math.min(messages.size(), MAX_ENTRIES);
+        byte[][] payloads = new byte[count][];
+        Command[] commands = new Command[count];
+        int size = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            String message = messages.get(i);
+            Command command = Command.parse(message);
+            String payload = command == null ? message : Command.payload(message);
+            byte[] bytes = payload == null ? new byte[0] : payload.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_PAYLOAD) {
+                bytes = truncate(payload, MAX_PAYLOAD);
+            }
+            commands[i] = command;
+            payloads[i] = bytes;
+            size += ENTRY_OVERHEAD + bytes.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(type);
+        buffer.putLong(epoch);
+        buffer.putLong(seq);
+        buffer.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            Command command = commands[i];
+            Lamp lamp = command != null ? command.getLamp() : null;
+            buffer.put((byte) (command != null ? command.getOpcode() : 0));
+            buffer.put((byte) (lamp != null ? lamp.ordinal() : NO_LAMP));
+            buffer.putShort((short) (command != null ? command.getDurationSeconds() : 0));
+            buffer.putShort((short) payloads[i].length);
+            buffer.put(payloads[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Обрезка строки до maxBytes байт UTF-8 без разрыва символа
+     */
+    private static byte[] truncate(String value, int maxBytes) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int end = maxBytes;
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        byte[] result = new byte[end];
+        System.arraycopy(bytes, 0, result, 0, end);
+        return result;
+    }
+
+    /**
+     * Разбор пакета
+     *
+     * @return Пакет или null, если данные не являются пакетом BINARY
+     */
+    public static BinaryFrame decode(ByteBuffer data) {
+        ByteBuffer buffer = data.duplicate();
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        byte type = buffer.get();
+        if (type != TYPE_SNAPSHOT && type != TYPE_DELTA) {
+            return null;
+        }
+        long epoch = buffer.getLong();
+        long seq = buffer.getLong();
+        int count = buffer.get() & 0xFF;
+
+        List<Entry> entries = count == 0 ? Collections.emptyList() : new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < ENTRY_OVERHEAD) {
+                return null;
+            }
+            int opcode = buffer.get() & 0xFF;
+            buffer.get(); // индикатор следует из команды, поле - для получателей без таблицы команд
+            int duration = buffer.getShort() & 0xFFFF;
+            int length = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < length) {
+                return null;
+            }
+            String payload = null;
+            if (length > 0) {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                payload = new String(bytes, StandardCharsets.UTF_8);
+            }
+            Command command = Command.fromOpcode(opcode);
+            // Команда новее клиента или пустая запись - пропускаем
+            if (command == null && (opcode != 0 || payload == null)) {
+                continue;
+            }
+            entries.add(new Entry(command, payload, duration));
+        }
+        return new BinaryFrame(type == TYPE_SNAPSHOT, epoch, seq, entries);
+    }
+}
@@ -0,0 +1,88 @@
+package incuat.kg.svetoofor.protocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Команды светофора: "RED_BLINK|<название инцидента>", "QUEUE_GREEN" и т.д.
+ * Первая часть сообщения до '|' - команда, остальное - необязательная нагрузка.
+ */
+public enum Command {
+    RED_BLINK(Lamp.INCIDENT, 120),
+    GREEN_BLINK_INCIDENT(Lamp.INCIDENT, 100),
+    YELLOW_BLINK(Lamp.ALERT, 120),
+    GREEN_BLINK_ALERT(Lamp.ALERT, 60),
+    QUEUE_RED(Lamp.QUEUE, 0),
+    QUEUE_GREEN(Lamp.QUEUE, 0),
+    // Решение задачи неизвестного типа - состояние индикаторов не меняет
+    GREEN_BLINK(null, 0);
+
+    public static final char SEPARATOR = '|';
+
+    private static final Map<String, Command> BY_NAME = new HashMap<>();
+
+    static {
+        for (Command command : values()) {
+            BY_NAME.put(command.name(), command);
+        }
+    }
+
+    private static final Command[] VALUES = values();
+
+    private final Lamp lamp;
+    private final int durationSeconds;
+
+    Command(Lamp lamp, int durationSeconds) {
+        this.lamp = lamp;
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * @return Индикатор, состояние которого задает команда, или null
+     */
+    public Lamp getLamp() {
+        return lamp;
+    }
+
+    /**
+     * @return Длительность мигания в секундах; 0 - сигнал горит постоянно
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * @return Код команды в протоколе BINARY (0 зарезервирован для неизвестных команд).
+     * Новые команды добавляются только в конец перечисления.
+     */
+    public int getOpcode() {
+        return ordinal() + 1;
+    }
+
+    public static Command fromOpcode(int opcode) {
+        return opcode >= 1 && opcode <= VALUES.length ? VALUES[opcode - 1] : null;
+    }
+
+    /**
+     * @param message Сообщение вида "COMMAND" или "COMMAND|payload"
+     * @return Нагрузка после '|' или null
+     */
+    public static String payload(String message) {
+        int sep = message.indexOf(SEPARATOR);
+        return sep == -1 ? null : message.substring(sep + 1);
+    }
+
+    /**
+     * Определяет команду по тексту сообщения
+     *
+     * @param message Сообщение вида "COMMAND" или "COMMAND|payload"
+     * @return Команда или null, если она неизвестна
+     */
+    public static Command parse(String message) {
+        if (message == null) {
+            return null;
+        }
+        int sep = message.indexOf(SEPARATOR);
+        return BY_NAME.get(sep == -1 ? message : message.substring(0, sep));
+    }
+}
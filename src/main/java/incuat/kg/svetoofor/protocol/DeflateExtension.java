@@ -0,0 +1,115 @@
+package incuat.kg.svetoofor.protocol;
+
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие permessage-deflate (RFC 7692) для сервера и клиента.
+ *
+ * Отличия от PerMessageDeflateExtension:
+ * - настройки (порог, уровень) сохраняются в копиях расширения для каждого соединения;
+ * - буферы zlib создаются при первом сжатом сообщении, а не на каждое
+ *   соединение (Draft копирует все известные расширения при подключении);
+ * - Deflater сбрасывается после сообщения вместо создания нового;
+ * - кадр рассылки, уже сжатый для одного соединения (RSV1), остальным
+ *   отправляется как есть - сжатие один раз на рассылку, а не на клиента.
+ *   Это возможно, потому что словарь между сообщениями не сохраняется
+ *   (server_no_context_takeover, его и так запрашивает клиент Java-WebSocket).
+ *
+ * Сообщения короче порога (команды вроде "QUEUE_GREEN") не сжимаются.
+ */
+public class DeflateExtension extends PerMessageDeflateExtension {
+
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    private final int level;
+
+    /**
+     * @param threshold Минимальный размер сообщения для сжатия, байт
+     * @param level     Уровень сжатия 1..9 (-1 - по умолчанию zlib)
+     */
+    public DeflateExtension(int threshold, int level) {
+        this.level = level;
+        setThreshold(threshold);
+        // Сброс словаря делаем сами (reset), без пересоздания Deflater
+        setServerNoContextTakeover(false);
+        getDeflater().end();
+        getInflater().end();
+        setDeflater(null);
+        setInflater(null);
+    }
+
+    /**
+     * Настройка из properties: ws.deflate.enabled, ws.deflate.threshold, ws.deflate.level
+     *
+     * @param enabledByDefault Значение ws.deflate.enabled, если ключа нет
+     * @return Расширение или null, если сжатие выключено
+     */
+    public static DeflateExtension fromProperties(Properties props, boolean enabledByDefault) {
+        if (!Boolean.parseBoolean(props.getProperty("ws.deflate.enabled", String.valueOf(enabledByDefault)))) {
+            return null;
+        }
+        return new DeflateExtension(
+                Integer.parseInt(props.getProperty("ws.deflate.threshold", String.valueOf(DEFAULT_THRESHOLD))),
+                Integer.parseInt(props.getProperty("ws.deflate.level", String.valueOf(Deflater.DEFAULT_COMPRESSION))));
+    }
+
+    /**
+     * @return Draft RFC 6455 с этим расширением (клиенты без сжатия тоже принимаются)
+     */
+    public Draft draft() {
+        return new Draft_6455(Collections.singletonList(this));
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public void encodeFrame(Framedata frame) {
+        if (!(frame instanceof DataFrame) || frame.getPayloadData().array().length < getThreshold()) {
+            return;
+        }
+        if (frame.isRSV1() && frame.getOpcode() != Opcode.CONTINUOUS) {
+            // Кадр рассылки уже сжат для другого соединения
+            return;
+        }
+        if (getDeflater() == null) {
+            setDeflater(new Deflater(level, true));
+        }
+        super.encodeFrame(frame);
+        if (frame.isFin()) {
+            getDeflater().reset();
+        }
+    }
+
+    @Override
+    public void decodeFrame(Framedata frame) throws InvalidDataException {
+        if (getInflater() == null && frame instanceof DataFrame
+                && (frame.isRSV1() || frame.getOpcode() == Opcode.CONTINUOUS)) {
+            setInflater(new Inflater(true));
+        }
+        super.decodeFrame(frame);
+    }
+
+    @Override
+    public IExtension copyInstance() {
+        return new DeflateExtension(getThreshold(), level);
+    }
+
+    @Override
+    public String toString() {
+        return "DeflateExtension(threshold=" + getThreshold() + ", level=" + level + ")";
+    }
+}
@@ -0,0 +1,19 @@
+package incuat.kg.svetoofor.protocol;
+
+/**
+ * Параметры рукопожатия клиента: query-параметр URI и HTTP-заголовок
+ * с тем же смыслом (заголовок имеет приоритет). Протокол - WireProtocol.PARAM,
+ * точка возобновления - SyncFrame.EPOCH_PARAM/SINCE_PARAM.
+ */
+public final class Handshake {
+
+    /** Версия клиента */
+    public static final String VERSION_PARAM = "version";
+    public static final String VERSION_HEADER = "X-Svetofor-Version";
+    /** Топики (группы) подписки через запятую */
+    public static final String GROUPS_PARAM = "groups";
+    public static final String GROUPS_HEADER = "X-Svetofor-Groups";
+
+    private Handshake() {
+    }
+}
@@ -0,0 +1,23 @@
+package incuat.kg.svetoofor.protocol;
+
+/**
+ * Индикаторы светофора
+ */
+public enum Lamp {
+    /** Красный - инциденты */
+    INCIDENT,
+    /** Желтый - алерты */
+    ALERT,
+    /** Зеленый - очередь мониторинга */
+    QUEUE;
+
+    private static final Lamp[] VALUES = values();
+
+    public static Lamp of(int index) {
+        return index >= 0 && index < VALUES.length ? VALUES[index] : null;
+    }
+
+    public static int count() {
+        return VALUES.length;
+    }
+}
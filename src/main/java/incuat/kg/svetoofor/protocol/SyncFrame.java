@@ -0,0 +1,112 @@
+package incuat.kg.svetoofor.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пакет протокола TEXT_V2.
+ *
+ * Формат: первая строка - заголовок "SNAPSHOT|epoch|seq" или "DELTA|epoch|seq",
+ * дальше по одной команде на строку. epoch меняется при каждом перезапуске
+ * сервера, seq монотонно растет в пределах epoch. Клиент переподключается с
+ * ?epoch=E&since=N и получает только изменения после seq N.
+ */
+public final class SyncFrame {
+
+    public static final String SNAPSHOT = "SNAPSHOT";
+    public static final String DELTA = "DELTA";
+
+    public static final String EPOCH_PARAM = "epoch";
+    public static final String SINCE_PARAM = "since";
+
+    private final boolean snapshot;
+    private final long epoch;
+    private final long seq;
+    private final List<String> commands;
+
+    private SyncFrame(boolean snapshot, long epoch, long seq, List<String> commands) {
+        this.snapshot = snapshot;
+        this.epoch = epoch;
+        this.seq = seq;
+        this.commands = commands;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Сериализация пакета
+     *
+     * @param type     SNAPSHOT или DELTA
+     * @param commands Команды; переводы строк внутри команды заменяются пробелами
+     */
+    public static String encode(String type, long epoch, long seq, Iterable<String> commands) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(type).append(Command.SEPARATOR).append(epoch).append(Command.SEPARATOR).append(seq);
+        for (String command : commands) {
+            sb.append('\n').append(singleLine(command));
+        }
+        return sb.toString();
+    }
+
+    private static String singleLine(String command) {
+        if (command.indexOf('\n') == -1 && command.indexOf('\r') == -1) {
+            return command;
+        }
+        return command.replace('\r', ' ').replace('\n', ' ');
+    }
+
+    public static boolean isSyncFrame(String message) {
+        return message.startsWith(SNAPSHOT + Command.SEPARATOR) || message.startsWith(DELTA + Command.SEPARATOR);
+    }
+
+    /**
+     * Разбор пакета
+     *
+     * @return Пакет или null, если сообщение не является пакетом TEXT_V2
+     */
+    public static SyncFrame decode(String message) {
+        if (message == null || !isSyncFrame(message)) {
+            return null;
+        }
+        int lineEnd = message.indexOf('\n');
+        String header = lineEnd == -1 ? message : message.substring(0, lineEnd);
+        String[] parts = header.split("\\|");
+        if (parts.length != 3) {
+            return null;
+        }
+        long epoch;
+        long seq;
+        try {
+            epoch = Long.parseLong(parts[1]);
+            seq = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        List<String> commands = new ArrayList<>();
+        int start = lineEnd;
+        while (start != -1) {
+            int next = message.indexOf('\n', start + 1);
+            String line = next == -1 ? message.substring(start + 1) : message.substring(start + 1, next);
+            if (!line.isEmpty()) {
+                commands.add(line);
+            }
+            start = next;
+        }
+        return new SyncFrame(SNAPSHOT.equals(parts[0]), epoch, seq, commands);
+    }
+}
@@ -0,0 +1,86 @@
+package incuat.kg.svetoofor.protocol;
+
+/**
+ * Отчеты клиента о задержке доставки сигнала (клиент → сервер).
+ *
+ * "ACK|epoch|seq" - клиент получил пакет seq (отправляется сразу при приеме);
+ * "PAINT|epoch|seq|micros" - изменение индикатора отрисовано через micros
+ * микросекунд после приема пакета (интервал по часам клиента, поэтому
+ * расхождение часов клиента и сервера на результат не влияет).
+ *
+ * Клиент отправляет отчеты, только если сервер объявил поддержку заголовком
+ * HEADER в ответе на рукопожатие: старый сервер разослал бы их как команды.
+ */
+public final class TraceReport {
+
+    public static final String HEADER = "X-Svetofor-Trace";
+
+    public static final String ACK = "ACK";
+    public static final String PAINT = "PAINT";
+
+    private final boolean paint;
+    private final long epoch;
+    private final long seq;
+    private final long micros;
+
+    private TraceReport(boolean paint, long epoch, long seq, long micros) {
+        this.paint = paint;
+        this.epoch = epoch;
+        this.seq = seq;
+        this.micros = micros;
+    }
+
+    public boolean isPaint() {
+        return paint;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * @return Микросекунды от приема пакета до отрисовки (только PAINT)
+     */
+    public long getMicros() {
+        return micros;
+    }
+
+    public static String ack(long epoch, long seq) {
+        return ACK + Command.SEPARATOR + epoch + Command.SEPARATOR + seq;
+    }
+
+    public static String paint(long epoch, long seq, long micros) {
+        return PAINT + Command.SEPARATOR + epoch + Command.SEPARATOR + seq + Command.SEPARATOR + micros;
+    }
+
+    /**
+     * @return Отчет или null, если сообщение не является отчетом
+     */
+    public static TraceReport decode(String message) {
+        if (message == null) {
+            return null;
+        }
+        boolean paint;
+        if (message.startsWith(ACK + Command.SEPARATOR)) {
+            paint = false;
+        } else if (message.startsWith(PAINT + Command.SEPARATOR)) {
+            paint = true;
+        } else {
+            return null;
+        }
+        String[] parts = message.split("\\|");
+        if (parts.length != (paint ? 4 : 3)) {
+            return null;
+        }
+        try {
+            return new TraceReport(paint, Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    paint ? Long.parseLong(parts[3]) : 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
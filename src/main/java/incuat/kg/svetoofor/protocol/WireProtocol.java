@@ -0,0 +1,38 @@
+package incuat.kg.svetoofor.protocol;
+
+/**
+ * Протокол обмена клиента с сервером, согласуется при подключении
+ * параметром ?proto=... или заголовком X-Svetofor-Protocol.
+ */
+public enum WireProtocol {
+    /** Старые клиенты: по одной строковой команде на кадр, без номеров */
+    TEXT_LEGACY("1"),
+    /** Пакеты "SNAPSHOT|epoch|seq" / "DELTA|epoch|seq" с командами построчно */
+    TEXT_V2("2"),
+    /** Те же пакеты в двоичном виде (BinaryFrame) в WebSocket binary frames */
+    BINARY("3");
+
+    public static final String PARAM = "proto";
+    public static final String HEADER = "X-Svetofor-Protocol";
+
+    private final String id;
+
+    WireProtocol(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public static WireProtocol fromId(String id) {
+        if (id != null) {
+            for (WireProtocol protocol : values()) {
+                if (protocol.id.equalsIgnoreCase(id.trim())) {
+                    return protocol;
+                }
+            }
+        }
+        return TEXT_LEGACY;
+    }
+}
@@ -0,0 +1,164 @@
+package incuat.kg.svetoofor.server;
+
+import incuat.kg.svetoofor.protocol.WireProtocol;
+import org.java_websocket.WebSocket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Метаданные одного подключенного клиента.
+ * Хранится в ConnectionRegistry и в attachment самого WebSocket,
+ * поэтому поиск сессии по соединению не требует обращения к общей карте.
+ */
+public class ClientSession {
+
+    private final long id;
+    private final WebSocket connection;
+    private final long connectedAt;
+    private final String clientVersion;
+    private final WireProtocol protocol;
+    private final Set<String> groups;
+
+    // Время последнего сигнала жизни от клиента (сообщение или pong)
+    private volatile long lastAckAt;
+    // Очередь отправки переполнена: seq, после которого клиент пропускал рассылки (-1 - в рассылке)
+    private final AtomicLong behindSince = new AtomicLong(-1);
+    private volatile long behindAt;
+    // Порядок кадров в очереди клиента (под блокировкой сессии): последний
+    // поставленный seq и seq состояния каждого топика, которое клиент уже получит
+    private long lastQueuedSeq = -1;
+    private final Map<String, Long> queuedTopicSeqs = new HashMap<>();
+
+    public ClientSession(long id, WebSocket connection, long connectedAt, String clientVersion,
+                         WireProtocol protocol, Set<String> groups) {
+        this.id = id;
+        this.connection = connection;
+        this.connectedAt = connectedAt;
+        this.clientVersion = clientVersion;
+        this.protocol = protocol;
+        this.groups = Set.copyOf(groups);
+        this.lastAckAt = connectedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public WebSocket getConnection() {
+        return connection;
+    }
+
+    public long getConnectedAt() {
+        return connectedAt;
+    }
+
+    public long getLastAckAt() {
+        return lastAckAt;
+    }
+
+    public void markAck(long timestamp) {
+        this.lastAckAt = timestamp;
+    }
+
+    /**
+     * @return Клиент исключен из рассылки из-за переполненной очереди отправки
+     */
+    public boolean isBehind() {
+        return behindSince.get() >= 0;
+    }
+
+    /**
+     * @return Последний seq, поставленный в очередь до отставания, или -1
+     */
+    public long getBehindSince() {
+        return behindSince.get();
+    }
+
+    /**
+     * @return Время, с которого клиент отстает (мс)
+     */
+    public long getBehindAt() {
+        return behindAt;
+    }
+
+    /**
+     * Исключение из рассылки
+     *
+     * @param since Последний seq, который клиент получит из очереди
+     * @return true, если клиент только что начал отставать
+     */
+    public boolean markBehind(long since, long timestamp) {
+        if (!behindSince.compareAndSet(-1, Math.max(0, since))) {
+            return false;
+        }
+        behindAt = timestamp;
+        return true;
+    }
+
+    /**
+     * Возврат в рассылку (после отправки досинхронизации)
+     */
+    public void clearBehind() {
+        behindSince.set(-1);
+    }
+
+    /**
+     * Изменения топика до seq включительно уже стоят в очереди клиента
+     * (снимком, досинхронизацией или самой рассылкой). Вызывается под блокировкой сессии.
+     */
+    public boolean isQueued(String topic, long seq) {
+        Long queued = queuedTopicSeqs.get(topic);
+        return queued != null && seq <= queued;
+    }
+
+    /**
+     * Кадр с этим seq встанет за кадром с не меньшим номером (другого топика
+     * или снимком) - клиент отбросит его как устаревший. Вызывается под блокировкой сессии.
+     */
+    public boolean isOutOfOrder(long seq) {
+        return seq <= lastQueuedSeq;
+    }
+
+    /**
+     * Кадр поставлен в очередь. Вызывается под блокировкой сессии.
+     *
+     * @param topicSeq Seq состояния топика, которое передал кадр
+     * @param frameSeq Номер в заголовке кадра (больше topicSeq, если кадр перенумерован)
+     */
+    public void markQueued(String topic, long topicSeq, long frameSeq) {
+        queuedTopicSeqs.merge(topic, topicSeq, Math::max);
+        lastQueuedSeq = Math.max(lastQueuedSeq, frameSeq);
+    }
+
+    /**
+     * @return Версия клиента из рукопожатия или "unknown" для старых клиентов
+     */
+    public String getClientVersion() {
+        return clientVersion;
+    }
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return Топики (группы), на которые подписан клиент; без подписки - DEFAULT_TOPIC
+     */
+    public Set<String> getGroups() {
+        return groups;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientSession{" +
+                "id=" + id +
+                ", remote=" + connection.getRemoteSocketAddress() +
+                ", version='" + clientVersion + '\'' +
+                ", protocol=" + protocol +
+                ", groups=" + groups +
+                '}';
+    }
+}
@@ -0,0 +1,304 @@
+package incuat.kg.svetoofor.server;
+
+import incuat.kg.svetoofor.log.Log;
+import incuat.kg.svetoofor.protocol.Handshake;
+import incuat.kg.svetoofor.protocol.WireProtocol;
+import org.java_websocket.WebSocket;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Реестр подключенных клиентов без глобальной блокировки.
+ *
+ * Сессии лежат в ConcurrentHashMap по id соединения: onOpen/onClose меняют
+ * только свой сегмент карты, а рассылка обходит карту слабо-согласованным
+ * итератором и никогда не блокирует подключение/отключение других клиентов
+ * (важно при массовом переподключении после сбоя сети в офисе).
+ *
+ * Подписки на топики (доски команд: сеть, DBA, сервис-деск) клиент передает
+ * при подключении (?groups=network,dba или X-Svetofor-Groups); без параметра
+ * клиент подписан на DEFAULT_TOPIC. Индекс топик → протокол → сессии
+ * поддерживается при подключении/отключении, так что рассылка в топик
+ * обходит только его подписчиков; индекс топика без подписчиков удаляется.
+ * Топики ограничены списком разрешенных (ws.topics.allowed) или, без списка,
+ * числом (ws.topics.max): иначе любой ?groups= создавал бы индекс навсегда.
+ * Запрещенные топики отбрасываются, клиент без разрешенных - в DEFAULT_TOPIC.
+ */
+public class ConnectionRegistry {
+
+    private static final Log log = Log.get(ConnectionRegistry.class);
+
+    /**
+     * Топик клиентов без подписки и рассылок без топика
+     */
+    public static final String DEFAULT_TOPIC = "default";
+
+    public static final int DEFAULT_MAX_TOPICS = 64;
+
+    private final ConcurrentHashMap<Long, ClientSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    // Индекс по протоколу: рассылка кодирует кадр один раз на протокол
+    private final Map<WireProtocol, ConcurrentHashMap<Long, ClientSession>> byProtocol = new EnumMap<>(WireProtocol.class);
+    private final Map<WireProtocol, Collection<WebSocket>> protocolViews = new EnumMap<>(WireProtocol.class);
+
+    private final Collection<WebSocket> connectionsView = connectionsOf(sessions);
+
+    // Индекс по топику; индекс создается и удаляется под compute своего ключа,
+    // поэтому подключение не попадет в уже удаленный индекс
+    private final ConcurrentHashMap<String, TopicIndex> byTopic = new ConcurrentHashMap<>();
+
+    // Разрешенные топики (пусто - любые, но не больше maxTopics одновременно)
+    private volatile Set<String> allowedTopics = Set.of();
+    private volatile int maxTopics = DEFAULT_MAX_TOPICS;
+
+    /**
+     * Подписчики одного топика по протоколам
+     */
+    private static final class TopicIndex {
+        final Map<WireProtocol, ConcurrentHashMap<Long, ClientSession>> byProtocol = new EnumMap<>(WireProtocol.class);
+        final Map<WireProtocol, Collection<WebSocket>> views = new EnumMap<>(WireProtocol.class);
+
+        TopicIndex() {
+            for (WireProtocol protocol : WireProtocol.values()) {
+                ConcurrentHashMap<Long, ClientSession> index = new ConcurrentHashMap<>();
+                byProtocol.put(protocol, index);
+                views.put(protocol, connectionsOf(index));
+            }
+        }
+
+        boolean isEmpty() {
+            for (ConcurrentHashMap<Long, ClientSession> index : byProtocol.values()) {
+                if (!index.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public ConnectionRegistry() {
+        for (WireProtocol protocol : WireProtocol.values()) {
+            ConcurrentHashMap<Long, ClientSession> index = new ConcurrentHashMap<>();
+            byProtocol.put(protocol, index);
+            protocolViews.put(protocol, connectionsOf(index));
+        }
+        byTopic.put(DEFAULT_TOPIC, new TopicIndex());
+    }
+
+    // Представление соединений без копирования карты на стороне реестра.
+    // WebSocketServer.broadcast все равно копирует коллекцию в список
+    // (doBroadcast) - одна копия на протокол и рассылку
+    private static Collection<WebSocket> connectionsOf(ConcurrentHashMap<Long, ClientSession> index) {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<WebSocket> iterator() {
+                Iterator<ClientSession> it = index.values().iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public WebSocket next() {
+                        return it.next().getConnection();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return index.size();
+            }
+        };
+    }
+
+    /**
+     * Регистрирует новое соединение и привязывает к нему сессию
+     *
+     * @param conn   Соединение
+     * @param params Параметры рукопожатия клиента (версия, протокол, группы)
+     * @return Созданная сессия
+     */
+    public ClientSession register(WebSocket conn, HandshakeParams params) {
+
+        String version = params.get(Handshake.VERSION_PARAM, Handshake.VERSION_HEADER);
+        ClientSession session = new ClientSession(
+                nextId.incrementAndGet(),
+                conn,
+                System.currentTimeMillis(),
+                version != null ? version : "unknown",
+                WireProtocol.fromId(params.get(WireProtocol.PARAM, WireProtocol.HEADER)),
+                acceptedGroups(parseGroups(params.get(Handshake.GROUPS_PARAM, Handshake.GROUPS_HEADER))));
+
+        conn.setAttachment(session);
+        sessions.put(session.getId(), session);
+        byProtocol.get(session.getProtocol()).put(session.getId(), session);
+        for (String topic : session.getGroups()) {
+            byTopic.compute(topic, (t, index) -> {
+                if (index == null) {
+                    index = new TopicIndex();
+                }
+                index.byProtocol.get(session.getProtocol()).put(session.getId(), session);
+                return index;
+            });
+        }
+        return session;
+    }
+
+    /**
+     * Удаляет соединение из реестра
+     *
+     * @return Сессия соединения или null, если оно не было зарегистрировано
+     */
+    public ClientSession unregister(WebSocket conn) {
+        ClientSession session = get(conn);
+        if (session != null) {
+            sessions.remove(session.getId());
+            byProtocol.get(session.getProtocol()).remove(session.getId());
+            for (String topic : session.getGroups()) {
+                byTopic.computeIfPresent(topic, (t, index) -> {
+                    index.byProtocol.get(session.getProtocol()).remove(session.getId());
+                    return index.isEmpty() && !DEFAULT_TOPIC.equals(t) ? null : index;
+                });
+            }
+        }
+        return session;
+    }
+
+    public ClientSession get(WebSocket conn) {
+        return conn.getAttachment();
+    }
+
+    public Collection<ClientSession> sessions() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    /**
+     * @return Живое представление соединений (итерация не блокирует реестр)
+     */
+    public Collection<WebSocket> connections() {
+        return connectionsView;
+    }
+
+    /**
+     * @return Живое представление соединений, согласовавших указанный протокол
+     */
+    public Collection<WebSocket> connections(WireProtocol protocol) {
+        return protocolViews.get(protocol);
+    }
+
+    /**
+     * @return Живое представление подписчиков топика с указанным протоколом
+     */
+    public Collection<WebSocket> connections(String topic, WireProtocol protocol) {
+        TopicIndex index = byTopic.get(topic);
+        return index != null ? index.views.get(protocol) : Collections.emptyList();
+    }
+
+    /**
+     * @return Топики, у которых сейчас есть подписчики (и DEFAULT_TOPIC)
+     */
+    public Set<String> topics() {
+        return Collections.unmodifiableSet(byTopic.keySet());
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @param topics Разрешенные топики; пустой набор - любые (в пределах maxTopics)
+     */
+    public void setAllowedTopics(Set<String> topics) {
+        Set<String> normalized = new HashSet<>();
+        for (String topic : topics) {
+            String name = normalizeTopic(topic);
+            if (name != null) {
+                normalized.add(name);
+            }
+        }
+        this.allowedTopics = Set.copyOf(normalized);
+    }
+
+    /**
+     * @param maxTopics Предел одновременно существующих топиков без списка разрешенных
+     */
+    public void setMaxTopics(int maxTopics) {
+        this.maxTopics = maxTopics;
+    }
+
+    /**
+     * Топики подписки, прошедшие список разрешенных и предел числа топиков.
+     * Предел проверяется без блокировки и может быть превышен на число
+     * одновременных подключений - для защиты от роста этого достаточно.
+     *
+     * @return Разрешенные топики или DEFAULT_TOPIC, если не осталось ни одного
+     */
+    private Set<String> acceptedGroups(Set<String> requested) {
+        Set<String> allowed = allowedTopics;
+        Set<String> accepted = new HashSet<>();
+        Set<String> rejected = null;
+        int created = 0;
+        for (String topic : requested) {
+            boolean ok;
+            if (DEFAULT_TOPIC.equals(topic)) {
+                ok = true;
+            } else if (!allowed.isEmpty()) {
+                ok = allowed.contains(topic);
+            } else if (byTopic.containsKey(topic)) {
+                ok = true;
+            } else {
+                ok = byTopic.size() + created < maxTopics;
+                if (ok) {
+                    created++;
+                }
+            }
+            if (ok) {
+                accepted.add(topic);
+            } else {
+                if (rejected == null) {
+                    rejected = new HashSet<>();
+                }
+                rejected.add(topic);
+            }
+        }
+        if (rejected != null) {
+            log.warn("Topics not allowed, ignored: {}", rejected);
+        }
+        if (accepted.isEmpty()) {
+            accepted.add(DEFAULT_TOPIC);
+        }
+        return accepted;
+    }
+
+    private static Set<String> parseGroups(String raw) {
+        Set<String> groups = new HashSet<>();
+        if (raw != null) {
+            for (String group : raw.split(",")) {
+                String trimmed = normalizeTopic(group);
+                if (trimmed != null) {
+                    groups.add(trimmed);
+                }
+            }
+        }
+        if (groups.isEmpty()) {
+            groups.add(DEFAULT_TOPIC);
+        }
+        return groups;
+    }
+
+    /**
+     * @return Имя топика в нижнем регистре или null для пустого
+     */
+    public static String normalizeTopic(String topic) {
+        if (topic == null) {
+            return null;
+        }
+        String trimmed = topic.trim().toLowerCase(Locale.ROOT);
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
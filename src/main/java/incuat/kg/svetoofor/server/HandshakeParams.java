@@ -0,0 +1,71 @@
+package incuat.kg.svetoofor.server;
+
+import org.java_websocket.handshake.ClientHandshake;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Параметры, которые клиент передает при подключении:
+ * query-параметры URI (ws://host:port/?version=1.2&groups=dba) или HTTP-заголовки
+ * (X-Svetofor-Version, X-Svetofor-Groups). Заголовок имеет приоритет.
+ * Параметр с некорректным %-кодированием пропускается, как не переданный.
+ */
+public final class HandshakeParams {
+
+    private final ClientHandshake handshake;
+    private final Map<String, String> query;
+
+    private HandshakeParams(ClientHandshake handshake, Map<String, String> query) {
+        this.handshake = handshake;
+        this.query = query;
+    }
+
+    public static HandshakeParams of(ClientHandshake handshake) {
+        return new HandshakeParams(handshake, parseQuery(handshake.getResourceDescriptor()));
+    }
+
+    /**
+     * Значение параметра из заголовка или query-строки
+     *
+     * @param queryName  Имя query-параметра
+     * @param headerName Имя HTTP-заголовка
+     * @return Значение или null, если параметр не передан
+     */
+    public String get(String queryName, String headerName) {
+        if (headerName != null && handshake.hasFieldValue(headerName)) {
+            String value = handshake.getFieldValue(headerName).trim();
+            if (!value.isEmpty()) {
+                return value;
+            }
+        }
+        String value = query.get(queryName);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static Map<String, String> parseQuery(String resourceDescriptor) {
+        if (resourceDescriptor == null) {
+            return Collections.emptyMap();
+        }
+        int q = resourceDescriptor.indexOf('?');
+        if (q == -1 || q == resourceDescriptor.length() - 1) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> params = new HashMap<>();
+        for (String pair : resourceDescriptor.substring(q + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq == -1 ? pair : pair.substring(0, eq);
+            String value = eq == -1 ? "" : pair.substring(eq + 1);
+            try {
+                params.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                // ?groups=%zz: без параметра клиент все равно получит сессию и снимок
+            }
+        }
+        return params;
+    }
+}
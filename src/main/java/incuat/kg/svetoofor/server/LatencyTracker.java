@@ -0,0 +1,119 @@
+package incuat.kg.svetoofor.server;
+
+import incuat.kg.svetoofor.metrics.Histogram;
+import incuat.kg.svetoofor.metrics.Metrics;
+import incuat.kg.svetoofor.protocol.TraceReport;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Задержка сигнала по этапам: от события в JIRA до отрисовки индикатора.
+ *
+ * <pre>
+ *   poll_lag - событие в JIRA → начало опроса, который его нашел (или прием вебхука)
+ *   jira     - начало опроса → обнаружение задачи (ответ JIRA, разбор страниц)
+ *   fanout   - обнаружение → пакет поставлен в очереди всех подписчиков
+ *   network  - половина интервала рассылка → ACK клиента (часы сервера)
+ *   ui       - прием пакета клиентом → отрисовка (часы клиента, из PAINT)
+ * </pre>
+ *
+ * Отметки рассылки лежат в кольцевом буфере по seq (последние CAPACITY рассылок),
+ * поэтому отчеты клиентов обрабатываются без блокировок и без роста памяти.
+ * end_to_end - событие в JIRA → приход PAINT на сервер: оценка сверху
+ * (включает обратный путь отчета).
+ */
+public class LatencyTracker {
+
+    private static final int CAPACITY = 4096;
+    private static final String STAGE_METRIC = "svetoofor_signal_stage_seconds";
+    private static final String STAGE_HELP = "Signal latency by stage: JIRA event to lamp repaint";
+
+    private static final Histogram pollLag = stage("poll_lag");
+    private static final Histogram jira = stage("jira");
+    private static final Histogram fanOut = stage("fanout");
+    private static final Histogram network = stage("network");
+    private static final Histogram ui = stage("ui");
+    private static final Histogram endToEnd = Metrics.histogram("svetoofor_signal_end_to_end_seconds",
+            "JIRA event to lamp repaint report (upper bound)");
+
+    private static Histogram stage(String name) {
+        return Metrics.histogram(STAGE_METRIC, STAGE_HELP, "stage", name);
+    }
+
+    /**
+     * Отметка одной рассылки
+     */
+    private static final class Emitted {
+        final long seq;
+        final long emitNanos;
+        final long emitMillis;
+        final long sourceMillis;
+
+        Emitted(long seq, long emitNanos, long emitMillis, long sourceMillis) {
+            this.seq = seq;
+            this.emitNanos = emitNanos;
+            this.emitMillis = emitMillis;
+            this.sourceMillis = sourceMillis;
+        }
+    }
+
+    private final long epoch;
+    private final AtomicReferenceArray<Emitted> emitted = new AtomicReferenceArray<>(CAPACITY);
+
+    public LatencyTracker(long epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * Рассылка seq завершена (пакет в очередях всех подписчиков)
+     *
+     * @param trace Происхождение сигнала или null (команда клиента, ручная рассылка)
+     */
+    public void emitted(long seq, SignalTrace trace) {
+        long nowNanos = System.nanoTime();
+        long nowMillis = System.currentTimeMillis();
+        long sourceMillis = 0;
+        if (trace != null) {
+            sourceMillis = trace.getSourceMillis();
+            if (trace.getPollStartMillis() > 0) {
+                if (sourceMillis > 0) {
+                    // Часы JIRA могут спешить относительно сервера
+                    pollLag.record(Math.max(0, trace.getPollStartMillis() - sourceMillis) * 1_000_000);
+                }
+                jira.record(Math.max(0, trace.getDetectedMillis() - trace.getPollStartMillis()) * 1_000_000);
+            }
+            fanOut.record(nowNanos - trace.getDetectedNanos());
+        }
+        emitted.set(slot(seq), new Emitted(seq, nowNanos, nowMillis, sourceMillis));
+    }
+
+    /**
+     * Отчет клиента (ACK или PAINT)
+     *
+     * @return false, если отчет относится к другой эпохе или рассылка уже вытеснена
+     */
+    public boolean onReport(TraceReport report) {
+        if (report.getEpoch() != epoch) {
+            return false;
+        }
+        Emitted entry = emitted.get(slot(report.getSeq()));
+        if (entry == null || entry.seq != report.getSeq()) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (!report.isPaint()) {
+            network.record((now - entry.emitNanos) / 2);
+            return true;
+        }
+        ui.record(Math.max(0, report.getMicros()) * 1000);
+        if (entry.sourceMillis > 0) {
+            long emitLagNanos = Math.max(0, entry.emitMillis - entry.sourceMillis) * 1_000_000;
+            endToEnd.record(emitLagNanos + (now - entry.emitNanos));
+        }
+        return true;
+    }
+
+    private static int slot(long seq) {
+        return (int) (seq & (CAPACITY - 1));
+    }
+}
@@ -0,0 +1,106 @@
+package incuat.kg.svetoofor.server;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Предел очереди отправки одного клиента (WebSocketImpl.outQueue, в кадрах)
+ * и действие при его превышении.
+ *
+ * Очередь Java-WebSocket не ограничена: клиент, который перестал читать
+ * (зависший VPN), копит кадры в куче сервера. С пределом такой клиент
+ * отделяется от рассылки, остальные его не замечают.
+ */
+public class SendQueueLimit {
+
+    public static final int DEFAULT_MAX_FRAMES = 256;
+
+    public enum Policy {
+        /**
+         * Новые кадры клиенту не ставятся; когда очередь опустеет наполовину,
+         * уходит один DELTA с последним состоянием каждого изменившегося индикатора
+         */
+        DROP_INTERMEDIATE("drop"),
+        /**
+         * Соединение закрывается сразу (1013 Try Again Later), клиент переподключается
+         * и досинхронизируется по epoch/since
+         */
+        DISCONNECT("disconnect"),
+        /**
+         * Клиент помечается устаревшим и исключается из рассылки, пока очередь
+         * не опустеет полностью; затем получает полный SNAPSHOT
+         */
+        MARK_STALE("stale");
+
+        private final String id;
+
+        Policy(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public static Policy fromId(String id) {
+            String normalized = id.trim().toLowerCase(Locale.ROOT);
+            for (Policy policy : values()) {
+                if (policy.id.equals(normalized) || policy.name().toLowerCase(Locale.ROOT).equals(normalized)) {
+                    return policy;
+                }
+            }
+            throw new IllegalArgumentException("Unknown send queue policy: " + id);
+        }
+    }
+
+    private final int maxFrames;
+    private final Policy policy;
+
+    /**
+     * @param maxFrames Кадров в очереди, при которых клиент считается медленным
+     */
+    public SendQueueLimit(int maxFrames, Policy policy) {
+        if (maxFrames <= 0) {
+            throw new IllegalArgumentException("maxFrames must be positive: " + maxFrames);
+        }
+        this.maxFrames = maxFrames;
+        this.policy = policy;
+    }
+
+    /**
+     * Настройка из properties: ws.send.queue.max.frames (0 - без предела),
+     * ws.send.queue.policy=drop|disconnect|stale
+     *
+     * @return Предел или null, если очередь не ограничена
+     */
+    public static SendQueueLimit fromProperties(Properties props) {
+        int maxFrames = Integer.parseInt(props.getProperty("ws.send.queue.max.frames",
+                String.valueOf(DEFAULT_MAX_FRAMES)).trim());
+        if (maxFrames <= 0) {
+            return null;
+        }
+        return new SendQueueLimit(maxFrames,
+                Policy.fromId(props.getProperty("ws.send.queue.policy", Policy.DROP_INTERMEDIATE.getId())));
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param queued Кадров в очереди клиента
+     * @return Можно ли вернуть отстающего клиента в рассылку
+     */
+    public boolean canCatchUp(int queued) {
+        return policy == Policy.MARK_STALE ? queued == 0 : queued <= maxFrames / 2;
+    }
+
+    @Override
+    public String toString() {
+        return "max " + maxFrames + " frames, policy=" + policy.getId();
+    }
+}
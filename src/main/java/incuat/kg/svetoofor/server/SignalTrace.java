@@ -0,0 +1,41 @@
+package incuat.kg.svetoofor.server;
+
+/**
+ * Происхождение сигнала для трассировки задержки: время события в JIRA
+ * (created или updated задачи), начало опроса, который его нашел (или прием
+ * вебхука), и момент обнаружения на сервере (время создания объекта).
+ */
+public final class SignalTrace {
+
+    private final long sourceMillis;
+    private final long pollStartMillis;
+    private final long detectedMillis;
+    private final long detectedNanos;
+
+    /**
+     * @param sourceMillis    Время события в JIRA; 0 или меньше - неизвестно
+     * @param pollStartMillis Начало опроса или прием вебхука; 0 или меньше - неизвестно
+     */
+    public SignalTrace(long sourceMillis, long pollStartMillis) {
+        this.sourceMillis = sourceMillis;
+        this.pollStartMillis = pollStartMillis;
+        this.detectedMillis = System.currentTimeMillis();
+        this.detectedNanos = System.nanoTime();
+    }
+
+    public long getSourceMillis() {
+        return sourceMillis;
+    }
+
+    public long getPollStartMillis() {
+        return pollStartMillis;
+    }
+
+    public long getDetectedMillis() {
+        return detectedMillis;
+    }
+
+    public long getDetectedNanos() {
+        return detectedNanos;
+    }
+}
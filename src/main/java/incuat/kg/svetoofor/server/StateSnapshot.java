@@ -0,0 +1,157 @@
+package incuat.kg.svetoofor.server;
+
+import incuat.kg.svetoofor.protocol.BinaryFrame;
+import incuat.kg.svetoofor.protocol.Command;
+import incuat.kg.svetoofor.protocol.Lamp;
+import incuat.kg.svetoofor.protocol.SyncFrame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок состояния светофора.
+ *
+ * Хранит последний сигнал для каждого индикатора и номер (seq), с которым он
+ * был установлен. Каждая рассылка порождает новый снимок с seq + 1; снимок
+ * подменяется атомарно (ConcurrentHashMap.compute в TrafficLightServer), поэтому поток
+ * JIRA Poller и потоки WebSocket видят согласованное состояние без блокировок.
+ * Пакеты SNAPSHOT для новых клиентов (текстовый и двоичный) сериализуются
+ * при первом запросе и кэшируются в снимке: рассылка, после которой никто
+ * не подключался, кодирования не стоит.
+ *
+ * Снимок ведется на каждый топик; seq общий для всех топиков сервера, поэтому
+ * клиент, подписанный на несколько топиков, возобновляется по одному seq.
+ */
+public final class StateSnapshot {
+
+    private final long epoch;
+    private final long seq;
+    private final String[] lampMessages;
+    private final long[] lampSeqs;
+    // Кэш пакетов SNAPSHOT; гонка безопасна - при одновременном первом запросе
+    // пакет кодируется дважды с одинаковым результатом
+    private volatile String frame;
+    private volatile byte[] binaryFrame;
+
+    private StateSnapshot(long epoch, long seq, String[] lampMessages, long[] lampSeqs) {
+        this.epoch = epoch;
+        this.seq = seq;
+        this.lampMessages = lampMessages;
+        this.lampSeqs = lampSeqs;
+    }
+
+    /**
+     * Пустой снимок нового запуска сервера
+     *
+     * @param epoch Идентификатор запуска (обычно время старта)
+     */
+    public static StateSnapshot initial(long epoch) {
+        return new StateSnapshot(epoch, 0, new String[Lamp.count()], new long[Lamp.count()]);
+    }
+
+    /**
+     * Новый снимок после рассылки сообщения.
+     * seq увеличивается для любого сообщения; индикатор меняется только если
+     * команда относится к индикатору.
+     */
+    public StateSnapshot apply(String message) {
+        return apply(message, seq + 1);
+    }
+
+    /**
+     * Новый снимок после рассылки сообщения с заданным номером
+     *
+     * @param nextSeq Номер рассылки (больше текущего seq)
+     */
+    public StateSnapshot apply(String message, long nextSeq) {
+        Command command = Command.parse(message);
+        Lamp lamp = command != null ? command.getLamp() : null;
+        if (lamp == null) {
+            return new StateSnapshot(epoch, nextSeq, lampMessages, lampSeqs);
+        }
+
+        String[] messages = Arrays.copyOf(lampMessages, lampMessages.length);
+        long[] seqs = Arrays.copyOf(lampSeqs, lampSeqs.length);
+        messages[lamp.ordinal()] = message;
+        seqs[lamp.ordinal()] = nextSeq;
+        return new StateSnapshot(epoch, nextSeq, messages, seqs);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public String getLampMessage(Lamp lamp) {
+        return lampMessages[lamp.ordinal()];
+    }
+
+    /**
+     * @return Пакет SNAPSHOT со всеми установленными индикаторами
+     */
+    public String getFrame() {
+        String result = frame;
+        if (result == null) {
+            result = SyncFrame.encode(SyncFrame.SNAPSHOT, epoch, seq, legacyMessages());
+            frame = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return Пакет SNAPSHOT протокола BINARY (массив общий - не изменять)
+     */
+    public byte[] getBinaryFrame() {
+        byte[] result = binaryFrame;
+        if (result == null) {
+            result = BinaryFrame.encode(BinaryFrame.TYPE_SNAPSHOT, epoch, seq, legacyMessages());
+            binaryFrame = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return Сохраненные сигналы по одному на индикатор - для старых клиентов
+     */
+    public List<String> legacyMessages() {
+        List<String> messages = new ArrayList<>(lampMessages.length);
+        for (String message : lampMessages) {
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Можно ли досылать клиенту только изменения после seq
+     *
+     * @param clientEpoch Epoch, который клиент видел последним
+     * @param since       Последний seq, полученный клиентом
+     * @param latestSeq   Последний выданный seq (во всех топиках)
+     */
+    public boolean canResume(long clientEpoch, long since, long latestSeq) {
+        return clientEpoch == epoch && since >= 0 && since <= latestSeq;
+    }
+
+    /**
+     * @return Сигналы индикаторов, изменившихся после seq (по одному на индикатор) - для старых клиентов
+     */
+    public List<String> legacyMessagesSince(long since) {
+        return changedSince(since);
+    }
+
+    private List<String> changedSince(long since) {
+        List<String> changed = new ArrayList<>(lampMessages.length);
+        for (int i = 0; i < lampMessages.length; i++) {
+            if (lampMessages[i] != null && lampSeqs[i] > since) {
+                changed.add(lampMessages[i]);
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,171 @@
+package incuat.kg.svetoofor;
+
+import incuat.kg.svetoofor.server.ClientSession;
+import incuat.kg.svetoofor.server.SendQueueLimit;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficLightServerQueueTest {
+
+    private static final int MAX_FRAMES = 4;
+
+    /**
+     * Соединение без сокета: записывает отправленные команды, очередь отправки
+     * заполняется тестом
+     */
+    private static final class StubConnection extends WebSocketImpl {
+        final List<String> sent = new ArrayList<>();
+        int closeCode = -1;
+
+        StubConnection(TrafficLightServer server) {
+            super(server, new Draft_6455());
+        }
+
+        @Override
+        public boolean isOpen() {
+            return closeCode == -1;
+        }
+
+        @Override
+        public boolean isClosing() {
+            return closeCode != -1;
+        }
+
+        @Override
+        public void close(int code, String message) {
+            closeCode = code;
+        }
+
+        @Override
+        public void send(String text) {
+            sent.add(text);
+        }
+
+        @Override
+        public void sendFrame(Collection<Framedata> frames) {
+            for (Framedata frame : frames) {
+                sent.add(StandardCharsets.UTF_8.decode(frame.getPayloadData().duplicate()).toString());
+            }
+        }
+
+        @Override
+        public InetSocketAddress getRemoteSocketAddress() {
+            return null;
+        }
+
+        // Без промежуточного опустошения: планировщик досинхронизации не должен его увидеть
+        void fillQueue(int frames) {
+            while (outQueue.size() > frames) {
+                outQueue.poll();
+            }
+            while (outQueue.size() < frames) {
+                outQueue.add(ByteBuffer.allocate(1));
+            }
+        }
+    }
+
+    private TrafficLightServer server;
+    private StubConnection conn;
+
+    @BeforeEach
+    void connect() {
+        server = new TrafficLightServer(0);
+        conn = new StubConnection(server);
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.setResourceDescriptor("/");
+        server.onOpen(conn, handshake);
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        server.stop(0, "");
+    }
+
+    private ClientSession session() {
+        return conn.getAttachment();
+    }
+
+    @Test
+    void clientUnderLimitGetsEveryFrame() {
+        server.setSendQueueLimit(new SendQueueLimit(MAX_FRAMES, SendQueueLimit.Policy.DROP_INTERMEDIATE));
+        conn.fillQueue(MAX_FRAMES - 1);
+
+        server.broadcast("RED_BLINK");
+
+        assertEquals(List.of("RED_BLINK"), conn.sent);
+        assertFalse(session().isBehind());
+    }
+
+    @Test
+    void dropCatchesUpWithLatestChangesWhenQueueIsHalfEmpty() {
+        server.setSendQueueLimit(new SendQueueLimit(MAX_FRAMES, SendQueueLimit.Policy.DROP_INTERMEDIATE));
+        conn.fillQueue(MAX_FRAMES);
+
+        server.broadcast("RED_BLINK");
+        server.broadcast("YELLOW_BLINK");
+        server.broadcast("GREEN_BLINK_INCIDENT");
+        assertTrue(session().isBehind());
+        assertTrue(conn.sent.isEmpty());
+
+        conn.fillQueue(MAX_FRAMES / 2 + 1);
+        server.catchUp();
+        assertTrue(session().isBehind());
+
+        conn.fillQueue(MAX_FRAMES / 2);
+        server.catchUp();
+        assertFalse(session().isBehind());
+        // Только последнее состояние каждого индикатора
+        assertEquals(List.of("GREEN_BLINK_INCIDENT", "YELLOW_BLINK"), conn.sent);
+
+        server.broadcast("QUEUE_GREEN");
+        assertEquals("QUEUE_GREEN", conn.sent.get(conn.sent.size() - 1));
+    }
+
+    @Test
+    void staleWaitsForEmptyQueueAndGetsFullState() {
+        server.broadcast("YELLOW_BLINK");
+        conn.sent.clear();
+        server.setSendQueueLimit(new SendQueueLimit(MAX_FRAMES, SendQueueLimit.Policy.MARK_STALE));
+        conn.fillQueue(MAX_FRAMES);
+
+        server.broadcast("RED_BLINK");
+        assertTrue(session().isBehind());
+
+        conn.fillQueue(1);
+        server.catchUp();
+        assertTrue(session().isBehind());
+
+        conn.fillQueue(0);
+        server.catchUp();
+        assertFalse(session().isBehind());
+        assertEquals(List.of("RED_BLINK", "YELLOW_BLINK"), conn.sent);
+    }
+
+    @Test
+    void disconnectClosesOverflowingClient() {
+        server.setSendQueueLimit(new SendQueueLimit(MAX_FRAMES, SendQueueLimit.Policy.DISCONNECT));
+        conn.fillQueue(MAX_FRAMES);
+
+        server.broadcast("RED_BLINK");
+        server.broadcast("YELLOW_BLINK");
+
+        assertEquals(CloseFrame.TRY_AGAIN_LATER, conn.closeCode);
+        assertFalse(session().isBehind());
+        assertTrue(conn.sent.isEmpty());
+    }
+}
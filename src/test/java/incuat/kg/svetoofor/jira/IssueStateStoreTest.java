@@ -0,0 +1,73 @@
+package incuat.kg.svetoofor.jira;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IssueStateStoreTest {
+
+    private static final long TTL = 60_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void expireKeepsActiveIssues() {
+        IssueStateStore store = IssueStateStore.inMemory(TTL);
+        store.markActive("OPS-1", "В работе", 0);
+        store.markResolved("OPS-2", "Решен", 0);
+
+        assertEquals(1, store.expire(TTL + 1));
+        assertEquals("В работе", store.activeStatus("OPS-1"));
+        assertFalse(store.isKnown("OPS-2"));
+    }
+
+    @Test
+    void activeIssuesNotSeenForTtlNeedRecheck() {
+        IssueStateStore store = IssueStateStore.inMemory(TTL);
+        store.markActive("OPS-1", "В работе", 0);
+        store.markActive("OPS-2", "В работе", 0);
+        store.touch("OPS-2", TTL);
+
+        assertEquals(List.of("OPS-1"), store.activeUnseen(TTL + 1));
+        // Перепроверка ничего не меняет сама
+        assertTrue(store.isActive("OPS-1"));
+    }
+
+    @Test
+    void activeMissingFromFullResult() {
+        IssueStateStore store = IssueStateStore.inMemory(TTL);
+        store.markActive("OPS-1", "В работе", 0);
+        store.markActive("OPS-2", "В работе", 0);
+        store.markResolved("OPS-3", "Решен", 0);
+
+        assertEquals(List.of("OPS-2"), store.activeMissing(Set.of("OPS-1")));
+        assertTrue(store.isActive("OPS-2"));
+    }
+
+    @Test
+    void flushedRecordsAreReplayed() throws IOException {
+        Path file = dir.resolve("state.journal");
+        IssueStateStore store = IssueStateStore.open(file, TTL);
+        store.markActive("OPS-1", "В работе", 1000);
+        store.markResolved("OPS-2", "Решен", 2000);
+        store.flush();
+        store.close();
+
+        IssueStateStore restored = IssueStateStore.open(file, TTL);
+        try {
+            assertEquals(2, restored.size());
+            assertEquals("В работе", restored.activeStatus("OPS-1"));
+            assertEquals(2000, restored.get("OPS-2").getTransitionTime());
+            assertFalse(restored.isActive("OPS-2"));
+        } finally {
+            restored.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package incuat.kg.svetoofor.jira;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JiraClientCacheTest {
+
+    private static final String RESULT = "{\"startAt\":0,\"maxResults\":50,\"total\":1,\"issues\":["
+            + "{\"key\":\"OPS-1\",\"fields\":{\"summary\":\"Недоступен процессинг\","
+            + "\"status\":{\"name\":\"В работе\"},\"updated\":\"2024-05-17T14:03:21.000+0600\"}}]}";
+    private static final String ETAG = "\"page-v1\"";
+
+    @TempDir
+    Path cacheDir;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final List<String> methods = new ArrayList<>();
+
+    @BeforeEach
+    void startJira() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/rest/api/2/search", exchange -> {
+            searches.incrementAndGet();
+            synchronized (methods) {
+                methods.add(exchange.getRequestMethod());
+            }
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = RESULT.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                // Как у JIRA REST: без перепроверки кэш такой ответ не сохранил бы
+                exchange.getResponseHeaders().add("Cache-Control", "no-cache, no-store, no-transform");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopJira() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void repeatedPollIsRevalidatedFromCache() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("jira.http.cache.dir", cacheDir.toString());
+        JiraClient client = new JiraClient("http://127.0.0.1:" + server.getAddress().getPort(),
+                "user", "secret", JiraHttpConfig.fromProperties(props));
+        List<String> keys = new ArrayList<>();
+        try {
+            assertEquals(1, client.searchByCustomJql("project = OPS", issue -> keys.add(issue.getKey())));
+            assertEquals(1, client.searchByCustomJql("project = OPS", issue -> keys.add(issue.getKey())));
+        } finally {
+            client.close();
+        }
+
+        assertEquals(List.of("OPS-1", "OPS-1"), keys);
+        assertEquals(List.of("GET", "GET"), methods);
+        assertEquals(2, searches.get());
+        assertEquals(1, notModified.get());
+    }
+
+    @Test
+    void searchStaysPostWithoutCache() throws IOException {
+        JiraClient client = new JiraClient("http://127.0.0.1:" + server.getAddress().getPort(),
+                "user", "secret", JiraHttpConfig.fromProperties(new Properties()));
+        try {
+            client.searchByCustomJql("project = OPS", issue -> { });
+        } finally {
+            client.close();
+        }
+
+        assertEquals(List.of("POST"), methods);
+    }
+}
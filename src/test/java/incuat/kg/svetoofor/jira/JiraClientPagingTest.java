@@ -0,0 +1,168 @@
+package incuat.kg.svetoofor.jira;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JiraClientPagingTest {
+
+    private static final String JQL = "project = OPS";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private JiraClient client;
+
+    // Ответ стаба: total, урезанный maxResults, пустая страница, сбойная и медленная страница
+    private volatile int total;
+    private volatile int serverMaxResults;
+    private volatile int emptyFrom = Integer.MAX_VALUE;
+    private volatile int failingStart = -1;
+    private volatile int slowStart = -1;
+    private final List<Integer> starts = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void startJira() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/rest/api/2/search", this::search);
+        server.start();
+        client = new JiraClient("http://127.0.0.1:" + server.getAddress().getPort(), "user", "secret");
+    }
+
+    @AfterEach
+    void stopJira() {
+        client.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        JsonNode request = mapper.readTree(exchange.getRequestBody());
+        int startAt = request.get("startAt").asInt();
+        int maxResults = Math.min(request.get("maxResults").asInt(), serverMaxResults);
+        starts.add(startAt);
+        try {
+            if (startAt == failingStart) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            if (startAt == slowStart) {
+                // Страница приходит уже после ошибки соседней
+                Thread.sleep(300);
+            }
+            StringBuilder json = new StringBuilder("{\"startAt\":").append(startAt)
+                    .append(",\"maxResults\":").append(maxResults)
+                    .append(",\"total\":").append(total)
+                    .append(",\"issues\":[");
+            int end = startAt >= emptyFrom ? startAt : Math.min(total, startAt + maxResults);
+            for (int i = startAt; i < end; i++) {
+                if (i > startAt) {
+                    json.append(',');
+                }
+                json.append("{\"key\":\"OPS-").append(i + 1)
+                        .append("\",\"fields\":{\"status\":{\"name\":\"В работе\"}}}");
+            }
+            json.append("]}");
+            byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Test
+    void stepsByMaxResultsReturnedByJira() throws IOException {
+        total = 5;
+        serverMaxResults = 2;
+        client.setPageSize(50);
+        List<String> keys = new ArrayList<>();
+
+        assertEquals(5, client.searchPaged(JQL, null, issue -> keys.add(issue.getKey())));
+
+        assertEquals(List.of("OPS-1", "OPS-2", "OPS-3", "OPS-4", "OPS-5"), keys);
+        assertEquals(List.of(0, 2, 4), starts);
+    }
+
+    @Test
+    void emptyPageStopsSequentialPaging() throws IOException {
+        total = 10;
+        serverMaxResults = 2;
+        emptyFrom = 4;
+        client.setPageSize(2);
+
+        assertEquals(4, client.searchPaged(JQL, null, issue -> { }));
+        assertEquals(List.of(0, 2, 4), starts);
+    }
+
+    @Test
+    void parallelPagesDeliverEveryIssueSerially() throws IOException {
+        total = 20;
+        serverMaxResults = 2;
+        client.setPageSize(2);
+        client.setPageParallelism(4);
+        Set<String> keys = new HashSet<>();
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        int delivered = client.searchPaged(JQL, null, issue -> {
+            if (inside.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            keys.add(issue.getKey());
+            inside.decrementAndGet();
+        });
+
+        assertEquals(20, delivered);
+        assertEquals(20, keys.size());
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    void failedPageStopsDeliveryBeforeReturning() throws Exception {
+        total = 8;
+        serverMaxResults = 2;
+        failingStart = 2;
+        slowStart = 4;
+        client.setPageSize(2);
+        client.setPageParallelism(3);
+        List<String> keys = Collections.synchronizedList(new ArrayList<>());
+
+        assertThrows(IOException.class, () -> client.searchPaged(JQL, null, issue -> keys.add(issue.getKey())));
+        int afterReturn = keys.size();
+        Thread.sleep(500);
+
+        // Медленная страница дочитана до выхода, но ее задачи не переданы
+        assertEquals(afterReturn, keys.size());
+        assertFalse(keys.contains("OPS-5"));
+        assertFalse(keys.contains("OPS-6"));
+        assertTrue(keys.containsAll(List.of("OPS-1", "OPS-2")));
+    }
+}
@@ -0,0 +1,142 @@
+package incuat.kg.svetoofor.jira;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JiraIssueCacheTest {
+
+    private static final String ISSUE = "{\"key\":\"OPS-1\",\"fields\":{\"summary\":\"Недоступен процессинг\","
+            + "\"status\":{\"name\":\"В работе\"},\"updated\":\"2024-05-17T14:03:21.000+0600\"}}";
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private JiraClient client;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile CountDownLatch release;
+
+    @BeforeEach
+    void startJira() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/rest/api/2/issue/", exchange -> {
+            requests.incrementAndGet();
+            CountDownLatch latch = release;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = ISSUE.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        client = new JiraClient("http://127.0.0.1:" + server.getAddress().getPort(), "user", "secret");
+    }
+
+    @AfterEach
+    void stopJira() {
+        client.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void freshEntryIsServedWithoutRequest() throws IOException {
+        JiraIssueCache cache = new JiraIssueCache(client, 10, 60_000);
+
+        assertEquals("В работе", cache.get("OPS-1", null).getFields().getStatus().getName());
+        cache.get("OPS-1", "2024-05-17T14:03:21.000+0600");
+
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void expiredEntryIsRevalidatedWithEtag() throws IOException {
+        JiraIssueCache cache = new JiraIssueCache(client, 10, 0);
+
+        JiraIssue first = cache.get("OPS-1", null);
+        JiraIssue second = cache.get("OPS-1", null);
+
+        assertSame(first, second);
+        assertEquals(2, requests.get());
+        assertEquals(1, notModified.get());
+        assertEquals(1, cache.getRevalidated());
+    }
+
+    @Test
+    void concurrentMissesShareOneRequest() throws Exception {
+        JiraIssueCache cache = new JiraIssueCache(client, 10, 60_000);
+        release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<JiraIssue>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> cache.get("OPS-1", null)));
+            }
+            // Первый запрос держится сервером, пока остальные не встанут за ним
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cache.getCoalesced() < 7 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            JiraIssue issue = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<JiraIssue> result : results) {
+                assertSame(issue, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, requests.get());
+        assertEquals(7, cache.getCoalesced());
+    }
+
+    @Test
+    void issueFromPollIsServedWithoutRequest() throws IOException {
+        JiraIssueCache cache = new JiraIssueCache(client, 10, 60_000);
+        JiraIssue polled = new ObjectMapper().readValue(ISSUE, JiraIssue.class);
+        cache.put(polled);
+
+        assertSame(polled, cache.get("OPS-1", "2024-05-17T14:03:21.000+0600"));
+        assertEquals(0, requests.get());
+        // Копия из опроса без ETag перепроверяется полным запросом
+        assertNotSame(polled, cache.refresh("OPS-1"));
+        assertEquals(1, requests.get());
+        assertEquals(0, notModified.get());
+    }
+}
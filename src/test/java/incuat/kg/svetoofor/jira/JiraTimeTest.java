@@ -0,0 +1,58 @@
+package incuat.kg.svetoofor.jira;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JiraTimeTest {
+
+    private static final ZoneId BISHKEK = ZoneId.of("Asia/Bishkek");
+
+    @Test
+    void parsesApiDateWithOffset() {
+        long expected = ZonedDateTime.of(2024, 5, 17, 8, 3, 21, 0, ZoneId.of("UTC")).toInstant().toEpochMilli();
+        assertEquals(expected, JiraTime.parse("2024-05-17T14:03:21.000+0600"));
+        assertEquals(expected + 250, JiraTime.parse("2024-05-17T08:03:21.250+0000"));
+    }
+
+    @Test
+    void unparsableDateIsMinusOne() {
+        assertEquals(-1, JiraTime.parse(null));
+        assertEquals(-1, JiraTime.parse(""));
+        assertEquals(-1, JiraTime.parse("2024-05-17 14:03"));
+        // Формат JIRA без миллисекунд и смещения не принимается
+        assertEquals(-1, JiraTime.parse("2024-05-17T14:03:21"));
+    }
+
+    @Test
+    void jqlDateIsInUserZoneWithMinutePrecision() {
+        long millis = JiraTime.parse("2024-05-17T08:03:59.999+0000");
+        assertEquals("2024/05/17 14:03", JiraTime.toJql(millis, BISHKEK));
+        assertEquals("2024/05/17 08:03", JiraTime.toJql(millis, ZoneId.of("UTC")));
+    }
+
+    @Test
+    void watermarkConditionIsAddedToFilter() {
+        long since = JiraTime.parse("2024-05-17T14:03:00.000+0600");
+        assertEquals("(issuetype = 11206 AND status NOT IN (Closed,Resolved,Done)) AND updated >= \"2024/05/17 14:03\"",
+                JiraPoller.incrementalJql("issuetype = 11206 AND status NOT IN (Closed,Resolved,Done)", since, BISHKEK));
+    }
+
+    @Test
+    void watermarkConditionGoesBeforeOrderBy() {
+        long since = JiraTime.parse("2024-05-17T14:03:00.000+0600");
+        assertEquals("(project = OPS OR project = DBA) AND updated >= \"2024/05/17 14:03\" order by updated DESC",
+                JiraPoller.incrementalJql("project = OPS OR project = DBA order by updated DESC", since, BISHKEK));
+    }
+
+    @Test
+    void lastOrderByWins() {
+        // "order by" внутри текста условия не должен резать запрос
+        long since = JiraTime.parse("2024-05-17T14:03:00.000+0600");
+        assertEquals("(summary ~ \"order by\") AND updated >= \"2024/05/17 14:03\" ORDER BY created",
+                JiraPoller.incrementalJql("summary ~ \"order by\" ORDER BY created", since, BISHKEK));
+    }
+}
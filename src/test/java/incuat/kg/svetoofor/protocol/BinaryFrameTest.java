@@ -0,0 +1,99 @@
+package incuat.kg.svetoofor.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryFrameTest {
+
+    @Test
+    void roundTripKeepsCommandsPayloadsAndDurations() {
+        List<String> messages = List.of("RED_BLINK|Недоступен процессинг карт", "QUEUE_GREEN", "GREEN_BLINK_ALERT|OPS-7");
+        BinaryFrame frame = BinaryFrame.decode(ByteBuffer.wrap(
+                BinaryFrame.encode(BinaryFrame.TYPE_DELTA, 1_700_000_000_000L, 99, messages)));
+
+        assertNotNull(frame);
+        assertFalse(frame.isSnapshot());
+        assertEquals(1_700_000_000_000L, frame.getEpoch());
+        assertEquals(99, frame.getSeq());
+        assertEquals(3, frame.getEntries().size());
+
+        BinaryFrame.Entry red = frame.getEntries().get(0);
+        assertEquals(Command.RED_BLINK, red.getCommand());
+        assertEquals("Недоступен процессинг карт", red.getPayload());
+        assertEquals(Command.RED_BLINK.getDurationSeconds(), red.getDurationSeconds());
+
+        BinaryFrame.Entry queue = frame.getEntries().get(1);
+        assertEquals(Command.QUEUE_GREEN, queue.getCommand());
+        assertNull(queue.getPayload());
+
+        List<String> decoded = new ArrayList<>();
+        for (BinaryFrame.Entry entry : frame.getEntries()) {
+            decoded.add(entry.toMessage());
+        }
+        assertEquals(messages, decoded);
+    }
+
+    @Test
+    void unknownCommandTravelsAsRawString() {
+        BinaryFrame frame = BinaryFrame.decode(ByteBuffer.wrap(
+                BinaryFrame.encode(BinaryFrame.TYPE_SNAPSHOT, 1, 2, List.of("BLUE_BLINK|новая команда"))));
+
+        assertNotNull(frame);
+        assertTrue(frame.isSnapshot());
+        assertNull(frame.getEntries().get(0).getCommand());
+        assertEquals("BLUE_BLINK|новая команда", frame.getEntries().get(0).toMessage());
+    }
+
+    @Test
+    void emptyFrame() {
+        BinaryFrame frame = BinaryFrame.decode(ByteBuffer.wrap(
+                BinaryFrame.encode(BinaryFrame.TYPE_SNAPSHOT, 5, 0, List.of())));
+
+        assertNotNull(frame);
+        assertTrue(frame.getEntries().isEmpty());
+    }
+
+    @Test
+    void everyTruncationIsRejected() {
+        byte[] encoded = BinaryFrame.encode(BinaryFrame.TYPE_DELTA, 1, 2,
+                List.of("RED_BLINK|Недоступен процессинг карт", "YELLOW_BLINK|Алерт"));
+        for (int length = 0; length < encoded.length; length++) {
+            assertNull(BinaryFrame.decode(ByteBuffer.wrap(Arrays.copyOf(encoded, length))), "length " + length);
+        }
+    }
+
+    @Test
+    void unknownTypeIsRejected() {
+        byte[] encoded = BinaryFrame.encode(BinaryFrame.TYPE_DELTA, 1, 2, List.of("RED_BLINK"));
+        encoded[0] = 7;
+        assertNull(BinaryFrame.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    void decodeDoesNotMoveBufferPosition() {
+        ByteBuffer buffer = ByteBuffer.wrap(BinaryFrame.encode(BinaryFrame.TYPE_DELTA, 1, 2, List.of("RED_BLINK")));
+        assertNotNull(BinaryFrame.decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void longPayloadIsCutOnCharacterBoundary() {
+        // 2 байта UTF-8 на символ: предел 65535 байт приходится на середину символа
+        String payload = "я".repeat(40_000);
+        BinaryFrame frame = BinaryFrame.decode(ByteBuffer.wrap(
+                BinaryFrame.encode(BinaryFrame.TYPE_DELTA, 1, 2, List.of("RED_BLINK|" + payload))));
+
+        assertNotNull(frame);
+        String decoded = frame.getEntries().get(0).getPayload();
+        assertEquals(32_767, decoded.length());
+        assertTrue(payload.startsWith(decoded));
+        assertTrue(decoded.getBytes(StandardCharsets.UTF_8).length <= 0xFFFF);
+    }
+}
@@ -0,0 +1,70 @@
+package incuat.kg.svetoofor.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncFrameTest {
+
+    @Test
+    void snapshotRoundTrip() {
+        List<String> commands = List.of("RED_BLINK|Недоступен процессинг карт", "GREEN");
+        SyncFrame frame = SyncFrame.decode(SyncFrame.encode(SyncFrame.SNAPSHOT, 1_700_000_000_000L, 42, commands));
+
+        assertNotNull(frame);
+        assertTrue(frame.isSnapshot());
+        assertEquals(1_700_000_000_000L, frame.getEpoch());
+        assertEquals(42, frame.getSeq());
+        assertEquals(commands, frame.getCommands());
+    }
+
+    @Test
+    void deltaWithoutCommands() {
+        SyncFrame frame = SyncFrame.decode(SyncFrame.encode(SyncFrame.DELTA, 7, 0, List.of()));
+
+        assertNotNull(frame);
+        assertFalse(frame.isSnapshot());
+        assertEquals(7, frame.getEpoch());
+        assertEquals(0, frame.getSeq());
+        assertTrue(frame.getCommands().isEmpty());
+    }
+
+    @Test
+    void lineBreaksInsideCommandDoNotSplitIt() {
+        String encoded = SyncFrame.encode(SyncFrame.DELTA, 1, 2, List.of("RED_BLINK|строка 1\r\nстрока 2"));
+        SyncFrame frame = SyncFrame.decode(encoded);
+
+        assertNotNull(frame);
+        assertEquals(List.of("RED_BLINK|строка 1  строка 2"), frame.getCommands());
+    }
+
+    @Test
+    void truncatedHeaderIsRejected() {
+        String encoded = SyncFrame.encode(SyncFrame.DELTA, 1, 25, List.of("RED_BLINK"));
+
+        // Обрыв внутри заголовка: нет seq
+        assertNull(SyncFrame.decode("DELTA|1"));
+        assertNull(SyncFrame.decode("DELTA|1|"));
+        assertNull(SyncFrame.decode(encoded.substring(0, encoded.indexOf('|', 6))));
+        // Обрыв после заголовка - пакет без части команд, номер сохраняется
+        SyncFrame headerOnly = SyncFrame.decode(encoded.substring(0, encoded.indexOf('\n')));
+        assertNotNull(headerOnly);
+        assertEquals(25, headerOnly.getSeq());
+        assertTrue(headerOnly.getCommands().isEmpty());
+    }
+
+    @Test
+    void malformedHeaderIsRejected() {
+        assertNull(SyncFrame.decode("DELTA|x|1\nRED_BLINK"));
+        assertNull(SyncFrame.decode("DELTA|1|2|3\nRED_BLINK"));
+        assertNull(SyncFrame.decode(null));
+    }
+
+    @Test
+    void legacyCommandIsNotAFrame() {
+        assertFalse(SyncFrame.isSyncFrame("RED_BLINK|DELTA|1|2"));
+        assertNull(SyncFrame.decode("RED_BLINK|DELTA|1|2"));
+    }
+}
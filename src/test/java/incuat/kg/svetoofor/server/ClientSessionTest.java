@@ -0,0 +1,49 @@
+package incuat.kg.svetoofor.server;
+
+import incuat.kg.svetoofor.protocol.WireProtocol;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientSessionTest {
+
+    private static ClientSession session() {
+        return new ClientSession(1, null, 0, "1.0.0", WireProtocol.BINARY, Set.of("network", "dba"));
+    }
+
+    @Test
+    void snapshotCoversEarlierBroadcastsOfItsTopic() {
+        ClientSession session = session();
+        session.markQueued("network", 10, 10);
+
+        assertTrue(session.isQueued("network", 9));
+        assertTrue(session.isQueued("network", 10));
+        assertFalse(session.isQueued("network", 11));
+        assertFalse(session.isQueued("dba", 5));
+    }
+
+    @Test
+    void frameBehindAnotherTopicIsOutOfOrder() {
+        ClientSession session = session();
+        assertFalse(session.isOutOfOrder(0));
+
+        session.markQueued("dba", 12, 12);
+        assertTrue(session.isOutOfOrder(11));
+        assertTrue(session.isOutOfOrder(12));
+        assertFalse(session.isOutOfOrder(13));
+    }
+
+    @Test
+    void renumberedFrameKeepsTopicSeq() {
+        ClientSession session = session();
+        session.markQueued("dba", 12, 12);
+        // Рассылка seq 11 в network опоздала и ушла под номером 13
+        session.markQueued("network", 11, 13);
+
+        assertTrue(session.isQueued("network", 11));
+        assertFalse(session.isQueued("network", 12));
+        assertTrue(session.isOutOfOrder(13));
+    }
+}
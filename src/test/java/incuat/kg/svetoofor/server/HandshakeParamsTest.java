@@ -0,0 +1,41 @@
+package incuat.kg.svetoofor.server;
+
+import org.java_websocket.handshake.HandshakeImpl1Client;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandshakeParamsTest {
+
+    private static HandshakeParams params(String resource) {
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.setResourceDescriptor(resource);
+        return HandshakeParams.of(handshake);
+    }
+
+    @Test
+    void decodesQueryParameters() {
+        HandshakeParams params = params("/?version=1.2&groups=dba%2Cnetwork");
+
+        assertEquals("1.2", params.get("version", null));
+        assertEquals("dba,network", params.get("groups", null));
+        assertNull(params.get("since", null));
+    }
+
+    @Test
+    void malformedEscapeSkipsOnlyThatParameter() {
+        HandshakeParams params = params("/?groups=%zz&version=1.2");
+
+        assertNull(params.get("groups", null));
+        assertEquals("1.2", params.get("version", null));
+    }
+
+    @Test
+    void headerOverridesQuery() {
+        HandshakeImpl1Client handshake = new HandshakeImpl1Client();
+        handshake.setResourceDescriptor("/?groups=dba");
+        handshake.put("X-Svetofor-Groups", "network");
+
+        assertEquals("network", HandshakeParams.of(handshake).get("groups", "X-Svetofor-Groups"));
+    }
+}
@@ -0,0 +1,45 @@
+package incuat.kg.svetoofor.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SendQueueLimitTest {
+
+    @Test
+    void dropCatchesUpAtHalfQueue() {
+        SendQueueLimit limit = new SendQueueLimit(10, SendQueueLimit.Policy.DROP_INTERMEDIATE);
+
+        assertFalse(limit.canCatchUp(6));
+        assertTrue(limit.canCatchUp(5));
+        assertTrue(limit.canCatchUp(0));
+    }
+
+    @Test
+    void staleCatchesUpOnlyWhenQueueIsEmpty() {
+        SendQueueLimit limit = new SendQueueLimit(10, SendQueueLimit.Policy.MARK_STALE);
+
+        assertFalse(limit.canCatchUp(1));
+        assertTrue(limit.canCatchUp(0));
+    }
+
+    @Test
+    void fromProperties() {
+        Properties props = new Properties();
+        SendQueueLimit defaults = SendQueueLimit.fromProperties(props);
+        assertEquals(SendQueueLimit.DEFAULT_MAX_FRAMES, defaults.getMaxFrames());
+        assertEquals(SendQueueLimit.Policy.DROP_INTERMEDIATE, defaults.getPolicy());
+
+        props.setProperty("ws.send.queue.policy", " Disconnect ");
+        assertEquals(SendQueueLimit.Policy.DISCONNECT, SendQueueLimit.fromProperties(props).getPolicy());
+
+        props.setProperty("ws.send.queue.max.frames", "0");
+        assertNull(SendQueueLimit.fromProperties(props));
+
+        props.setProperty("ws.send.queue.max.frames", "8");
+        props.setProperty("ws.send.queue.policy", "later");
+        assertThrows(IllegalArgumentException.class, () -> SendQueueLimit.fromProperties(props));
+    }
+}
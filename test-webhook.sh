@@ -0,0 +1,24 @@
+#!/bin/bash
+# Отправка сохраненного вебхука JIRA на встроенный HTTP сервер
+
+if [ -z "$1" ]; then
+    echo "Использование: $0 <файл.json> [url]"
+    echo ""
+    echo "Примеры:"
+    echo "  ./test-webhook.sh webhook-samples/issue_created.json    # Новый инцидент (красный)"
+    echo "  ./test-webhook.sh webhook-samples/issue_resolved.json   # Инцидент решен (зеленый)"
+    echo ""
+    echo "Токен берется из переменной JIRA_WEBHOOK_TOKEN"
+    exit 1
+fi
+
+FILE=$1
+URL=${2:-http://localhost:52522/jira/webhook}
+echo "Отправка вебхука: $FILE -> $URL"
+
+curl -s -o /dev/null -w "HTTP %{http_code}\n" \
+    -X POST \
+    -H "Content-Type: application/json" \
+    -H "X-Svetofor-Token: ${JIRA_WEBHOOK_TOKEN}" \
+    --data-binary "@$FILE" \
+    "$URL"